@@ -19,6 +19,7 @@ package com.android.contacts;
 import static android.Manifest.permission.WRITE_CONTACTS;
 import android.app.Activity;
 import android.app.IntentService;
+import android.content.ComponentName;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderOperation.Builder;
 import android.content.ContentProviderResult;
@@ -1075,9 +1076,29 @@ public class ContactSaveService extends IntentService {
      */
     public static Intent createDeleteMultipleContactsIntent(Context context,
             long[] contactIds) {
+        return createDeleteMultipleContactsIntent(context, contactIds,
+                (ComponentName) null, null);
+    }
+
+    /**
+     * Creates an intent that can be sent to this service to delete multiple contacts. Once they
+     * are deleted, the callback intent is delivered with the IDs of the contacts in
+     * {@link #EXTRA_CONTACT_IDS} and whether they could be deleted in
+     * {@link #EXTRA_SAVE_SUCCEEDED}.
+     *
+     * The callback is delivered to the activity started with the given component, which is
+     * the one of its intent rather than its class when it can be started through an alias.
+     */
+    public static Intent createDeleteMultipleContactsIntent(Context context,
+            long[] contactIds, ComponentName callbackComponent, String callbackAction) {
         Intent serviceIntent = new Intent(context, ContactSaveService.class);
         serviceIntent.setAction(ContactSaveService.ACTION_DELETE_MULTIPLE_CONTACTS);
         serviceIntent.putExtra(ContactSaveService.EXTRA_CONTACT_IDS, contactIds);
+        if (callbackComponent != null) {
+            Intent callbackIntent = new Intent(callbackAction);
+            callbackIntent.setComponent(callbackComponent);
+            serviceIntent.putExtra(ContactSaveService.EXTRA_CALLBACK_INTENT, callbackIntent);
+        }
         return serviceIntent;
     }
 
@@ -1097,19 +1118,38 @@ public class ContactSaveService extends IntentService {
             Log.e(TAG, "Invalid arguments for deleteMultipleContacts request");
             return;
         }
-        for (long contactId : contactIds) {
-            final Uri contactUri = ContentUris.withAppendedId(Contacts.CONTENT_URI, contactId);
-            getContentResolver().delete(contactUri, null, null);
-        }
-        final String deleteToastMessage = getResources().getQuantityString(R.plurals
-                .contacts_deleted_toast, contactIds.length);
-        mMainHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                Toast.makeText(ContactSaveService.this, deleteToastMessage, Toast.LENGTH_LONG)
-                        .show();
+        boolean succeeded = true;
+        try {
+            for (long contactId : contactIds) {
+                final Uri contactUri = ContentUris.withAppendedId(Contacts.CONTENT_URI,
+                        contactId);
+                getContentResolver().delete(contactUri, null, null);
             }
-        });
+        } catch (RuntimeException e) {
+            // The provider failed, the list shows the contacts that were not deleted again.
+            Log.e(TAG, "Failed to delete contacts", e);
+            succeeded = false;
+        }
+        if (succeeded) {
+            final String deleteToastMessage = getResources().getQuantityString(R.plurals
+                    .contacts_deleted_toast, contactIds.length);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(ContactSaveService.this, deleteToastMessage, Toast.LENGTH_LONG)
+                            .show();
+                }
+            });
+        } else {
+            showToast(R.string.contactDeleteErrorToast);
+        }
+
+        final Intent callbackIntent = intent.getParcelableExtra(EXTRA_CALLBACK_INTENT);
+        if (callbackIntent != null) {
+            callbackIntent.putExtra(EXTRA_CONTACT_IDS, contactIds);
+            callbackIntent.putExtra(EXTRA_SAVE_SUCCEEDED, succeeded);
+            deliverCallback(callbackIntent);
+        }
     }
 
     /**
@@ -17,12 +17,15 @@ package com.android.contacts;
 
 import android.content.Context;
 import android.content.CursorLoader;
+import android.database.Cursor;
+import android.database.CursorWrapper;
 import android.net.Uri;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.CommonDataKinds.GroupMembership;
 import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.Directory;
+import android.provider.ContactsContract.Groups;
 
 import com.android.contacts.common.preference.ContactsPreferences;
 
@@ -30,10 +33,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Group Member loader. Loads all group members from the given groupId
+ * Group Member loader. Loads all group members from the given groupId, or for the group detail
+ * page, the first window of them.
  */
 public final class GroupMemberLoader extends CursorLoader {
 
+    /**
+     * Number of members the group detail page queries at once.
+     */
+    public static final int GROUP_DETAIL_WINDOW_SIZE = 60;
+
     public static class GroupEditorQuery {
         private static final String[] PROJECTION = new String[] {
             Data.CONTACT_ID,                        // 0
@@ -68,7 +77,21 @@ public final class GroupMemberLoader extends CursorLoader {
         public static final int CONTACT_STATUS               = 5;
     }
 
+    /**
+     * The first window of members of the group detail page, along with the size of the group.
+     */
+    public static class GroupDetailResult extends CursorWrapper {
+        /** Number of members in the group, or -1 if it could not be determined. */
+        public final int memberCount;
+
+        public GroupDetailResult(Cursor cursor, int memberCount) {
+            super(cursor);
+            this.memberCount = memberCount;
+        }
+    }
+
     private final long mGroupId;
+    private boolean mLoadMemberCount;
 
     /**
      * @return GroupMemberLoader object which can be used in group editor.
@@ -79,11 +102,50 @@ public final class GroupMemberLoader extends CursorLoader {
     }
 
     /**
-     * @return GroupMemberLoader object used in group detail page.
+     * @return GroupMemberLoader object used in group detail page. It loads the first
+     * {@link #GROUP_DETAIL_WINDOW_SIZE} members into a {@link GroupDetailResult}, the others are
+     * loaded with {@link #queryGroupDetailWindow}.
      */
     public static GroupMemberLoader constructLoaderForGroupDetailQuery(
             Context context, long groupId) {
-        return new GroupMemberLoader(context, groupId, GroupDetailQuery.PROJECTION);
+        final GroupMemberLoader loader =
+                new GroupMemberLoader(context, groupId, GroupDetailQuery.PROJECTION);
+        loader.mLoadMemberCount = true;
+        // Let the provider count the members per section as well
+        loader.setUri(loader.getUri().buildUpon()
+                .appendQueryParameter(Contacts.EXTRA_ADDRESS_BOOK_INDEX, "true")
+                .build());
+        loader.setSortOrder(loader.getSortOrder() + " LIMIT " + GROUP_DETAIL_WINDOW_SIZE);
+        return loader;
+    }
+
+    /**
+     * Queries a window of the members shown in the group detail page, in the same order as the
+     * loader returned by {@link #constructLoaderForGroupDetailQuery}.
+     */
+    public static Cursor queryGroupDetailWindow(Context context, long groupId, int offset,
+            int limit) {
+        return context.getContentResolver().query(createUri(), GroupDetailQuery.PROJECTION,
+                createSelection(), createSelectionArgs(groupId),
+                getSortOrder(context) + " LIMIT " + limit + " OFFSET " + offset);
+    }
+
+    /**
+     * Returns the number of contacts in the group, as counted by the provider, or -1 if the
+     * group was not found.
+     */
+    public static int queryMemberCount(Context context, long groupId) {
+        final Cursor cursor = context.getContentResolver().query(Groups.CONTENT_SUMMARY_URI,
+                new String[] { Groups.SUMMARY_COUNT }, Groups._ID + "=?",
+                new String[] { String.valueOf(groupId) }, null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
     }
 
     private GroupMemberLoader(Context context, long groupId, String[] projection) {
@@ -92,33 +154,48 @@ public final class GroupMemberLoader extends CursorLoader {
         setUri(createUri());
         setProjection(projection);
         setSelection(createSelection());
-        setSelectionArgs(createSelectionArgs());
+        setSelectionArgs(createSelectionArgs(groupId));
+        setSortOrder(getSortOrder(context));
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        final Cursor cursor = super.loadInBackground();
+        if (cursor == null || !mLoadMemberCount) {
+            return cursor;
+        }
+        // A partial first window holds the whole group, no need to count.
+        final int memberCount = cursor.getCount() < GROUP_DETAIL_WINDOW_SIZE
+                ? cursor.getCount() : queryMemberCount(getContext(), mGroupId);
+        return new GroupDetailResult(cursor, memberCount);
+    }
 
+    private static String getSortOrder(Context context) {
         ContactsPreferences prefs = new ContactsPreferences(context);
         if (prefs.getSortOrder() == ContactsPreferences.SORT_ORDER_PRIMARY) {
-            setSortOrder(Contacts.SORT_KEY_PRIMARY);
+            return Contacts.SORT_KEY_PRIMARY;
         } else {
-            setSortOrder(Contacts.SORT_KEY_ALTERNATIVE);
+            return Contacts.SORT_KEY_ALTERNATIVE;
         }
     }
 
-    private Uri createUri() {
+    private static Uri createUri() {
         Uri uri = Data.CONTENT_URI;
         uri = uri.buildUpon().appendQueryParameter(ContactsContract.DIRECTORY_PARAM_KEY,
                 String.valueOf(Directory.DEFAULT)).build();
         return uri;
     }
 
-    private String createSelection() {
+    private static String createSelection() {
         StringBuilder selection = new StringBuilder();
         selection.append(Data.MIMETYPE + "=?" + " AND " + GroupMembership.GROUP_ROW_ID + "=?");
         return selection.toString();
     }
 
-    private String[] createSelectionArgs() {
+    private static String[] createSelectionArgs(long groupId) {
         List<String> selectionArgs = new ArrayList<String>();
         selectionArgs.add(GroupMembership.CONTENT_ITEM_TYPE);
-        selectionArgs.add(String.valueOf(mGroupId));
+        selectionArgs.add(String.valueOf(groupId));
         return selectionArgs.toArray(new String[0]);
     }
 }
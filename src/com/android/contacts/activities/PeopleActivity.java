@@ -20,7 +20,6 @@ import android.app.Fragment;
 import android.app.FragmentManager;
 import android.app.FragmentTransaction;
 import android.content.ActivityNotFoundException;
-import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -53,6 +52,7 @@ import android.widget.ImageButton;
 import android.widget.Toast;
 import android.widget.Toolbar;
 
+import com.android.contacts.ContactSaveService;
 import com.android.contacts.ContactsActivity;
 import com.android.contacts.R;
 import com.android.contacts.activities.ActionBarAdapter.TabState;
@@ -81,10 +81,12 @@ import com.android.contacts.interactions.ContactMultiDeletionInteraction;
 import com.android.contacts.interactions.ContactMultiDeletionInteraction.MultiContactDeleteListener;
 import com.android.contacts.interactions.JoinContactsDialogFragment;
 import com.android.contacts.interactions.JoinContactsDialogFragment.JoinContactsListener;
+import com.android.contacts.interactions.ShareContactsFragment;
 import com.android.contacts.list.ContactTileListFragment;
 import com.android.contacts.list.ContactsIntentResolver;
 import com.android.contacts.list.ContactsRequest;
 import com.android.contacts.list.ContactsUnavailableFragment;
+import com.android.contacts.list.MatchingContactsSelection;
 import com.android.contacts.list.MultiSelectContactsListFragment;
 import com.android.contacts.list.MultiSelectContactsListFragment.OnCheckBoxListActionListener;
 import com.android.contacts.list.OnContactBrowserActionListener;
@@ -92,8 +94,10 @@ import com.android.contacts.list.OnContactsUnavailableActionListener;
 import com.android.contacts.list.ProviderStatusWatcher;
 import com.android.contacts.list.ProviderStatusWatcher.ProviderStatusListener;
 import com.android.contacts.quickcontact.QuickContactActivity;
+import com.android.contacts.quickcontact.QuickContactHeaderSnapshot;
 import com.android.contacts.util.DialogManager;
 import com.android.contacts.util.PhoneCapabilityTester;
+import com.android.contacts.util.SortedLongSet;
 import com.android.contactsbind.HelpUtils;
 
 import java.util.List;
@@ -935,7 +939,8 @@ public class PeopleActivity extends ContactsActivity implements
         }
 
         @Override
-        public void onViewContactAction(Uri contactLookupUri, boolean isEnterpriseContact) {
+        public void onViewContactAction(Uri contactLookupUri, boolean isEnterpriseContact,
+                QuickContactHeaderSnapshot headerSnapshot) {
             if (isEnterpriseContact) {
                 // No implicit intent as user may have a different contacts app in work profile.
                 QuickContact.showQuickContact(PeopleActivity.this, new Rect(), contactLookupUri,
@@ -945,6 +950,9 @@ public class PeopleActivity extends ContactsActivity implements
                         contactLookupUri, QuickContactActivity.MODE_FULLY_EXPANDED);
                 intent.putExtra(QuickContactActivity.EXTRA_PREVIOUS_SCREEN_TYPE,
                         mAllFragment.isSearchMode() ? ScreenType.SEARCH : ScreenType.ALL_CONTACTS);
+                if (headerSnapshot != null) {
+                    headerSnapshot.addToIntent(intent);
+                }
                 ImplicitIntentsUtil.startActivityInApp(PeopleActivity.this, intent);
             }
         }
@@ -986,7 +994,7 @@ public class PeopleActivity extends ContactsActivity implements
 
         @Override
         public void onSelectedContactIdsChanged() {
-            mActionBarAdapter.setSelectionCount(mAllFragment.getSelectedContactIds().size());
+            mActionBarAdapter.setSelectionCount(mAllFragment.getSelectedContactCount());
             invalidateOptionsMenu();
         }
 
@@ -1107,16 +1115,18 @@ public class PeopleActivity extends ContactsActivity implements
         makeMenuItemVisible(menu, R.id.menu_search, showMiscOptions);
         makeMenuItemVisible(menu, R.id.menu_import_export, showMiscOptions);
         makeMenuItemVisible(menu, R.id.menu_accounts, showMiscOptions);
+        makeMenuItemVisible(menu, R.id.menu_find_duplicates, showMiscOptions);
         makeMenuItemVisible(menu, R.id.menu_blocked_numbers, showMiscOptions && showBlockedNumbers);
         makeMenuItemVisible(menu, R.id.menu_settings,
                 showMiscOptions && !ContactsPreferenceActivity.isEmpty(this));
 
         final boolean showSelectedContactOptions = mActionBarAdapter.isSelectionMode()
-                && mAllFragment.getSelectedContactIds().size() != 0;
+                && mAllFragment.getSelectedContactCount() != 0;
+        makeMenuItemVisible(menu, R.id.menu_select_all, mActionBarAdapter.isSelectionMode());
         makeMenuItemVisible(menu, R.id.menu_share, showSelectedContactOptions);
         makeMenuItemVisible(menu, R.id.menu_delete, showSelectedContactOptions);
         final boolean showLinkContactsOptions = mActionBarAdapter.isSelectionMode()
-                && mAllFragment.getSelectedContactIds().size() > 1;
+                && mAllFragment.getSelectedContactCount() > 1;
         makeMenuItemVisible(menu, R.id.menu_join, showLinkContactsOptions);
 
         // Debug options need to be visible even in search mode.
@@ -1185,6 +1195,9 @@ public class PeopleActivity extends ContactsActivity implements
                 onSearchRequested();
                 return true;
             }
+            case R.id.menu_select_all:
+                mAllFragment.selectAllMatching();
+                return true;
             case R.id.menu_share:
                 shareSelectedContacts();
                 return true;
@@ -1202,6 +1215,10 @@ public class PeopleActivity extends ContactsActivity implements
                 ClearFrequentsDialog.show(getFragmentManager());
                 return true;
             }
+            case R.id.menu_find_duplicates: {
+                startActivity(new Intent(this, DuplicatesActivity.class));
+                return true;
+            }
             case R.id.menu_help:
                 HelpUtils.launchHelpAndFeedbackForMainScreen(this);
                 return true;
@@ -1252,41 +1269,30 @@ public class PeopleActivity extends ContactsActivity implements
     }
 
     /**
-     * Share all contacts that are currently selected in mAllFragment. This method is pretty
-     * inefficient for handling large numbers of contacts. I don't expect this to be a problem.
+     * Share all contacts that are currently selected in mAllFragment. The vCards are prepared in
+     * the background by {@link ShareContactsFragment}.
      */
     private void shareSelectedContacts() {
-        final StringBuilder uriListBuilder = new StringBuilder();
-        for (Long contactId : mAllFragment.getSelectedContactIds()) {
-            final Uri contactUri = ContentUris.withAppendedId(Contacts.CONTENT_URI, contactId);
-            final Uri lookupUri = Contacts.getLookupUri(getContentResolver(), contactUri);
-            if (lookupUri == null) {
-                continue;
-            }
-            final List<String> pathSegments = lookupUri.getPathSegments();
-            if (pathSegments.size() < 2) {
-                continue;
-            }
-            final String lookupKey = pathSegments.get(pathSegments.size() - 2);
-            if (uriListBuilder.length() > 0) {
-                uriListBuilder.append(':');
+        mAllFragment.resolveSelectedContactIds(new MatchingContactsSelection.Listener() {
+            @Override
+            public void onSelectionResolved(SortedLongSet contactIds) {
+                if (isSafeToCommitTransactions() && !contactIds.isEmpty()) {
+                    ShareContactsFragment.start(PeopleActivity.this, contactIds.toArray());
+                }
             }
-            uriListBuilder.append(Uri.encode(lookupKey));
-        }
-        if (uriListBuilder.length() == 0) {
-            return;
-        }
-        final Uri uri = Uri.withAppendedPath(
-                Contacts.CONTENT_MULTI_VCARD_URI,
-                Uri.encode(uriListBuilder.toString()));
-        final Intent intent = new Intent(Intent.ACTION_SEND);
-        intent.setType(Contacts.CONTENT_VCARD_TYPE);
-        intent.putExtra(Intent.EXTRA_STREAM, uri);
-        ImplicitIntentsUtil.startActivityOutsideApp(this, intent);
+        });
     }
 
     private void joinSelectedContacts() {
-        JoinContactsDialogFragment.start(this, mAllFragment.getSelectedContactIds());
+        mAllFragment.resolveSelectedContactIds(new MatchingContactsSelection.Listener() {
+            @Override
+            public void onSelectionResolved(SortedLongSet contactIds) {
+                if (isSafeToCommitTransactions() && contactIds.size() > 1) {
+                    JoinContactsDialogFragment.start(PeopleActivity.this,
+                            contactIds.toArray());
+                }
+            }
+        });
     }
 
     @Override
@@ -1295,8 +1301,20 @@ public class PeopleActivity extends ContactsActivity implements
     }
 
     private void deleteSelectedContacts() {
-        ContactMultiDeletionInteraction.start(PeopleActivity.this,
-                mAllFragment.getSelectedContactIds());
+        mAllFragment.resolveSelectedContactIds(new MatchingContactsSelection.Listener() {
+            @Override
+            public void onSelectionResolved(SortedLongSet contactIds) {
+                if (isSafeToCommitTransactions() && !contactIds.isEmpty()) {
+                    ContactMultiDeletionInteraction.start(PeopleActivity.this,
+                            contactIds.toArray());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onDeletionStarted(long[] contactIds) {
+        mAllFragment.hideContactsPendingDeletion(contactIds);
     }
 
     @Override
@@ -1304,6 +1322,21 @@ public class PeopleActivity extends ContactsActivity implements
         mActionBarAdapter.setSelectionMode(false);
     }
 
+    @Override
+    public void onServiceCompleted(Intent callbackIntent) {
+        if (ContactMultiDeletionInteraction.ACTION_DELETION_COMPLETED.equals(
+                callbackIntent.getAction())) {
+            final long[] contactIds = callbackIntent.getLongArrayExtra(
+                    ContactSaveService.EXTRA_CONTACT_IDS);
+            if (contactIds != null && mAllFragment != null) {
+                mAllFragment.onContactsDeletionCompleted(contactIds, callbackIntent
+                        .getBooleanExtra(ContactSaveService.EXTRA_SAVE_SUCCEEDED, false));
+            }
+            return;
+        }
+        super.onServiceCompleted(callbackIntent);
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         switch (requestCode) {
@@ -0,0 +1,715 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.contacts.duplicates;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.Data;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.contacts.editor.ContactNameIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds groups of likely duplicate contacts in the whole address book.
+ *
+ * Contacts are first put into blocks of contacts sharing a normalized name token, their full
+ * name, a phone number suffix or an email local part. Only pairs of contacts within a block are
+ * scored, in parallel on a {@link ForkJoinPool}. Pairs scoring at least
+ * {@link #MIN_DUPLICATE_SCORE} are merged into groups of duplicates.
+ *
+ * Blocks are processed in chunks. The progress is saved after every chunk, so that an
+ * interrupted scan resumes where it stopped. Once a scan completed, the next one only rescores
+ * the blocks of contacts that changed since.
+ */
+public class DuplicateFinder {
+    private static final String TAG = "DuplicateFinder";
+
+    private static final String STATE_FILE_NAME = "duplicate_scan_state";
+    private static final int STATE_VERSION = 1;
+
+    /**
+     * Blocks with more contacts than this, e.g. for a very common first name, are skipped.
+     * Their duplicates are still found through more specific keys like the full name.
+     */
+    private static final int MAX_BLOCK_SIZE = 200;
+
+    /** Number of blocks scored between two progress updates and state saves. */
+    private static final int BLOCKS_PER_CHUNK = 4096;
+
+    /** Number of blocks scored by a single fork-join task without splitting it further. */
+    private static final int BLOCKS_PER_TASK = 128;
+
+    private static final int MIN_NAME_TOKEN_LENGTH = 2;
+    private static final int PHONE_SUFFIX_LENGTH = 7;
+    private static final int MIN_EMAIL_LOCAL_PART_LENGTH = 3;
+
+    private static final String KEY_PREFIX_FULL_NAME = "f:";
+    private static final String KEY_PREFIX_NAME_TOKEN = "n:";
+    private static final String KEY_PREFIX_PHONE = "p:";
+    private static final String KEY_PREFIX_EMAIL = "e:";
+
+    private static final int SCORE_SAME_NAME = 3;
+    private static final int SCORE_SHARED_NAME_TOKEN = 1;
+    private static final int SCORE_SHARED_PHONE = 2;
+    private static final int SCORE_SHARED_EMAIL = 2;
+    private static final int MIN_DUPLICATE_SCORE = 3;
+
+    public interface Listener {
+        /**
+         * Called on the scanning thread whenever more blocks have been scored, with all
+         * duplicate groups found so far. The scan is complete when processedBlocks equals
+         * totalBlocks.
+         */
+        void onDuplicatesUpdated(List<DuplicateGroup> groups, int processedBlocks,
+                int totalBlocks);
+    }
+
+    /**
+     * Contacts that are likely duplicates of each other.
+     */
+    public static final class DuplicateGroup {
+        private final long[] mContactIds;
+        private final String[] mDisplayNames;
+
+        private DuplicateGroup(long[] contactIds, String[] displayNames) {
+            mContactIds = contactIds;
+            mDisplayNames = displayNames;
+        }
+
+        public long[] getContactIds() {
+            return mContactIds;
+        }
+
+        public String[] getDisplayNames() {
+            return mDisplayNames;
+        }
+
+        public TreeSet<Long> getContactIdSet() {
+            final TreeSet<Long> contactIds = new TreeSet<>();
+            for (long contactId : mContactIds) {
+                contactIds.add(contactId);
+            }
+            return contactIds;
+        }
+    }
+
+    private static final class ContactQuery {
+        public static final String[] COLUMNS = {
+            Contacts._ID,
+            Contacts.DISPLAY_NAME_PRIMARY,
+            Contacts.CONTACT_LAST_UPDATED_TIMESTAMP
+        };
+
+        public static final int CONTACT_ID = 0;
+        public static final int DISPLAY_NAME = 1;
+        public static final int LAST_UPDATED_TIMESTAMP = 2;
+    }
+
+    private static final class DataQuery {
+        public static final String SELECTION = Data.MIMETYPE + " IN ('"
+                + Phone.CONTENT_ITEM_TYPE + "','" + Email.CONTENT_ITEM_TYPE + "')";
+
+        public static final String[] COLUMNS = {
+            Data.CONTACT_ID,
+            Data.MIMETYPE,
+            Data.DATA1
+        };
+
+        public static final int CONTACT_ID = 0;
+        public static final int MIMETYPE = 1;
+        public static final int DATA1 = 2;
+    }
+
+    /**
+     * Everything the scan needs to know about the contacts, indexed by position. Contacts are
+     * sorted by ID.
+     */
+    private static final class ContactRecords {
+        public final long[] contactIds;
+        public final String[] displayNames;
+        public final long[] lastUpdatedTimes;
+        /** Sorted normalized name tokens. */
+        public final String[][] nameTokens;
+        public final Set<String>[] phoneSuffixes;
+        public final Set<String>[] emailLocalParts;
+
+        @SuppressWarnings("unchecked")
+        private ContactRecords(int count) {
+            contactIds = new long[count];
+            displayNames = new String[count];
+            lastUpdatedTimes = new long[count];
+            nameTokens = new String[count][];
+            phoneSuffixes = new Set[count];
+            emailLocalParts = new Set[count];
+        }
+
+        public int size() {
+            return contactIds.length;
+        }
+
+        public int indexOf(long contactId) {
+            final int index = Arrays.binarySearch(contactIds, contactId);
+            return index >= 0 ? index : -1;
+        }
+    }
+
+    /** Progress of a scan, as persisted between runs. Pairs are stored as contact IDs. */
+    private static final class ScanState {
+        public long scanStartTime;
+        /** Contacts updated after this are rescored, or -1 to score all contacts. */
+        public long dirtySince;
+        public boolean completed;
+        /** Key of the last block that was scored. */
+        public String lastBlockKey;
+        public long[] pairContactIds;
+    }
+
+    private final Context mContext;
+    private final File mStateFile;
+    private volatile boolean mCancelled;
+
+    public DuplicateFinder(Context context) {
+        mContext = context.getApplicationContext();
+        mStateFile = new File(mContext.getFilesDir(), STATE_FILE_NAME);
+    }
+
+    /**
+     * Stops a running scan after the current chunk. Its progress is saved.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Runs the scan, resuming an interrupted one or updating the result of the last complete
+     * one. Blocks until the scan is complete or cancelled; must not be called on the UI thread.
+     */
+    public void run(Listener listener) {
+        final long start = SystemClock.elapsedRealtime();
+        final long scanStartTime = System.currentTimeMillis();
+        final ContactRecords records = loadContactRecords();
+        if (records == null || mCancelled) {
+            return;
+        }
+
+        final ScanState previousState = readState();
+        final ScanState state = new ScanState();
+        if (previousState != null && !previousState.completed) {
+            // Resume. Contacts changed in the meantime are picked up by the next scan, since
+            // the original start time is kept.
+            state.scanStartTime = previousState.scanStartTime;
+            state.dirtySince = previousState.dirtySince;
+            state.lastBlockKey = previousState.lastBlockKey;
+        } else {
+            state.scanStartTime = scanStartTime;
+            state.dirtySince = previousState != null ? previousState.scanStartTime : -1;
+        }
+
+        final boolean[] dirty = new boolean[records.size()];
+        for (int i = 0; i < dirty.length; i++) {
+            dirty[i] = state.dirtySince < 0 || records.lastUpdatedTimes[i] > state.dirtySince;
+        }
+
+        // Keep the pairs that cannot have changed: both contacts still exist and, unless
+        // resuming, neither of them was updated.
+        final Set<Long> pairs = new HashSet<>();
+        if (previousState != null) {
+            final long[] ids = previousState.pairContactIds;
+            for (int i = 0; i + 1 < ids.length; i += 2) {
+                final int first = records.indexOf(ids[i]);
+                final int second = records.indexOf(ids[i + 1]);
+                if (first < 0 || second < 0) {
+                    continue;
+                }
+                if (previousState.completed && (dirty[first] || dirty[second])) {
+                    continue;
+                }
+                pairs.add(encodePair(first, second));
+            }
+        }
+
+        final Map<String, List<Integer>> blockMap = buildBlocks(records);
+        final String[] blockKeys = blockMap.keySet().toArray(new String[0]);
+        Arrays.sort(blockKeys);
+        final int[][] blocks = new int[blockKeys.length][];
+        final boolean[] blockDirty = new boolean[blockKeys.length];
+        for (int i = 0; i < blockKeys.length; i++) {
+            final List<Integer> members = blockMap.get(blockKeys[i]);
+            blocks[i] = new int[members.size()];
+            for (int j = 0; j < blocks[i].length; j++) {
+                blocks[i][j] = members.get(j);
+                blockDirty[i] |= dirty[blocks[i][j]];
+            }
+        }
+
+        int firstBlock = 0;
+        if (state.lastBlockKey != null) {
+            firstBlock = Arrays.binarySearch(blockKeys, state.lastBlockKey);
+            firstBlock = firstBlock >= 0 ? firstBlock + 1 : -firstBlock - 1;
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            for (int chunkStart = firstBlock; chunkStart < blocks.length;
+                    chunkStart += BLOCKS_PER_CHUNK) {
+                final int chunkEnd = Math.min(blocks.length, chunkStart + BLOCKS_PER_CHUNK);
+                final long[] found = pool.invoke(new ScoreTask(records, blocks, blockDirty,
+                        chunkStart, chunkEnd));
+                if (mCancelled) {
+                    // The chunk may be incomplete, so it is not recorded as scored.
+                    break;
+                }
+                for (long pair : found) {
+                    pairs.add(pair);
+                }
+                state.lastBlockKey = blockKeys[chunkEnd - 1];
+                state.completed = chunkEnd == blocks.length;
+                writeState(state, records, pairs);
+                listener.onDuplicatesUpdated(buildGroups(records, pairs), chunkEnd,
+                        blocks.length);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (firstBlock >= blocks.length) {
+            // Nothing left to score.
+            state.completed = true;
+            writeState(state, records, pairs);
+            listener.onDuplicatesUpdated(buildGroups(records, pairs), blocks.length,
+                    blocks.length);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Scanned " + records.size() + " contacts in " + blocks.length
+                    + " blocks, " + pairs.size() + " pairs, cancelled: " + mCancelled + ", "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    /**
+     * Scores the pairs of contacts within a range of blocks, splitting the range across the
+     * fork-join pool. Returns the pairs that are likely duplicates.
+     */
+    private final class ScoreTask extends RecursiveTask<long[]> {
+        private final ContactRecords mRecords;
+        private final int[][] mBlocks;
+        private final boolean[] mBlockDirty;
+        private final int mStart;
+        private final int mEnd;
+
+        private ScoreTask(ContactRecords records, int[][] blocks, boolean[] blockDirty,
+                int start, int end) {
+            mRecords = records;
+            mBlocks = blocks;
+            mBlockDirty = blockDirty;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (mEnd - mStart > BLOCKS_PER_TASK) {
+                final int middle = (mStart + mEnd) >>> 1;
+                final ScoreTask left = new ScoreTask(mRecords, mBlocks, mBlockDirty, mStart,
+                        middle);
+                final ScoreTask right = new ScoreTask(mRecords, mBlocks, mBlockDirty, middle,
+                        mEnd);
+                left.fork();
+                final long[] rightPairs = right.compute();
+                final long[] leftPairs = left.join();
+                final long[] pairs = Arrays.copyOf(leftPairs, leftPairs.length
+                        + rightPairs.length);
+                System.arraycopy(rightPairs, 0, pairs, leftPairs.length, rightPairs.length);
+                return pairs;
+            }
+
+            long[] pairs = new long[16];
+            int pairCount = 0;
+            for (int b = mStart; b < mEnd && !mCancelled; b++) {
+                if (!mBlockDirty[b]) {
+                    continue;
+                }
+                final int[] block = mBlocks[b];
+                for (int i = 0; i < block.length; i++) {
+                    for (int j = i + 1; j < block.length; j++) {
+                        if (score(mRecords, block[i], block[j]) < MIN_DUPLICATE_SCORE) {
+                            continue;
+                        }
+                        if (pairCount == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, pairCount * 2);
+                        }
+                        pairs[pairCount++] = encodePair(block[i], block[j]);
+                    }
+                }
+            }
+            return Arrays.copyOf(pairs, pairCount);
+        }
+    }
+
+    private static int score(ContactRecords records, int first, int second) {
+        int score = 0;
+        final String[] firstTokens = records.nameTokens[first];
+        final String[] secondTokens = records.nameTokens[second];
+        if (firstTokens.length > 0 && Arrays.equals(firstTokens, secondTokens)) {
+            score += SCORE_SAME_NAME;
+        } else if (sharesElement(firstTokens, secondTokens)) {
+            score += SCORE_SHARED_NAME_TOKEN;
+        }
+        if (intersects(records.phoneSuffixes[first], records.phoneSuffixes[second])) {
+            score += SCORE_SHARED_PHONE;
+        }
+        if (intersects(records.emailLocalParts[first], records.emailLocalParts[second])) {
+            score += SCORE_SHARED_EMAIL;
+        }
+        return score;
+    }
+
+    /** Returns true if the sorted arrays have an element in common. */
+    private static boolean sharesElement(String[] first, String[] second) {
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            final int comparison = first[i].compareTo(second[j]);
+            if (comparison == 0) {
+                return true;
+            } else if (comparison < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    private static boolean intersects(Set<String> first, Set<String> second) {
+        if (first == null || second == null) {
+            return false;
+        }
+        for (String value : first) {
+            if (second.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long encodePair(int first, int second) {
+        final int low = Math.min(first, second);
+        final int high = Math.max(first, second);
+        return ((long) low << 32) | high;
+    }
+
+    private static int pairFirst(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    private static int pairSecond(long pair) {
+        return (int) pair;
+    }
+
+    private ContactRecords loadContactRecords() {
+        final Cursor cursor = mContext.getContentResolver().query(Contacts.CONTENT_URI,
+                ContactQuery.COLUMNS, null, null, Contacts._ID);
+        if (cursor == null) {
+            return null;
+        }
+        final ContactRecords records;
+        final Set<String> tokens = new TreeSet<>();
+        try {
+            records = new ContactRecords(cursor.getCount());
+            int i = 0;
+            while (cursor.moveToNext() && i < records.size()) {
+                records.contactIds[i] = cursor.getLong(ContactQuery.CONTACT_ID);
+                records.displayNames[i] = cursor.getString(ContactQuery.DISPLAY_NAME);
+                records.lastUpdatedTimes[i] = cursor.getLong(ContactQuery.LAST_UPDATED_TIMESTAMP);
+                tokens.clear();
+                ContactNameIndex.addTokens(tokens, records.displayNames[i]);
+                records.nameTokens[i] = tokens.toArray(new String[tokens.size()]);
+                i++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        final Cursor dataCursor = mContext.getContentResolver().query(Data.CONTENT_URI,
+                DataQuery.COLUMNS, DataQuery.SELECTION, null, null);
+        if (dataCursor == null) {
+            return records;
+        }
+        try {
+            while (dataCursor.moveToNext()) {
+                final int index = records.indexOf(dataCursor.getLong(DataQuery.CONTACT_ID));
+                if (index < 0) {
+                    continue;
+                }
+                final String data = dataCursor.getString(DataQuery.DATA1);
+                if (Phone.CONTENT_ITEM_TYPE.equals(dataCursor.getString(DataQuery.MIMETYPE))) {
+                    final String suffix = getPhoneSuffix(data);
+                    if (suffix != null) {
+                        if (records.phoneSuffixes[index] == null) {
+                            records.phoneSuffixes[index] = new HashSet<>(2);
+                        }
+                        records.phoneSuffixes[index].add(suffix);
+                    }
+                } else {
+                    final String localPart = getEmailLocalPart(data);
+                    if (localPart != null) {
+                        if (records.emailLocalParts[index] == null) {
+                            records.emailLocalParts[index] = new HashSet<>(2);
+                        }
+                        records.emailLocalParts[index].add(localPart);
+                    }
+                }
+            }
+        } finally {
+            dataCursor.close();
+        }
+        return records;
+    }
+
+    /**
+     * Returns the last digits of the phone number, which ignores differences in country and
+     * area code formatting, or null if the number is too short.
+     */
+    private static String getPhoneSuffix(String number) {
+        if (TextUtils.isEmpty(number)) {
+            return null;
+        }
+        final char[] suffix = new char[PHONE_SUFFIX_LENGTH];
+        int count = 0;
+        for (int i = number.length() - 1; i >= 0 && count < PHONE_SUFFIX_LENGTH; i--) {
+            final char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                suffix[PHONE_SUFFIX_LENGTH - 1 - count++] = c;
+            }
+        }
+        return count == PHONE_SUFFIX_LENGTH ? new String(suffix) : null;
+    }
+
+    /**
+     * Returns the lower case part of the address before the @, or null if it is too short to
+     * identify a person.
+     */
+    private static String getEmailLocalPart(String address) {
+        if (TextUtils.isEmpty(address)) {
+            return null;
+        }
+        final int at = address.indexOf('@');
+        final String localPart = (at >= 0 ? address.substring(0, at) : address).trim();
+        return localPart.length() >= MIN_EMAIL_LOCAL_PART_LENGTH
+                ? localPart.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static Map<String, List<Integer>> buildBlocks(ContactRecords records) {
+        final Map<String, List<Integer>> blocks = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            final String[] tokens = records.nameTokens[i];
+            if (tokens.length > 0) {
+                addToBlock(blocks, KEY_PREFIX_FULL_NAME + TextUtils.join(" ", tokens), i);
+            }
+            for (String token : tokens) {
+                if (token.length() >= MIN_NAME_TOKEN_LENGTH) {
+                    addToBlock(blocks, KEY_PREFIX_NAME_TOKEN + token, i);
+                }
+            }
+            if (records.phoneSuffixes[i] != null) {
+                for (String suffix : records.phoneSuffixes[i]) {
+                    addToBlock(blocks, KEY_PREFIX_PHONE + suffix, i);
+                }
+            }
+            if (records.emailLocalParts[i] != null) {
+                for (String localPart : records.emailLocalParts[i]) {
+                    addToBlock(blocks, KEY_PREFIX_EMAIL + localPart, i);
+                }
+            }
+        }
+        final List<String> keysToRemove = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> entry : blocks.entrySet()) {
+            final int size = entry.getValue().size();
+            if (size < 2 || size > MAX_BLOCK_SIZE) {
+                keysToRemove.add(entry.getKey());
+            }
+        }
+        for (String key : keysToRemove) {
+            blocks.remove(key);
+        }
+        return blocks;
+    }
+
+    private static void addToBlock(Map<String, List<Integer>> blocks, String key, int index) {
+        List<Integer> block = blocks.get(key);
+        if (block == null) {
+            block = new ArrayList<>(2);
+            blocks.put(key, block);
+        }
+        block.add(index);
+    }
+
+    /**
+     * Merges the pairs into groups of duplicates, sorted by the name of their first contact.
+     */
+    private static List<DuplicateGroup> buildGroups(ContactRecords records, Set<Long> pairs) {
+        final int[] parents = new int[records.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        for (long pair : pairs) {
+            final int first = findRoot(parents, pairFirst(pair));
+            final int second = findRoot(parents, pairSecond(pair));
+            if (first != second) {
+                parents[Math.max(first, second)] = Math.min(first, second);
+            }
+        }
+
+        final Map<Integer, List<Integer>> membersByRoot = new HashMap<>();
+        for (long pair : pairs) {
+            final int root = findRoot(parents, pairFirst(pair));
+            if (!membersByRoot.containsKey(root)) {
+                membersByRoot.put(root, new ArrayList<Integer>());
+            }
+        }
+        for (int i = 0; i < parents.length; i++) {
+            final List<Integer> members = membersByRoot.get(findRoot(parents, i));
+            if (members != null) {
+                members.add(i);
+            }
+        }
+
+        final List<DuplicateGroup> groups = new ArrayList<>(membersByRoot.size());
+        for (List<Integer> members : membersByRoot.values()) {
+            final long[] contactIds = new long[members.size()];
+            final String[] displayNames = new String[members.size()];
+            for (int i = 0; i < contactIds.length; i++) {
+                contactIds[i] = records.contactIds[members.get(i)];
+                displayNames[i] = records.displayNames[members.get(i)];
+            }
+            groups.add(new DuplicateGroup(contactIds, displayNames));
+        }
+        Collections.sort(groups, new Comparator<DuplicateGroup>() {
+            @Override
+            public int compare(DuplicateGroup lhs, DuplicateGroup rhs) {
+                final String lhsName = lhs.mDisplayNames[0] == null ? "" : lhs.mDisplayNames[0];
+                final String rhsName = rhs.mDisplayNames[0] == null ? "" : rhs.mDisplayNames[0];
+                return lhsName.compareToIgnoreCase(rhsName);
+            }
+        });
+        return groups;
+    }
+
+    private static int findRoot(int[] parents, int index) {
+        while (parents[index] != index) {
+            parents[index] = parents[parents[index]];
+            index = parents[index];
+        }
+        return index;
+    }
+
+    private ScanState readState() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mStateFile)));
+            if (in.readInt() != STATE_VERSION) {
+                return null;
+            }
+            final ScanState state = new ScanState();
+            state.scanStartTime = in.readLong();
+            state.dirtySince = in.readLong();
+            state.completed = in.readBoolean();
+            state.lastBlockKey = in.readBoolean() ? in.readUTF() : null;
+            state.pairContactIds = new long[in.readInt() * 2];
+            for (int i = 0; i < state.pairContactIds.length; i++) {
+                state.pairContactIds[i] = in.readLong();
+            }
+            return state;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read the duplicate scan state", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void writeState(ScanState state, ContactRecords records, Set<Long> pairs) {
+        final File tempFile = new File(mStateFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(STATE_VERSION);
+            out.writeLong(state.scanStartTime);
+            out.writeLong(state.dirtySince);
+            out.writeBoolean(state.completed);
+            out.writeBoolean(state.lastBlockKey != null);
+            if (state.lastBlockKey != null) {
+                out.writeUTF(state.lastBlockKey);
+            }
+            out.writeInt(pairs.size());
+            for (long pair : pairs) {
+                out.writeLong(records.contactIds[pairFirst(pair)]);
+                out.writeLong(records.contactIds[pairSecond(pair)]);
+            }
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(mStateFile)) {
+                Log.w(TAG, "Failed to save the duplicate scan state");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write the duplicate scan state", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
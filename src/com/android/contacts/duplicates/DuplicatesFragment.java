@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.contacts.duplicates;
+
+import android.app.ListFragment;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.android.contacts.R;
+import com.android.contacts.duplicates.DuplicateFinder.DuplicateGroup;
+import com.android.contacts.interactions.JoinContactsDialogFragment;
+import com.android.contacts.util.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the groups of likely duplicate contacts found by {@link DuplicateFinder} while the scan
+ * is still running. Clicking a group offers to link its contacts.
+ */
+public class DuplicatesFragment extends ListFragment {
+
+    private DuplicateFinder mFinder;
+    private AsyncTask<Void, Object, Void> mScanTask;
+    private DuplicatesAdapter mAdapter;
+    private DuplicateGroup mPendingJoinGroup;
+    /** Contacts linked from this screen, whose groups are stale in later scan updates. */
+    private final LongHashSet mJoinedContactIds = new LongHashSet();
+    private boolean mScanComplete;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // Keep the scan running across configuration changes.
+        setRetainInstance(true);
+        mAdapter = new DuplicatesAdapter();
+        startScan();
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        setListAdapter(mAdapter);
+        updateEmptyText();
+    }
+
+    @Override
+    public void onDestroy() {
+        if (mFinder != null) {
+            mFinder.cancel();
+        }
+        if (mScanTask != null) {
+            mScanTask.cancel(/* mayInterruptIfRunning = */ false);
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public void onListItemClick(ListView l, View v, int position, long id) {
+        mPendingJoinGroup = mAdapter.getItem(position);
+        JoinContactsDialogFragment.start(getActivity(), mPendingJoinGroup.getContactIdSet());
+    }
+
+    /**
+     * Called once the contacts of the group the user clicked last have been linked.
+     */
+    public void onContactsJoined() {
+        if (mPendingJoinGroup != null) {
+            for (long contactId : mPendingJoinGroup.getContactIds()) {
+                mJoinedContactIds.add(contactId);
+            }
+            mAdapter.remove(mPendingJoinGroup);
+            mPendingJoinGroup = null;
+        }
+    }
+
+    /**
+     * Returns the groups that don't contain a contact linked since the scan started. The scan
+     * keeps reporting these groups from the contacts it read before they were linked.
+     */
+    private List<DuplicateGroup> removeJoinedGroups(List<DuplicateGroup> groups) {
+        if (mJoinedContactIds.isEmpty()) {
+            return groups;
+        }
+        final List<DuplicateGroup> result = new ArrayList<>(groups.size());
+        for (DuplicateGroup group : groups) {
+            boolean joined = false;
+            for (long contactId : group.getContactIds()) {
+                if (mJoinedContactIds.contains(contactId)) {
+                    joined = true;
+                    break;
+                }
+            }
+            if (!joined) {
+                result.add(group);
+            }
+        }
+        return result;
+    }
+
+    private void startScan() {
+        mFinder = new DuplicateFinder(getActivity());
+        mScanTask = new AsyncTask<Void, Object, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                mFinder.run(new DuplicateFinder.Listener() {
+                    @Override
+                    public void onDuplicatesUpdated(List<DuplicateGroup> groups,
+                            int processedBlocks, int totalBlocks) {
+                        publishProgress(groups, processedBlocks == totalBlocks);
+                    }
+                });
+                return null;
+            }
+
+            @Override
+            protected void onProgressUpdate(Object... values) {
+                @SuppressWarnings("unchecked")
+                final List<DuplicateGroup> groups = (List<DuplicateGroup>) values[0];
+                mScanComplete = (Boolean) values[1];
+                mAdapter.setGroups(removeJoinedGroups(groups));
+                updateEmptyText();
+            }
+
+            @Override
+            protected void onPostExecute(Void result) {
+                mScanComplete = true;
+                updateEmptyText();
+            }
+        };
+        mScanTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void updateEmptyText() {
+        if (getActivity() == null || getView() == null) {
+            return;
+        }
+        setEmptyText(getString(mScanComplete
+                ? R.string.duplicates_none_found : R.string.duplicates_scanning));
+    }
+
+    /**
+     * Retained with the fragment, so it doesn't keep a context: views are inflated with the one
+     * of the list, which belongs to the current activity.
+     */
+    private static final class DuplicatesAdapter extends BaseAdapter {
+        private List<DuplicateGroup> mGroups = new ArrayList<>();
+
+        public void setGroups(List<DuplicateGroup> groups) {
+            mGroups = new ArrayList<>(groups);
+            notifyDataSetChanged();
+        }
+
+        public void remove(DuplicateGroup group) {
+            if (mGroups.remove(group)) {
+                notifyDataSetChanged();
+            }
+        }
+
+        @Override
+        public int getCount() {
+            return mGroups.size();
+        }
+
+        @Override
+        public DuplicateGroup getItem(int position) {
+            return mGroups.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mGroups.get(position).getContactIds()[0];
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            final Context context = parent.getContext();
+            final View view = convertView != null ? convertView
+                    : LayoutInflater.from(context).inflate(
+                            android.R.layout.simple_list_item_2, parent, false);
+            final DuplicateGroup group = getItem(position);
+            final String[] displayNames = group.getDisplayNames();
+            final TextView title = (TextView) view.findViewById(android.R.id.text1);
+            final TextView subtitle = (TextView) view.findViewById(android.R.id.text2);
+            title.setText(TextUtils.isEmpty(displayNames[0])
+                    ? context.getString(R.string.missing_name) : displayNames[0]);
+            subtitle.setText(context.getResources().getQuantityString(
+                    R.plurals.duplicates_group_size, displayNames.length,
+                    displayNames.length));
+            return view;
+        }
+    }
+}
@@ -22,14 +22,16 @@ import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
+import android.os.OperationCanceledException;
 import android.os.Process;
+import android.os.SystemClock;
 import android.provider.ContactsContract.CommonDataKinds.Email;
 import android.provider.ContactsContract.CommonDataKinds.Nickname;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
-import android.provider.ContactsContract.CommonDataKinds.Photo;
 import android.provider.ContactsContract.CommonDataKinds.StructuredName;
 import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Contacts.AggregationSuggestions;
@@ -37,14 +39,18 @@ import android.provider.ContactsContract.Contacts.AggregationSuggestions.Builder
 import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.RawContacts;
 import android.text.TextUtils;
+import android.util.Log;
 
 import com.android.contacts.common.model.ValuesDelta;
 import com.android.contacts.compat.AggregationSuggestionsCompat;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Runs asynchronous queries to obtain aggregation suggestions in the as-you-type mode.
@@ -78,14 +84,13 @@ public class AggregationSuggestionEngine extends HandlerThread {
         public String phoneNumber;
         public String emailAddress;
         public String nickname;
-        public byte[] photo;
         public List<RawContact> rawContacts;
 
         @Override
         public String toString() {
             return "ID: " + contactId + " rawContacts: " + rawContacts + " name: " + name
             + " phone: " + phoneNumber + " email: " + emailAddress + " nickname: "
-            + nickname + (photo != null ? " [has photo]" : "");
+            + nickname + (photoId != 0 ? " photoId: " + photoId : "");
         }
     }
 
@@ -96,15 +101,148 @@ public class AggregationSuggestionEngine extends HandlerThread {
 
         @Override
         public void onChange(boolean selfChange) {
-            scheduleSuggestionLookup();
+            // Bursts of changes, e.g. during a sync, result in a single check. A pending check
+            // is not pushed back so that it still runs during a continuous stream of changes,
+            // but checks get less frequent while the changes go on.
+            final Handler handler = getHandler();
+            if (!handler.hasMessages(MESSAGE_CONTACTS_CHANGED)) {
+                if (SystemClock.elapsedRealtime() - mLastContactsChangeCheckMillis
+                        > 2 * mContactsChangeCheckDelayMillis) {
+                    mContactsChangeCheckDelayMillis = CONTACTS_CHANGE_COALESCE_DELAY_MILLIS;
+                }
+                handler.sendEmptyMessageDelayed(MESSAGE_CONTACTS_CHANGED,
+                        mContactsChangeCheckDelayMillis);
+            }
         }
     }
 
+    /**
+     * Contacts that changed since the last lookup. Used to decide whether a change could
+     * affect the suggestions.
+     */
+    private static final class ChangedContactsQuery {
+        public static final String[] COLUMNS = {
+            Contacts._ID,
+            Contacts.CONTACT_LAST_UPDATED_TIMESTAMP,
+            Contacts.DISPLAY_NAME_PRIMARY,
+            Contacts.DISPLAY_NAME_ALTERNATIVE,
+            Contacts.PHONETIC_NAME
+        };
+
+        public static final int CONTACT_ID = 0;
+        public static final int LAST_UPDATED_TIMESTAMP = 1;
+        public static final int DISPLAY_NAME_PRIMARY = 2;
+        public static final int DISPLAY_NAME_ALTERNATIVE = 3;
+        public static final int PHONETIC_NAME = 4;
+    }
+
     private static final int MESSAGE_RESET = 0;
     private static final int MESSAGE_NAME_CHANGE = 1;
     private static final int MESSAGE_DATA_CURSOR = 2;
+    private static final int MESSAGE_CONTACTS_CHANGED = 3;
 
+    /** Window in which contact change notifications are coalesced into one check. */
+    private static final long CONTACTS_CHANGE_COALESCE_DELAY_MILLIS = 1000;
+
+    /** The window doubles up to this while contacts keep changing. */
+    private static final long MAX_CONTACTS_CHANGE_COALESCE_DELAY_MILLIS = 30000;
+
+    /** Lookup delay used until the typing cadence is known. */
     private static final long SUGGESTION_LOOKUP_DELAY_MILLIS = 300;
+    private static final long MIN_SUGGESTION_LOOKUP_DELAY_MILLIS = 50;
+    private static final long MAX_SUGGESTION_LOOKUP_DELAY_MILLIS = 500;
+
+    /** Pauses between name changes longer than this do not count towards the typing cadence. */
+    private static final long MAX_TYPING_INTERVAL_MILLIS = 1000;
+
+    /**
+     * A pending suggestion lookup. The names are matched against the {@link ContactNameIndex};
+     * the URI is only queried while the index is not ready yet.
+     */
+    private static final class SuggestionRequest {
+        public final String[] names;
+        public final Uri uri;
+        /** {@link SystemClock#elapsedRealtime} of the name change this request is for. */
+        public final long nameChangeTime;
+        /** Whether suggestions have been delivered for this request. Lookup thread only. */
+        public boolean delivered;
+
+        public SuggestionRequest(String[] names, Uri uri, long nameChangeTime) {
+            this.names = names;
+            this.uri = uri;
+            this.nameChangeTime = nameChangeTime;
+        }
+    }
+
+    /**
+     * Counters describing how well suggestion lookups keep up with typing. Safe to read from
+     * any thread.
+     */
+    public static final class LookupMetrics {
+        private int mQueryCount;
+        private int mCancelledQueryCount;
+        private int mDiscardedQueryCount;
+        private int mDeliveredCount;
+        private long mTotalLatencyMillis;
+        private long mMaxLatencyMillis;
+
+        private synchronized void onQuery() {
+            mQueryCount++;
+        }
+
+        private synchronized void onQueryCancelled() {
+            mCancelledQueryCount++;
+        }
+
+        private synchronized void onQueryDiscarded() {
+            mDiscardedQueryCount++;
+        }
+
+        private synchronized void onDelivered(long latencyMillis) {
+            mDeliveredCount++;
+            mTotalLatencyMillis += latencyMillis;
+            mMaxLatencyMillis = Math.max(mMaxLatencyMillis, latencyMillis);
+        }
+
+        /** Returns the number of provider queries started. */
+        public synchronized int getQueryCount() {
+            return mQueryCount;
+        }
+
+        /**
+         * Returns the number of provider queries whose result was not used, because they were
+         * cancelled while running or their result was stale once they finished.
+         */
+        public synchronized int getWastedQueryCount() {
+            return mCancelledQueryCount + mDiscardedQueryCount;
+        }
+
+        /** Returns the number of wasted queries that were cancelled while running. */
+        public synchronized int getCancelledQueryCount() {
+            return mCancelledQueryCount;
+        }
+
+        /**
+         * Returns the average time from a name change to its suggestions being available, or
+         * -1 if no suggestions were delivered yet.
+         */
+        public synchronized long getAverageSuggestionLatencyMillis() {
+            return mDeliveredCount == 0 ? -1 : mTotalLatencyMillis / mDeliveredCount;
+        }
+
+        /** Returns the longest time from a name change to its suggestions being available. */
+        public synchronized long getMaxSuggestionLatencyMillis() {
+            return mMaxLatencyMillis;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "queries: " + mQueryCount + " cancelled: " + mCancelledQueryCount
+                    + " discarded: " + mDiscardedQueryCount + " delivered: " + mDeliveredCount
+                    + " avg latency: " + getAverageSuggestionLatencyMillis() + "ms"
+                    + " max latency: " + mMaxLatencyMillis + "ms";
+        }
+    }
 
     private final Context mContext;
 
@@ -116,9 +254,31 @@ public class AggregationSuggestionEngine extends HandlerThread {
     private Listener mListener;
     private Cursor mDataCursor;
     private ContentObserver mContentObserver;
-    private Uri mSuggestionsUri;
+    private volatile SuggestionRequest mSuggestionRequest;
     private int mSuggestionsLimit = 3;
     private boolean mPruneInvisibleContacts = true;
+    private boolean mNameIndexAcquired;
+
+    private final LookupMetrics mMetrics = new LookupMetrics();
+    /** Signal of the provider query in flight, if any. */
+    private volatile CancellationSignal mCancellationSignal;
+    /** Exponential moving averages, 0 while unknown. */
+    private volatile long mAverageQueryLatencyMillis;
+    private long mAverageTypingIntervalMillis;
+    private long mLastNameChangeTime;
+    /**
+     * {@link System#currentTimeMillis} at which the last lookup started, or 0. Contacts updated
+     * after that may not be reflected in the suggestions. Lookup thread only.
+     */
+    private long mLastLookupTime;
+    /**
+     * {@link System#currentTimeMillis} at which contact changes were last checked, or at which
+     * the last lookup started if later. Lookup thread only.
+     */
+    private long mLastContactsChangeCheckTime;
+    /** {@link SystemClock#elapsedRealtime} of the last contact change check. Lookup thread only. */
+    private long mLastContactsChangeCheckMillis;
+    private long mContactsChangeCheckDelayMillis = CONTACTS_CHANGE_COALESCE_DELAY_MILLIS;
 
     public AggregationSuggestionEngine(Context context) {
         super("AggregationSuggestions", Process.THREAD_PRIORITY_BACKGROUND);
@@ -162,8 +322,20 @@ public class AggregationSuggestionEngine extends HandlerThread {
         mListener = listener;
     }
 
+    /**
+     * Returns the lookup metrics of this engine.
+     */
+    @VisibleForTesting
+    public LookupMetrics getLookupMetrics() {
+        return mMetrics;
+    }
+
     @Override
     public boolean quit() {
+        cancelQueryInFlight();
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Suggestion lookups: " + mMetrics);
+        }
         if (mDataCursor != null) {
             mDataCursor.close();
         }
@@ -172,18 +344,37 @@ public class AggregationSuggestionEngine extends HandlerThread {
             mContext.getContentResolver().unregisterContentObserver(mContentObserver);
             mContentObserver = null;
         }
+        if (mNameIndexAcquired) {
+            ContactNameIndex.getInstance(mContext).release();
+            mNameIndexAcquired = false;
+        }
         return super.quit();
     }
 
     public void reset() {
         Handler handler = getHandler();
         handler.removeMessages(MESSAGE_NAME_CHANGE);
+        cancelQueryInFlight();
         handler.sendEmptyMessage(MESSAGE_RESET);
     }
 
     public void onNameChange(ValuesDelta values) {
-        mSuggestionsUri = buildAggregationSuggestionUri(values);
-        if (mSuggestionsUri != null) {
+        final long now = SystemClock.elapsedRealtime();
+        if (mLastNameChangeTime != 0) {
+            final long interval = now - mLastNameChangeTime;
+            if (interval < MAX_TYPING_INTERVAL_MILLIS) {
+                mAverageTypingIntervalMillis = updateAverage(mAverageTypingIntervalMillis,
+                        interval);
+            }
+        }
+        mLastNameChangeTime = now;
+
+        mSuggestionRequest = buildSuggestionRequest(values, now);
+        if (mSuggestionRequest != null) {
+            if (!mNameIndexAcquired) {
+                ContactNameIndex.getInstance(mContext).acquire();
+                mNameIndexAcquired = true;
+            }
             if (mContentObserver == null) {
                 mContentObserver = new SuggestionContentObserver(getHandler());
                 mContext.getContentResolver().registerContentObserver(
@@ -199,16 +390,46 @@ public class AggregationSuggestionEngine extends HandlerThread {
     protected void scheduleSuggestionLookup() {
         Handler handler = getHandler();
         handler.removeMessages(MESSAGE_NAME_CHANGE);
+        // Whatever is in flight is about to be superseded.
+        cancelQueryInFlight();
 
-        if (mSuggestionsUri == null) {
+        if (mSuggestionRequest == null) {
             return;
         }
 
-        Message msg = handler.obtainMessage(MESSAGE_NAME_CHANGE, mSuggestionsUri);
-        handler.sendMessageDelayed(msg, SUGGESTION_LOOKUP_DELAY_MILLIS);
+        Message msg = handler.obtainMessage(MESSAGE_NAME_CHANGE, mSuggestionRequest);
+        handler.sendMessageDelayed(msg, getSuggestionLookupDelayMillis());
+    }
+
+    /**
+     * Returns how long to wait for more name changes before looking up suggestions. The wait
+     * is a bit longer than the usual pause between keystrokes, so that lookups run when the
+     * user pauses rather than between keystrokes. If queries take longer than that pause, most
+     * of them would be cancelled by the next keystroke, so the wait grows with the query
+     * latency instead.
+     */
+    private long getSuggestionLookupDelayMillis() {
+        final long typingInterval = mAverageTypingIntervalMillis;
+        if (typingInterval == 0) {
+            return SUGGESTION_LOOKUP_DELAY_MILLIS;
+        }
+        final long delay = Math.max(typingInterval * 3 / 2, mAverageQueryLatencyMillis);
+        return Math.max(MIN_SUGGESTION_LOOKUP_DELAY_MILLIS,
+                Math.min(MAX_SUGGESTION_LOOKUP_DELAY_MILLIS, delay));
+    }
+
+    private static long updateAverage(long average, long value) {
+        return average == 0 ? value : (average * 3 + value) / 4;
+    }
+
+    private void cancelQueryInFlight() {
+        final CancellationSignal cancellationSignal = mCancellationSignal;
+        if (cancellationSignal != null) {
+            cancellationSignal.cancel();
+        }
     }
 
-    private Uri buildAggregationSuggestionUri(ValuesDelta values) {
+    private SuggestionRequest buildSuggestionRequest(ValuesDelta values, long nameChangeTime) {
         StringBuilder nameSb = new StringBuilder();
         appendValue(nameSb, values, StructuredName.PREFIX);
         appendValue(nameSb, values, StructuredName.GIVEN_NAME);
@@ -229,6 +450,13 @@ public class AggregationSuggestionEngine extends HandlerThread {
             return null;
         }
 
+        final String[] names = new String[] {nameSb.toString(), phoneticNameSb.toString()};
+        return new SuggestionRequest(names, buildAggregationSuggestionUri(nameSb, phoneticNameSb),
+                nameChangeTime);
+    }
+
+    private Uri buildAggregationSuggestionUri(StringBuilder nameSb,
+            StringBuilder phoneticNameSb) {
         // AggregationSuggestions.Builder() became visible in API level 23, so use it if applicable.
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             final Builder uriBuilder = new AggregationSuggestions.Builder()
@@ -271,9 +499,20 @@ public class AggregationSuggestionEngine extends HandlerThread {
         switch (msg.what) {
             case MESSAGE_RESET:
                 mSuggestedContactIds = new long[0];
+                mLastLookupTime = 0;
+                mLastContactsChangeCheckTime = 0;
+                break;
+            case MESSAGE_CONTACTS_CHANGED:
+                mLastContactsChangeCheckMillis = SystemClock.elapsedRealtime();
+                mContactsChangeCheckDelayMillis = Math.min(
+                        MAX_CONTACTS_CHANGE_COALESCE_DELAY_MILLIS,
+                        2 * mContactsChangeCheckDelayMillis);
+                if (mayContactsChangeAffectSuggestions()) {
+                    scheduleSuggestionLookup();
+                }
                 break;
             case MESSAGE_NAME_CHANGE:
-                loadAggregationSuggestions((Uri) msg.obj);
+                loadAggregationSuggestions((SuggestionRequest) msg.obj);
                 break;
         }
     }
@@ -285,8 +524,7 @@ public class AggregationSuggestionEngine extends HandlerThread {
                     + Phone.CONTENT_ITEM_TYPE + "','"
                     + Email.CONTENT_ITEM_TYPE + "','"
                     + StructuredName.CONTENT_ITEM_TYPE + "','"
-                    + Nickname.CONTENT_ITEM_TYPE + "','"
-                    + Photo.CONTENT_ITEM_TYPE + "')"
+                    + Nickname.CONTENT_ITEM_TYPE + "')"
                 + " AND " + Data.CONTACT_ID + " IN (";
 
         public static final String[] COLUMNS = {
@@ -299,7 +537,6 @@ public class AggregationSuggestionEngine extends HandlerThread {
             Data.MIMETYPE,
             Data.DATA1,
             Data.IS_SUPER_PRIMARY,
-            Photo.PHOTO,
             RawContacts.ACCOUNT_TYPE,
             RawContacts.ACCOUNT_NAME,
             RawContacts.DATA_SET
@@ -314,73 +551,217 @@ public class AggregationSuggestionEngine extends HandlerThread {
         public static final int MIMETYPE = 6;
         public static final int DATA1 = 7;
         public static final int IS_SUPERPRIMARY = 8;
-        public static final int PHOTO = 9;
-        public static final int ACCOUNT_TYPE = 10;
-        public static final int ACCOUNT_NAME = 11;
-        public static final int DATA_SET = 12;
+        public static final int ACCOUNT_TYPE = 9;
+        public static final int ACCOUNT_NAME = 10;
+        public static final int DATA_SET = 11;
     }
 
-    private void loadAggregationSuggestions(Uri uri) {
-        ContentResolver contentResolver = mContext.getContentResolver();
-        Cursor cursor = contentResolver.query(uri, new String[]{Contacts._ID}, null, null, null);
+    /**
+     * Returns true if contacts changed since the last lookup in a way that could change the
+     * suggestions: a suggested contact was updated or deleted, or an updated contact has a name
+     * token that overlaps with the name being looked up. Only the contacts updated since the
+     * last check are read, the earlier ones were found not to matter.
+     */
+    private boolean mayContactsChangeAffectSuggestions() {
+        final SuggestionRequest request = mSuggestionRequest;
+        if (request == null || mLastLookupTime == 0
+                || getHandler().hasMessages(MESSAGE_NAME_CHANGE)) {
+            // Nothing to update, or a lookup is about to run anyway.
+            return false;
+        }
+        final long lastCheckTime = mLastContactsChangeCheckTime;
+        mLastContactsChangeCheckTime = System.currentTimeMillis();
+        final long[] suggestedContactIds = mSuggestedContactIds;
+
+        final StringBuilder selection = new StringBuilder();
+        selection.append(Contacts.CONTACT_LAST_UPDATED_TIMESTAMP).append(">?");
+        if (suggestedContactIds.length > 0) {
+            selection.append(" OR ").append(Contacts._ID).append(" IN (");
+            for (int i = 0; i < suggestedContactIds.length; i++) {
+                if (i > 0) {
+                    selection.append(',');
+                }
+                selection.append(suggestedContactIds[i]);
+            }
+            selection.append(')');
+        }
+        final Cursor cursor = mContext.getContentResolver().query(Contacts.CONTENT_URI,
+                ChangedContactsQuery.COLUMNS, selection.toString(),
+                new String[] {String.valueOf(lastCheckTime)}, null);
         if (cursor == null) {
-            return;
+            return false;
+        }
+
+        final Set<String> queryTokens = new HashSet<>();
+        for (String name : request.names) {
+            ContactNameIndex.addTokens(queryTokens, name);
+        }
+        final Set<String> nameTokens = new HashSet<>();
+        int suggestedContactCount = 0;
+        try {
+            while (cursor.moveToNext()) {
+                final long contactId = cursor.getLong(ChangedContactsQuery.CONTACT_ID);
+                final boolean updated = cursor.getLong(
+                        ChangedContactsQuery.LAST_UPDATED_TIMESTAMP) > lastCheckTime;
+                if (Arrays.binarySearch(suggestedContactIds, contactId) >= 0) {
+                    suggestedContactCount++;
+                    if (updated) {
+                        return true;
+                    }
+                    continue;
+                }
+                if (contactId == mContactId) {
+                    continue;
+                }
+                nameTokens.clear();
+                ContactNameIndex.addTokens(nameTokens, cursor.getString(
+                        ChangedContactsQuery.DISPLAY_NAME_PRIMARY));
+                ContactNameIndex.addTokens(nameTokens, cursor.getString(
+                        ChangedContactsQuery.DISPLAY_NAME_ALTERNATIVE));
+                ContactNameIndex.addTokens(nameTokens, cursor.getString(
+                        ChangedContactsQuery.PHONETIC_NAME));
+                if (tokensOverlap(queryTokens, nameTokens)) {
+                    return true;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        // A suggested contact is gone.
+        return suggestedContactCount < suggestedContactIds.length;
+    }
+
+    /**
+     * Returns true if a query token is a prefix of a name token, or the other way around.
+     */
+    private static boolean tokensOverlap(Set<String> queryTokens, Set<String> nameTokens) {
+        for (String queryToken : queryTokens) {
+            for (String nameToken : nameTokens) {
+                if (nameToken.startsWith(queryToken) || queryToken.startsWith(nameToken)) {
+                    return true;
+                }
+            }
         }
+        return false;
+    }
+
+    private void loadAggregationSuggestions(SuggestionRequest request) {
+        mLastLookupTime = System.currentTimeMillis();
+        mLastContactsChangeCheckTime = mLastLookupTime;
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        mCancellationSignal = cancellationSignal;
         try {
+            // Candidates come from the local name index. The provider is only asked for the
+            // details of the top candidates, which also drops contacts deleted since the index
+            // was built.
+            final long[] candidateIds = ContactNameIndex.getInstance(mContext).findCandidates(
+                    request.names, mContactId, mSuggestionsLimit);
+            if (candidateIds == null) {
+                loadAggregationSuggestionsFromProvider(request, cancellationSignal);
+                return;
+            }
+
             // If a new request is pending, chuck the result of the previous request
             if (getHandler().hasMessages(MESSAGE_NAME_CHANGE)) {
                 return;
             }
+            if (updateSuggestedContactIds(candidateIds)) {
+                loadSuggestionData(request, cancellationSignal);
+            }
+        } catch (OperationCanceledException e) {
+            mMetrics.onQueryCancelled();
+            // The suggestions were not updated to match the cancelled query.
+            mSuggestedContactIds = new long[0];
+        } finally {
+            mCancellationSignal = null;
+        }
+    }
 
-            boolean changed = updateSuggestedContactIds(cursor);
-            if (!changed) {
+    /**
+     * Asks the provider for aggregation suggestions. Only used until the
+     * {@link ContactNameIndex} has been built.
+     */
+    private void loadAggregationSuggestionsFromProvider(SuggestionRequest request,
+            CancellationSignal cancellationSignal) {
+        Cursor cursor = query(request.uri, new String[]{Contacts._ID}, null, null,
+                cancellationSignal);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            // If a new request is pending, chuck the result of the previous request
+            if (getHandler().hasMessages(MESSAGE_NAME_CHANGE)) {
+                mMetrics.onQueryDiscarded();
                 return;
             }
 
-            StringBuilder sb = new StringBuilder(DataQuery.SELECTION_PREFIX);
-            int count = mSuggestedContactIds.length;
-            for (int i = 0; i < count; i++) {
-                if (i > 0) {
-                    sb.append(',');
-                }
-                sb.append(mSuggestedContactIds[i]);
+            final long[] contactIds = new long[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext() && i < contactIds.length) {
+                contactIds[i++] = cursor.getLong(0);
             }
-            sb.append(')');
-            sb.toString();
-
-            Cursor dataCursor = contentResolver.query(Data.CONTENT_URI,
-                    DataQuery.COLUMNS, sb.toString(), null, Data.CONTACT_ID);
-            if (dataCursor != null) {
-                mMainHandler.sendMessage(mMainHandler.obtainMessage(MESSAGE_DATA_CURSOR, dataCursor));
+            if (updateSuggestedContactIds(contactIds)) {
+                loadSuggestionData(request, cancellationSignal);
             }
         } finally {
             cursor.close();
         }
     }
 
-    private boolean updateSuggestedContactIds(final Cursor cursor) {
-        final int count = cursor.getCount();
-        boolean changed = count != mSuggestedContactIds.length;
-        final ArrayList<Long> newIds = new ArrayList<Long>(count);
-        while (cursor.moveToNext()) {
-            final long contactId = cursor.getLong(0);
-            if (!changed &&
-                    Arrays.binarySearch(mSuggestedContactIds, contactId) < 0) {
-                changed = true;
+    private void loadSuggestionData(SuggestionRequest request,
+            CancellationSignal cancellationSignal) {
+        StringBuilder sb = new StringBuilder(DataQuery.SELECTION_PREFIX);
+        int count = mSuggestedContactIds.length;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
             }
-            newIds.add(contactId);
+            sb.append(mSuggestedContactIds[i]);
         }
+        sb.append(')');
 
-        if (changed) {
-            mSuggestedContactIds = new long[newIds.size()];
-            int i = 0;
-            for (final Long newId : newIds) {
-                mSuggestedContactIds[i++] = newId;
-            }
-            Arrays.sort(mSuggestedContactIds);
+        Cursor dataCursor = query(Data.CONTENT_URI, DataQuery.COLUMNS, sb.toString(),
+                Data.CONTACT_ID, cancellationSignal);
+        if (dataCursor == null) {
+            return;
+        }
+        if (getHandler().hasMessages(MESSAGE_NAME_CHANGE)) {
+            mMetrics.onQueryDiscarded();
+            dataCursor.close();
+            // Make sure the next lookup delivers its result even if it picks the same
+            // contacts.
+            mSuggestedContactIds = new long[0];
+            return;
         }
+        if (!request.delivered) {
+            request.delivered = true;
+            mMetrics.onDelivered(SystemClock.elapsedRealtime() - request.nameChangeTime);
+        }
+        mMainHandler.sendMessage(mMainHandler.obtainMessage(MESSAGE_DATA_CURSOR, dataCursor));
+    }
+
+    /**
+     * Runs a cancellable provider query and records its latency.
+     */
+    private Cursor query(Uri uri, String[] projection, String selection, String sortOrder,
+            CancellationSignal cancellationSignal) {
+        mMetrics.onQuery();
+        final long start = SystemClock.elapsedRealtime();
+        final Cursor cursor = mContext.getContentResolver().query(uri, projection, selection,
+                null, sortOrder, cancellationSignal);
+        mAverageQueryLatencyMillis = updateAverage(mAverageQueryLatencyMillis,
+                SystemClock.elapsedRealtime() - start);
+        return cursor;
+    }
 
-        return changed;
+    private boolean updateSuggestedContactIds(long[] contactIds) {
+        final long[] newIds = Arrays.copyOf(contactIds, contactIds.length);
+        Arrays.sort(newIds);
+        if (Arrays.equals(newIds, mSuggestedContactIds)) {
+            return false;
+        }
+        mSuggestedContactIds = newIds;
+        return true;
     }
 
     protected void deliverNotification(Cursor dataCursor) {
@@ -434,6 +815,8 @@ public class AggregationSuggestionEngine extends HandlerThread {
                     suggestion.contactId = contactId;
                     suggestion.name = mDataCursor.getString(DataQuery.DISPLAY_NAME);
                     suggestion.lookupKey = mDataCursor.getString(DataQuery.LOOKUP_KEY);
+                    // The thumbnail itself is loaded on demand by ContactPhotoManager.
+                    suggestion.photoId = mDataCursor.getLong(DataQuery.PHOTO_ID);
                     suggestion.rawContacts = Lists.newArrayList();
                     list.add(suggestion);
                     currentContactId = contactId;
@@ -469,13 +852,6 @@ public class AggregationSuggestionEngine extends HandlerThread {
                     if (!TextUtils.isEmpty(data)) {
                         suggestion.nickname = data;
                     }
-                } else if (Photo.CONTENT_ITEM_TYPE.equals(mimetype)) {
-                    long dataId = mDataCursor.getLong(DataQuery.ID);
-                    long photoId = mDataCursor.getLong(DataQuery.PHOTO_ID);
-                    if (dataId == photoId && !mDataCursor.isNull(DataQuery.PHOTO)) {
-                        suggestion.photo = mDataCursor.getBlob(DataQuery.PHOTO);
-                        suggestion.photoId = photoId;
-                    }
                 }
             }
         }
@@ -17,7 +17,6 @@
 package com.android.contacts.editor;
 
 import android.content.Context;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.provider.ContactsContract.Contacts;
 import android.text.TextUtils;
@@ -86,13 +85,11 @@ public class AggregationSuggestionView extends LinearLayout {
         mLookupKey = suggestion.lookupKey;
         mRawContacts = suggestion.rawContacts;
         ImageView photo = (ImageView) findViewById(R.id.aggregation_suggestion_photo);
-        if (suggestion.photo != null) {
-            photo.setImageBitmap(BitmapFactory.decodeByteArray(
-                    suggestion.photo, 0, suggestion.photo.length));
-        } else {
-            photo.setImageDrawable(ContactPhotoManager.getDefaultAvatarDrawableForContact(
-                    getResources(), false, null));
-        }
+        // Also for a suggestion without a photo, so that a load pending for a previous
+        // suggestion bound to this view is cancelled and the default avatar is shown.
+        ContactPhotoManager.getInstance(getContext()).loadThumbnail(photo, suggestion.photoId,
+                /* darkTheme = */ false, /* isCircular = */ false,
+                /* defaultImageRequest = */ null);
 
         TextView name = (TextView) findViewById(R.id.aggregation_suggestion_name);
         name.setText(suggestion.name);
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.contacts.editor;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.ContactsContract.Contacts;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-process index of the normalized name tokens of all contacts, used by
+ * {@link AggregationSuggestionEngine} to find suggestion candidates without querying the
+ * provider on every keystroke.
+ *
+ * The index is built on a background thread from the display names and phonetic names of all
+ * contacts, and rebuilt whenever contacts change while it is in use. Lookups run against an
+ * immutable snapshot and are safe from any thread.
+ */
+public class ContactNameIndex {
+    private static final String TAG = "ContactNameIndex";
+
+    private static final int MESSAGE_REBUILD = 0;
+
+    /** Delay without changes after which the index is rebuilt. */
+    private static final long REBUILD_DELAY_MILLIS = 1000;
+
+    /**
+     * Maximum delay between a change and the rebuild, so that the index still gets refreshed,
+     * though rarely, while contacts keep changing during a sync.
+     */
+    private static final long REBUILD_MAX_DELAY_MILLIS = 30000;
+
+    /** Query tokens shorter than this only match name tokens exactly. */
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    private static final int SCORE_PREFIX_MATCH = 1;
+    private static final int SCORE_EXACT_MATCH = 2;
+
+    private static final class NameQuery {
+        public static final String[] COLUMNS = {
+            Contacts._ID,
+            Contacts.DISPLAY_NAME_PRIMARY,
+            Contacts.DISPLAY_NAME_ALTERNATIVE,
+            Contacts.PHONETIC_NAME
+        };
+
+        public static final int CONTACT_ID = 0;
+        public static final int DISPLAY_NAME_PRIMARY = 1;
+        public static final int DISPLAY_NAME_ALTERNATIVE = 2;
+        public static final int PHONETIC_NAME = 3;
+    }
+
+    /**
+     * Immutable name index. Tokens are sorted, so the tokens sharing a prefix form a contiguous
+     * range. Each token maps to the sorted IDs of the contacts whose names contain it.
+     */
+    private static final class Snapshot {
+        private final String[] mTokens;
+        private final long[][] mPostings;
+
+        private Snapshot(String[] tokens, long[][] postings) {
+            mTokens = tokens;
+            mPostings = postings;
+        }
+    }
+
+    /** Growable list of contact IDs, appended in increasing order. */
+    private static final class PostingList {
+        private long[] mIds = new long[2];
+        private int mSize;
+
+        private void add(long id) {
+            if (mSize == mIds.length) {
+                mIds = Arrays.copyOf(mIds, mSize * 2);
+            }
+            mIds[mSize++] = id;
+        }
+
+        private long[] toArray() {
+            return Arrays.copyOf(mIds, mSize);
+        }
+    }
+
+    /** Match statistics of a single candidate contact. */
+    private static final class Candidate {
+        private final long mContactId;
+        private int mMatchedTokenCount;
+        private int mExactMatchCount;
+        private int mScore;
+
+        private Candidate(long contactId) {
+            mContactId = contactId;
+        }
+    }
+
+    private static final Comparator<Candidate> CANDIDATE_COMPARATOR =
+            new Comparator<Candidate>() {
+                @Override
+                public int compare(Candidate lhs, Candidate rhs) {
+                    if (lhs.mMatchedTokenCount != rhs.mMatchedTokenCount) {
+                        return rhs.mMatchedTokenCount - lhs.mMatchedTokenCount;
+                    }
+                    if (lhs.mScore != rhs.mScore) {
+                        return rhs.mScore - lhs.mScore;
+                    }
+                    return Long.compare(lhs.mContactId, rhs.mContactId);
+                }
+            };
+
+    private static ContactNameIndex sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final ContentObserver mContentObserver;
+
+    private volatile Snapshot mSnapshot;
+
+    /** Number of clients using the index. Only accessed on the main thread. */
+    private int mUseCount;
+
+    /**
+     * Time of the first change not reflected by the index yet, or -1. Only accessed on the
+     * thread of {@link #mHandler}.
+     */
+    private long mFirstChangeMillis = -1;
+
+    public static synchronized ContactNameIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ContactNameIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ContactNameIndex(Context context) {
+        mContext = context;
+        final HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == MESSAGE_REBUILD) {
+                    rebuild();
+                }
+            }
+        };
+        mContentObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                // Wait for the changes to stop, but no longer than REBUILD_MAX_DELAY_MILLIS
+                // after the first one.
+                final long now = SystemClock.elapsedRealtime();
+                if (mFirstChangeMillis == -1) {
+                    mFirstChangeMillis = now;
+                }
+                final long delay = Math.min(REBUILD_DELAY_MILLIS,
+                        mFirstChangeMillis + REBUILD_MAX_DELAY_MILLIS - now);
+                mHandler.removeMessages(MESSAGE_REBUILD);
+                mHandler.sendEmptyMessageDelayed(MESSAGE_REBUILD, Math.max(0, delay));
+            }
+        };
+    }
+
+    /**
+     * Starts keeping the index current. The index is built in the background if it does not
+     * exist yet, or if contacts may have changed while nobody was using it. Each call must be
+     * balanced by a call to {@link #release}. Must be called from the main thread.
+     */
+    public void acquire() {
+        if (mUseCount++ == 0) {
+            mContext.getContentResolver().registerContentObserver(
+                    Contacts.CONTENT_URI, true, mContentObserver);
+            mHandler.removeMessages(MESSAGE_REBUILD);
+            mHandler.sendEmptyMessage(MESSAGE_REBUILD);
+        }
+    }
+
+    /**
+     * Stops keeping the index current once the last client released it. The last snapshot is
+     * kept and refreshed on the next {@link #acquire}. Must be called from the main thread.
+     */
+    public void release() {
+        if (mUseCount == 0) {
+            return;
+        }
+        if (--mUseCount == 0) {
+            mContext.getContentResolver().unregisterContentObserver(mContentObserver);
+            mHandler.removeMessages(MESSAGE_REBUILD);
+        }
+    }
+
+    /**
+     * Returns true once the index has been built at least once.
+     */
+    public boolean isReady() {
+        return mSnapshot != null;
+    }
+
+    private void rebuild() {
+        mFirstChangeMillis = -1;
+        final long start = SystemClock.elapsedRealtime();
+        final Cursor cursor = mContext.getContentResolver().query(Contacts.CONTENT_URI,
+                NameQuery.COLUMNS, null, null, Contacts._ID);
+        if (cursor == null) {
+            return;
+        }
+        final Map<String, PostingList> postingsByToken = new HashMap<>();
+        final Set<String> contactTokens = new HashSet<>();
+        try {
+            while (cursor.moveToNext()) {
+                final long contactId = cursor.getLong(NameQuery.CONTACT_ID);
+                contactTokens.clear();
+                addTokens(contactTokens, cursor.getString(NameQuery.DISPLAY_NAME_PRIMARY));
+                addTokens(contactTokens, cursor.getString(NameQuery.DISPLAY_NAME_ALTERNATIVE));
+                addTokens(contactTokens, cursor.getString(NameQuery.PHONETIC_NAME));
+                for (String token : contactTokens) {
+                    PostingList postings = postingsByToken.get(token);
+                    if (postings == null) {
+                        postings = new PostingList();
+                        postingsByToken.put(token, postings);
+                    }
+                    postings.add(contactId);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        final String[] tokens = postingsByToken.keySet().toArray(new String[0]);
+        Arrays.sort(tokens);
+        final long[][] postings = new long[tokens.length][];
+        for (int i = 0; i < tokens.length; i++) {
+            postings[i] = postingsByToken.get(tokens[i]).toArray();
+        }
+        mSnapshot = new Snapshot(tokens, postings);
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Indexed " + tokens.length + " name tokens in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    /**
+     * Returns the IDs of the contacts whose names best match the given names, best match first,
+     * or null if the index has not been built yet. A contact is a candidate if its name matches
+     * all tokens of the query, or matches at least one of them exactly. The result is only a
+     * hint: contacts deleted since the index was built may be included.
+     *
+     * @param names the names to match, e.g. the name and the phonetic name being edited.
+     * @param excludedContactId ID of a contact that is never returned, e.g. the one being
+     *  edited.
+     * @param limit maximum number of IDs to return.
+     */
+    public long[] findCandidates(String[] names, long excludedContactId, int limit) {
+        final Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            return null;
+        }
+        final Set<String> queryTokens = new LinkedHashSet<>();
+        for (String name : names) {
+            addTokens(queryTokens, name);
+        }
+        if (queryTokens.isEmpty()) {
+            return new long[0];
+        }
+
+        final Map<Long, Candidate> candidates = new HashMap<>();
+        final Map<Long, Integer> tokenScores = new HashMap<>();
+        for (String queryToken : queryTokens) {
+            tokenScores.clear();
+            collectTokenScores(snapshot, queryToken, tokenScores);
+            for (Map.Entry<Long, Integer> entry : tokenScores.entrySet()) {
+                final long contactId = entry.getKey();
+                if (contactId == excludedContactId) {
+                    continue;
+                }
+                Candidate candidate = candidates.get(contactId);
+                if (candidate == null) {
+                    candidate = new Candidate(contactId);
+                    candidates.put(contactId, candidate);
+                }
+                final int score = entry.getValue();
+                candidate.mMatchedTokenCount++;
+                candidate.mScore += score;
+                if (score == SCORE_EXACT_MATCH) {
+                    candidate.mExactMatchCount++;
+                }
+            }
+        }
+
+        final List<Candidate> matches = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates.values()) {
+            if (candidate.mMatchedTokenCount == queryTokens.size()
+                    || candidate.mExactMatchCount > 0) {
+                matches.add(candidate);
+            }
+        }
+        Collections.sort(matches, CANDIDATE_COMPARATOR);
+
+        final int count = Math.min(limit, matches.size());
+        final long[] result = new long[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = matches.get(i).mContactId;
+        }
+        return result;
+    }
+
+    /**
+     * Puts the best score of the given query token into scores, for every contact that has a
+     * name token it matches.
+     */
+    private static void collectTokenScores(Snapshot snapshot, String queryToken,
+            Map<Long, Integer> scores) {
+        final String[] tokens = snapshot.mTokens;
+        int index = Arrays.binarySearch(tokens, queryToken);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        final boolean prefixMatches = queryToken.length() >= MIN_PREFIX_LENGTH;
+        for (; index < tokens.length && tokens[index].startsWith(queryToken); index++) {
+            final boolean exact = tokens[index].length() == queryToken.length();
+            if (!exact && !prefixMatches) {
+                break;
+            }
+            final int score = exact ? SCORE_EXACT_MATCH : SCORE_PREFIX_MATCH;
+            for (long contactId : snapshot.mPostings[index]) {
+                final Integer previous = scores.get(contactId);
+                if (previous == null || previous < score) {
+                    scores.put(contactId, score);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the normalized tokens of the given name: lower case, without accents, split at
+     * anything that is not a letter or digit.
+     */
+    public static void addTokens(Set<String> tokens, String name) {
+        if (TextUtils.isEmpty(name)) {
+            return;
+        }
+        final String normalized = Normalizer.normalize(name, Normalizer.Form.NFD)
+                .toLowerCase(Locale.ROOT);
+        final StringBuilder token = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            final char c = normalized.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+    }
+}
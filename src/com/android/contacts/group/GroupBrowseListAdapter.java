@@ -33,8 +33,15 @@ import com.android.contacts.common.model.account.AccountType;
 import com.android.contacts.common.model.AccountTypeManager;
 import com.google.common.base.Objects;
 
+import java.util.HashMap;
+
 /**
  * Adapter to populate the list of groups.
+ *
+ * When a cursor is set, a single pass over it records which groups start an account and the
+ * position of each group, so that binding a row and finding the selected group don't need to
+ * move the cursor around. Rows are turned into {@link GroupListItem}s the first time they are
+ * needed and kept until the next cursor.
  */
 public class GroupBrowseListAdapter extends BaseAdapter {
 
@@ -44,8 +51,17 @@ public class GroupBrowseListAdapter extends BaseAdapter {
 
     private Cursor mCursor;
 
+    /** Whether each group is the first one of its account, and needs an account header. */
+    private boolean[] mFirstGroupInAccount;
+    /** Positions of the groups by group ID. */
+    private final HashMap<Long, Integer> mGroupPositions = new HashMap<Long, Integer>();
+    /** The rows read from the cursor so far. */
+    private GroupListItem[] mItems;
+
     private boolean mSelectionVisible;
     private Uri mSelectedGroupUri;
+    /** The ID of the selected group, or -1 if there is none or it isn't a group URI. */
+    private long mSelectedGroupId = -1;
 
     public GroupBrowseListAdapter(Context context) {
         mContext = context;
@@ -55,34 +71,58 @@ public class GroupBrowseListAdapter extends BaseAdapter {
 
     public void setCursor(Cursor cursor) {
         mCursor = cursor;
+        buildIndex();
 
         // If there's no selected group already and the cursor is valid, then by default, select the
         // first group
         if (mSelectedGroupUri == null && cursor != null && cursor.getCount() > 0) {
             GroupListItem firstItem = getItem(0);
             long groupId = (firstItem == null) ? 0 : firstItem.getGroupId();
-            mSelectedGroupUri = getGroupUriFromId(groupId);
+            setSelectedGroup(getGroupUriFromId(groupId));
         }
 
         notifyDataSetChanged();
     }
 
-    public int getSelectedGroupPosition() {
-        if (mSelectedGroupUri == null || mCursor == null || mCursor.getCount() == 0) {
-            return -1;
+    private void buildIndex() {
+        mGroupPositions.clear();
+        final int count = getCount();
+        mFirstGroupInAccount = new boolean[count];
+        mItems = new GroupListItem[count];
+        if (count == 0) {
+            return;
         }
 
-        int index = 0;
+        String previousAccountName = null;
+        String previousAccountType = null;
+        String previousDataSet = null;
         mCursor.moveToPosition(-1);
         while (mCursor.moveToNext()) {
-            long groupId = mCursor.getLong(GroupListLoader.GROUP_ID);
-            Uri uri = getGroupUriFromId(groupId);
-            if (mSelectedGroupUri.equals(uri)) {
-                  return index;
-            }
-            index++;
+            final int position = mCursor.getPosition();
+            final String accountName = mCursor.getString(GroupListLoader.ACCOUNT_NAME);
+            final String accountType = mCursor.getString(GroupListLoader.ACCOUNT_TYPE);
+            final String dataSet = mCursor.getString(GroupListLoader.DATA_SET);
+
+            // Groups are sorted by account, so a group starts an account if the previous one
+            // belongs to another account.
+            mFirstGroupInAccount[position] = position == 0
+                    || !Objects.equal(accountName, previousAccountName)
+                    || !Objects.equal(accountType, previousAccountType)
+                    || !Objects.equal(dataSet, previousDataSet);
+            mGroupPositions.put(mCursor.getLong(GroupListLoader.GROUP_ID), position);
+
+            previousAccountName = accountName;
+            previousAccountType = accountType;
+            previousDataSet = dataSet;
+        }
+    }
+
+    public int getSelectedGroupPosition() {
+        if (mSelectedGroupId == -1 || getCount() == 0) {
+            return -1;
         }
-        return -1;
+        final Integer position = mGroupPositions.get(mSelectedGroupId);
+        return position == null ? -1 : position;
     }
 
     public void setSelectionVisible(boolean flag) {
@@ -91,10 +131,11 @@ public class GroupBrowseListAdapter extends BaseAdapter {
 
     public void setSelectedGroup(Uri groupUri) {
         mSelectedGroupUri = groupUri;
+        mSelectedGroupId = getGroupIdFromUri(groupUri);
     }
 
-    private boolean isSelectedGroup(Uri groupUri) {
-        return mSelectedGroupUri != null && mSelectedGroupUri.equals(groupUri);
+    private boolean isSelectedGroup(long groupId) {
+        return mSelectedGroupId != -1 && mSelectedGroupId == groupId;
     }
 
     public Uri getSelectedGroup() {
@@ -113,35 +154,23 @@ public class GroupBrowseListAdapter extends BaseAdapter {
 
     @Override
     public GroupListItem getItem(int position) {
-        if (mCursor == null || mCursor.isClosed() || !mCursor.moveToPosition(position)) {
+        if (mItems == null || position < 0 || position >= mItems.length) {
             return null;
         }
-        String accountName = mCursor.getString(GroupListLoader.ACCOUNT_NAME);
-        String accountType = mCursor.getString(GroupListLoader.ACCOUNT_TYPE);
-        String dataSet = mCursor.getString(GroupListLoader.DATA_SET);
-        long groupId = mCursor.getLong(GroupListLoader.GROUP_ID);
-        String title = mCursor.getString(GroupListLoader.TITLE);
-        int memberCount = mCursor.getInt(GroupListLoader.MEMBER_COUNT);
-
-        // Figure out if this is the first group for this account name / account type pair by
-        // checking the previous entry. This is to determine whether or not we need to display an
-        // account header in this item.
-        int previousIndex = position - 1;
-        boolean isFirstGroupInAccount = true;
-        if (previousIndex >= 0 && mCursor.moveToPosition(previousIndex)) {
-            String previousGroupAccountName = mCursor.getString(GroupListLoader.ACCOUNT_NAME);
-            String previousGroupAccountType = mCursor.getString(GroupListLoader.ACCOUNT_TYPE);
-            String previousGroupDataSet = mCursor.getString(GroupListLoader.DATA_SET);
-
-            if (accountName.equals(previousGroupAccountName) &&
-                    accountType.equals(previousGroupAccountType) &&
-                    Objects.equal(dataSet, previousGroupDataSet)) {
-                isFirstGroupInAccount = false;
+        if (mItems[position] == null) {
+            if (mCursor == null || mCursor.isClosed() || !mCursor.moveToPosition(position)) {
+                return null;
             }
+            mItems[position] = new GroupListItem(
+                    mCursor.getString(GroupListLoader.ACCOUNT_NAME),
+                    mCursor.getString(GroupListLoader.ACCOUNT_TYPE),
+                    mCursor.getString(GroupListLoader.DATA_SET),
+                    mCursor.getLong(GroupListLoader.GROUP_ID),
+                    mCursor.getString(GroupListLoader.TITLE),
+                    mFirstGroupInAccount[position],
+                    mCursor.getInt(GroupListLoader.MEMBER_COUNT));
         }
-
-        return new GroupListItem(accountName, accountType, dataSet, groupId, title,
-                isFirstGroupInAccount, memberCount);
+        return mItems[position];
     }
 
     @Override
@@ -189,7 +218,7 @@ public class GroupBrowseListAdapter extends BaseAdapter {
         viewCache.groupMemberCount.setText(memberCountString);
 
         if (mSelectionVisible) {
-            result.setActivated(isSelectedGroup(groupUri));
+            result.setActivated(isSelectedGroup(entry.getGroupId()));
         }
         return result;
     }
@@ -205,6 +234,21 @@ public class GroupBrowseListAdapter extends BaseAdapter {
         return ContentUris.withAppendedId(Groups.CONTENT_URI, groupId);
     }
 
+    /**
+     * Returns the ID of the group with the given URI, or -1 if it isn't a group URI.
+     */
+    private static long getGroupIdFromUri(Uri groupUri) {
+        if (groupUri == null) {
+            return -1;
+        }
+        try {
+            final long groupId = ContentUris.parseId(groupUri);
+            return getGroupUriFromId(groupId).equals(groupUri) ? groupId : -1;
+        } catch (NumberFormatException | UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
     /**
      * Cache of the children views of a contact detail entry represented by a
      * {@link GroupListItem}
@@ -53,9 +53,9 @@ import com.android.contacts.R;
 import com.android.contacts.common.ContactPhotoManager;
 import com.android.contacts.common.util.ImplicitIntentsUtil;
 import com.android.contacts.interactions.GroupDeletionDialogFragment;
-import com.android.contacts.common.list.ContactTileAdapter;
 import com.android.contacts.common.list.ContactTileView;
 import com.android.contacts.list.GroupMemberTileAdapter;
+import com.android.contacts.list.GroupMemberWindows;
 import com.android.contacts.common.model.AccountTypeManager;
 import com.android.contacts.common.model.account.AccountType;
 
@@ -108,7 +108,7 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
 
     private Listener mListener;
 
-    private ContactTileAdapter mAdapter;
+    private GroupMemberTileAdapter mAdapter;
     private ContactPhotoManager mPhotoManager;
     private AccountTypeManager mAccountTypeManager;
 
@@ -145,6 +145,7 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
     @Override
     public void onDetach() {
         super.onDetach();
+        mAdapter.setMemberWindows(null);
         mContext = null;
     }
 
@@ -160,6 +161,8 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
         mMemberListView = (ListView) mRootView.findViewById(android.R.id.list);
         mMemberListView.setItemsCanFocus(true);
         mMemberListView.setAdapter(mAdapter);
+        // Large groups are loaded in windows, let the user jump through them by section.
+        mMemberListView.setFastScrollEnabled(true);
 
         return mRootView;
     }
@@ -286,8 +289,14 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
                 Log.e(TAG, "Failed to load group members");
                 return;
             }
-            updateSize(data.getCount());
+            // Only the first window of members is loaded here, the rest follow as the user
+            // scrolls.
+            final int memberCount = ((GroupMemberLoader.GroupDetailResult) data).memberCount;
+            final GroupMemberWindows memberWindows = new GroupMemberWindows(mContext, mGroupId,
+                    data, memberCount, mMemberWindowsListener);
+            updateSize(memberCount == -1 ? data.getCount() : memberCount);
             mAdapter.setContactCursor(data);
+            mAdapter.setMemberWindows(memberWindows);
             mMemberListView.setEmptyView(mEmptyView);
         }
 
@@ -295,6 +304,14 @@ public class GroupDetailFragment extends Fragment implements OnScrollListener {
         public void onLoaderReset(Loader<Cursor> loader) {}
     };
 
+    private final GroupMemberWindows.Listener mMemberWindowsListener =
+            new GroupMemberWindows.Listener() {
+        @Override
+        public void onWindowLoaded() {
+            mAdapter.notifyDataSetChanged();
+        }
+    };
+
     private void bindGroupMetaData(Cursor cursor) {
         cursor.moveToPosition(-1);
         if (cursor.moveToNext()) {
@@ -37,6 +37,7 @@ import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.Intents;
 import android.text.TextUtils;
 import android.util.Log;
@@ -94,7 +95,6 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     private static final String KEY_ORIGINAL_GROUP_NAME = "originalGroupName";
     private static final String KEY_MEMBERS_TO_ADD = "membersToAdd";
     private static final String KEY_MEMBERS_TO_REMOVE = "membersToRemove";
-    private static final String KEY_MEMBERS_TO_DISPLAY = "membersToDisplay";
 
     private static final String CURRENT_EDITOR_TAG = "currentEditorForAccount";
 
@@ -123,9 +123,25 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     private static final int LOADER_GROUP_METADATA = 1;
     private static final int LOADER_EXISTING_MEMBERS = 2;
     private static final int LOADER_NEW_GROUP_MEMBER = 3;
+    private static final int LOADER_RESTORED_MEMBERS = 4;
 
     private static final String MEMBER_RAW_CONTACT_ID_KEY = "rawContactId";
     private static final String MEMBER_LOOKUP_URI_KEY = "memberLookupUri";
+    private static final String RAW_CONTACT_IDS_KEY = "rawContactIds";
+
+    private static final String[] PROJECTION_RESTORED_MEMBER = new String[] {
+        Data.RAW_CONTACT_ID,                    // 0
+        Data.CONTACT_ID,                        // 1
+        Data.LOOKUP_KEY,                        // 2
+        Data.DISPLAY_NAME_PRIMARY,              // 3
+        Data.PHOTO_URI,                         // 4
+    };
+
+    private static final int RESTORED_MEMBER_RAW_CONTACT_ID_COLUMN_INDEX = 0;
+    private static final int RESTORED_MEMBER_CONTACT_ID_COLUMN_INDEX = 1;
+    private static final int RESTORED_MEMBER_LOOKUP_KEY_COLUMN_INDEX = 2;
+    private static final int RESTORED_MEMBER_DISPLAY_NAME_COLUMN_INDEX = 3;
+    private static final int RESTORED_MEMBER_PHOTO_URI_COLUMN_INDEX = 4;
 
     protected static final String[] PROJECTION_CONTACT = new String[] {
         Contacts._ID,                           // 0
@@ -198,9 +214,7 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     private ContentResolver mContentResolver;
     private SuggestedMemberListAdapter mAutoCompleteAdapter;
 
-    private ArrayList<Member> mListMembersToAdd = new ArrayList<Member>();
-    private ArrayList<Member> mListMembersToRemove = new ArrayList<Member>();
-    private ArrayList<Member> mListToDisplay = new ArrayList<Member>();
+    private final GroupMembershipModel mMembers = new GroupMembershipModel();
 
     public GroupEditorFragment() {
     }
@@ -219,6 +233,7 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
         mContext = activity;
         mPhotoManager = ContactPhotoManager.getInstance(mContext);
         mMemberListAdapter = new MemberListAdapter();
+        mMembers.setListener(mMemberListAdapter);
     }
 
     @Override
@@ -234,7 +249,13 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
                 startGroupMetaDataLoader();
             } else {
                 setupEditorForAccount();
+                if (Intent.ACTION_EDIT.equals(mAction)) {
+                    // Only the changes to the membership were saved, reload the members.
+                    getLoaderManager().initLoader(LOADER_EXISTING_MEMBERS, null,
+                            mGroupMemberListLoaderListener);
+                }
             }
+            startRestoredMembersLoader();
         } else if (Intent.ACTION_EDIT.equals(mAction)) {
             startGroupMetaDataLoader();
         } else if (Intent.ACTION_INSERT.equals(mAction)) {
@@ -280,9 +301,8 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
         outState.putBoolean(KEY_GROUP_NAME_IS_READ_ONLY, mGroupNameIsReadOnly);
         outState.putString(KEY_ORIGINAL_GROUP_NAME, mOriginalGroupName);
 
-        outState.putParcelableArrayList(KEY_MEMBERS_TO_ADD, mListMembersToAdd);
-        outState.putParcelableArrayList(KEY_MEMBERS_TO_REMOVE, mListMembersToRemove);
-        outState.putParcelableArrayList(KEY_MEMBERS_TO_DISPLAY, mListToDisplay);
+        outState.putLongArray(KEY_MEMBERS_TO_ADD, mMembers.getMembersToAdd());
+        outState.putLongArray(KEY_MEMBERS_TO_REMOVE, mMembers.getMembersToRemove());
     }
 
     private void onRestoreInstanceState(Bundle state) {
@@ -298,9 +318,22 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
         mGroupNameIsReadOnly = state.getBoolean(KEY_GROUP_NAME_IS_READ_ONLY);
         mOriginalGroupName = state.getString(KEY_ORIGINAL_GROUP_NAME);
 
-        mListMembersToAdd = state.getParcelableArrayList(KEY_MEMBERS_TO_ADD);
-        mListMembersToRemove = state.getParcelableArrayList(KEY_MEMBERS_TO_REMOVE);
-        mListToDisplay = state.getParcelableArrayList(KEY_MEMBERS_TO_DISPLAY);
+        mMembers.restoreChanges(state.getLongArray(KEY_MEMBERS_TO_ADD),
+                state.getLongArray(KEY_MEMBERS_TO_REMOVE));
+    }
+
+    /**
+     * Loads the details of the members the user added before the state was saved.
+     */
+    private void startRestoredMembersLoader() {
+        final long[] rawContactIds = mMembers.getMembersToAddWithoutDetails();
+        if (rawContactIds.length == 0) {
+            return;
+        }
+        Bundle args = new Bundle();
+        args.putLongArray(RAW_CONTACT_IDS_KEY, rawContactIds);
+        getLoaderManager().restartLoader(LOADER_RESTORED_MEMBERS, args,
+                mRestoredMembersLoaderListener);
     }
 
     public void setContentResolver(ContentResolver resolver) {
@@ -436,7 +469,8 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
             mAutoCompleteTextView.setOnItemClickListener(new OnItemClickListener() {
                 @Override
                 public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                    SuggestedMember member = (SuggestedMember) view.getTag();
+                    SuggestedMember member =
+                            (SuggestedMember) parent.getItemAtPosition(position);
                     if (member == null) {
                         return; // just in case
                     }
@@ -450,9 +484,8 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
                     mAutoCompleteTextView.setText("");
                 }
             });
-            // Update the exempt list.  (mListToDisplay might have been restored from the saved
-            // state.)
-            mAutoCompleteAdapter.updateExistingMembersList(mListToDisplay);
+            // Update the exempt list.  (Members might have been restored from the saved state.)
+            mAutoCompleteAdapter.updateExistingMembersList(mMembers.getMembers());
         }
 
         // If the group name is ready only, don't let the user focus on the field.
@@ -580,7 +613,7 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
         Intent saveIntent = null;
         if (Intent.ACTION_INSERT.equals(mAction)) {
             // Create array of raw contact IDs for contacts to add to the group
-            long[] membersToAddArray = convertToArray(mListMembersToAdd);
+            long[] membersToAddArray = mMembers.getMembersToAdd();
 
             // Create the save intent to create the group and add members at the same time
             saveIntent = ContactSaveService.createNewGroupIntent(activity,
@@ -590,10 +623,10 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
                     GroupEditorActivity.ACTION_SAVE_COMPLETED);
         } else if (Intent.ACTION_EDIT.equals(mAction)) {
             // Create array of raw contact IDs for contacts to add to the group
-            long[] membersToAddArray = convertToArray(mListMembersToAdd);
+            long[] membersToAddArray = mMembers.getMembersToAdd();
 
-            // Create array of raw contact IDs for contacts to add to the group
-            long[] membersToRemoveArray = convertToArray(mListMembersToRemove);
+            // Create array of raw contact IDs for contacts to remove from the group
+            long[] membersToRemoveArray = mMembers.getMembersToRemove();
 
             // Create the update intent (which includes the updated group name if necessary)
             saveIntent = ContactSaveService.createGroupUpdateIntent(activity, mGroupId,
@@ -653,7 +686,7 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     }
 
     private boolean hasMembershipChange() {
-        return mListMembersToAdd.size() > 0 || mListMembersToRemove.size() > 0;
+        return mMembers.hasChanges();
     }
 
     /**
@@ -669,55 +702,30 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
         return groupNameFromTextView;
     }
 
-    private static long[] convertToArray(List<Member> listMembers) {
-        int size = listMembers.size();
-        long[] membersArray = new long[size];
-        for (int i = 0; i < size; i++) {
-            membersArray[i] = listMembers.get(i).getRawContactId();
-        }
-        return membersArray;
-    }
-
     private void addExistingMembers(List<Member> members) {
-
         // Re-create the list to display
-        mListToDisplay.clear();
-        mListToDisplay.addAll(members);
-        mListToDisplay.addAll(mListMembersToAdd);
-        mListToDisplay.removeAll(mListMembersToRemove);
-        mMemberListAdapter.notifyDataSetChanged();
-
+        mMembers.setExistingMembers(members);
 
         // Update the autocomplete adapter (if there is one) so these contacts don't get suggested
         if (mAutoCompleteAdapter != null) {
-            mAutoCompleteAdapter.updateExistingMembersList(members);
+            mAutoCompleteAdapter.updateExistingMembersList(mMembers.getMembers());
         }
     }
 
     private void addMember(Member member) {
         // Update the display list
-        mListMembersToAdd.add(member);
-        mListToDisplay.add(member);
-        mMemberListAdapter.notifyDataSetChanged();
+        mMembers.addMember(member);
 
         // Update the autocomplete adapter so the contact doesn't get suggested again
-        mAutoCompleteAdapter.addNewMember(member.getContactId());
+        if (mAutoCompleteAdapter != null) {
+            mAutoCompleteAdapter.addNewMember(member.getContactId());
+        }
     }
 
     private void removeMember(Member member) {
-        // If the contact was just added during this session, remove it from the list of
-        // members to add
-        if (mListMembersToAdd.contains(member)) {
-            mListMembersToAdd.remove(member);
-        } else {
-            // Otherwise this contact was already part of the existing list of contacts,
-            // so we need to do a content provider deletion operation
-            mListMembersToRemove.add(member);
-        }
-        // In either case, update the UI so the contact is no longer in the list of
-        // members
-        mListToDisplay.remove(member);
-        mMemberListAdapter.notifyDataSetChanged();
+        // Records the removal of an existing member, or forgets about a member that was just
+        // added during this session, and updates the UI
+        mMembers.removeMember(member.getRawContactId());
 
         // Update the autocomplete adapter so the contact can get suggested again
         mAutoCompleteAdapter.removeMember(member.getContactId());
@@ -784,6 +792,54 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
         public void onLoaderReset(Loader<Cursor> loader) {}
     };
 
+    /**
+     * The loader listener for the members added before the state was saved.
+     */
+    private final LoaderManager.LoaderCallbacks<Cursor> mRestoredMembersLoaderListener =
+            new LoaderCallbacks<Cursor>() {
+
+        @Override
+        public CursorLoader onCreateLoader(int id, Bundle args) {
+            // The IDs are numbers, so they can be inlined instead of exceeding the limit on
+            // selection arguments.
+            final StringBuilder selection = new StringBuilder(Data.RAW_CONTACT_ID + " IN (");
+            final long[] rawContactIds = args.getLongArray(RAW_CONTACT_IDS_KEY);
+            for (int i = 0; i < rawContactIds.length; i++) {
+                if (i > 0) {
+                    selection.append(',');
+                }
+                selection.append(rawContactIds[i]);
+            }
+            selection.append(')');
+            return new CursorLoader(mContext, Data.CONTENT_URI, PROJECTION_RESTORED_MEMBER,
+                    selection.toString(), null, null);
+        }
+
+        @Override
+        public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+            // There is a row per data item, the first one of each raw contact is enough.
+            data.moveToPosition(-1);
+            while (data.moveToNext()) {
+                long rawContactId = data.getLong(RESTORED_MEMBER_RAW_CONTACT_ID_COLUMN_INDEX);
+                if (mMembers.contains(rawContactId)) {
+                    continue;
+                }
+                Member member = new Member(rawContactId,
+                        data.getString(RESTORED_MEMBER_LOOKUP_KEY_COLUMN_INDEX),
+                        data.getLong(RESTORED_MEMBER_CONTACT_ID_COLUMN_INDEX),
+                        data.getString(RESTORED_MEMBER_DISPLAY_NAME_COLUMN_INDEX),
+                        data.getString(RESTORED_MEMBER_PHOTO_URI_COLUMN_INDEX));
+                if (mMembers.onAddedMemberLoaded(member) != -1 && mAutoCompleteAdapter != null) {
+                    mAutoCompleteAdapter.addNewMember(member.getContactId());
+                }
+            }
+            getLoaderManager().destroyLoader(LOADER_RESTORED_MEMBERS);
+        }
+
+        @Override
+        public void onLoaderReset(Loader<Cursor> loader) {}
+    };
+
     /**
      * The listener to load a summary of details for a contact.
      */
@@ -924,7 +980,8 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
     /**
      * This adapter displays a list of members for the current group being edited.
      */
-    private final class MemberListAdapter extends BaseAdapter {
+    private final class MemberListAdapter extends BaseAdapter
+            implements GroupMembershipModel.Listener {
 
         private boolean mIsGroupMembershipEditable = true;
 
@@ -965,12 +1022,29 @@ public class GroupEditorFragment extends Fragment implements SelectAccountDialog
 
         @Override
         public int getCount() {
-            return mListToDisplay.size();
+            return mMembers.size();
         }
 
         @Override
         public Member getItem(int position) {
-            return mListToDisplay.get(position);
+            return mMembers.get(position);
+        }
+
+        // ListView has no notifications for single items. It only rebinds the visible rows on a
+        // data set change, so the cost stays independent of the size of the group.
+        @Override
+        public void onMemberInserted(int position) {
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public void onMemberRemoved(int position) {
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public void onMembersChanged() {
+            notifyDataSetChanged();
         }
 
         @Override
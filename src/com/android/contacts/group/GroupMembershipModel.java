@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.group;
+
+import com.android.contacts.group.GroupEditorFragment.Member;
+import com.android.contacts.util.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The members shown in the group editor, and the changes the user made to the membership, keyed
+ * by raw contact ID.
+ *
+ * The displayed members are kept in insertion order in an array of slots. Removed members leave
+ * an empty slot behind, and a Fenwick tree over the slots maps between slots and positions in
+ * O(log n). This keeps adding, removing and finding members cheap in groups with thousands of
+ * members, and the positions of changes can be reported to a {@link Listener}.
+ */
+final class GroupMembershipModel {
+
+    /**
+     * Notified of changes to the displayed members.
+     */
+    interface Listener {
+        void onMemberInserted(int position);
+        void onMemberRemoved(int position);
+        /** Many members changed at once. */
+        void onMembersChanged();
+    }
+
+    private static final int MIN_CAPACITY = 16;
+
+    /** Displayed members, or null where a member was removed. */
+    private Member[] mSlots = new Member[MIN_CAPACITY];
+    /** Fenwick tree counting the members in the slots, 1-based. */
+    private int[] mTree = new int[MIN_CAPACITY + 1];
+    /** Number of slots in use, including removed ones. */
+    private int mSlotCount;
+    /** Number of displayed members. */
+    private int mSize;
+    private final HashMap<Long, Integer> mSlotByRawContactId = new HashMap<Long, Integer>();
+
+    /** Raw contact IDs of the members loaded from the provider. */
+    private final LongHashSet mExistingMemberIds = new LongHashSet();
+    /**
+     * Members added by the user, in the order they were added. The value is null for members
+     * restored from saved state until their details are loaded again.
+     */
+    private final LinkedHashMap<Long, Member> mMembersToAdd = new LinkedHashMap<Long, Member>();
+    /** Raw contact IDs of existing members removed by the user. */
+    private final LongHashSet mMembersToRemove = new LongHashSet();
+
+    private Listener mListener;
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the displayed member at the given position.
+     */
+    public Member get(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("position=" + position + " size=" + mSize);
+        }
+        return mSlots[findSlot(position)];
+    }
+
+    public boolean contains(long rawContactId) {
+        return mSlotByRawContactId.containsKey(rawContactId);
+    }
+
+    /**
+     * Returns the position of the displayed member, or -1 if it is not displayed.
+     */
+    public int indexOf(long rawContactId) {
+        final Integer slot = mSlotByRawContactId.get(rawContactId);
+        return slot == null ? -1 : countMembersBefore(slot);
+    }
+
+    /**
+     * Returns the displayed members in display order.
+     */
+    public List<Member> getMembers() {
+        final List<Member> members = new ArrayList<Member>(mSize);
+        for (int i = 0; i < mSlotCount; i++) {
+            if (mSlots[i] != null) {
+                members.add(mSlots[i]);
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Replaces the displayed members with the members currently in the group, minus the ones the
+     * user removed, followed by the ones the user added.
+     */
+    public void setExistingMembers(List<Member> members) {
+        mExistingMemberIds.clear();
+        for (Member member : members) {
+            mExistingMemberIds.add(member.getRawContactId());
+        }
+        // Members the user added may have been added to the group by someone else meanwhile.
+        for (Map.Entry<Long, Member> entry : new ArrayList<Map.Entry<Long, Member>>(
+                mMembersToAdd.entrySet())) {
+            if (mExistingMemberIds.contains(entry.getKey())) {
+                mMembersToAdd.remove(entry.getKey());
+            }
+        }
+
+        clearSlots(members.size() + mMembersToAdd.size());
+        for (Member member : members) {
+            if (!mMembersToRemove.contains(member.getRawContactId())) {
+                appendSlot(member);
+            }
+        }
+        for (Member member : mMembersToAdd.values()) {
+            if (member != null) {
+                appendSlot(member);
+            }
+        }
+        if (mListener != null) {
+            mListener.onMembersChanged();
+        }
+    }
+
+    /**
+     * Adds a member chosen by the user. Returns its position, or -1 if it was already displayed.
+     */
+    public int addMember(Member member) {
+        final long rawContactId = member.getRawContactId();
+        if (contains(rawContactId)) {
+            return -1;
+        }
+        if (!mMembersToRemove.remove(rawContactId)) {
+            mMembersToAdd.put(rawContactId, member);
+        }
+        appendSlot(member);
+        final int position = mSize - 1;
+        if (mListener != null) {
+            mListener.onMemberInserted(position);
+        }
+        return position;
+    }
+
+    /**
+     * Fills in the details of a member that was added before the state was saved. Returns its
+     * position, or -1 if the member is not pending anymore.
+     */
+    public int onAddedMemberLoaded(Member member) {
+        final long rawContactId = member.getRawContactId();
+        if (!mMembersToAdd.containsKey(rawContactId) || mMembersToAdd.get(rawContactId) != null) {
+            return -1;
+        }
+        mMembersToAdd.put(rawContactId, member);
+        if (contains(rawContactId)) {
+            return -1;
+        }
+        appendSlot(member);
+        final int position = mSize - 1;
+        if (mListener != null) {
+            mListener.onMemberInserted(position);
+        }
+        return position;
+    }
+
+    /**
+     * Removes a displayed member. Returns the position it had, or -1 if it was not displayed.
+     */
+    public int removeMember(long rawContactId) {
+        final Integer slot = mSlotByRawContactId.remove(rawContactId);
+        if (slot == null) {
+            return -1;
+        }
+        // If the contact was just added during this session, forget about it. Otherwise it is
+        // an existing member that needs to be removed from the group on save.
+        if (mMembersToAdd.remove(rawContactId) == null) {
+            mMembersToRemove.add(rawContactId);
+        }
+        final int position = countMembersBefore(slot);
+        mSlots[slot] = null;
+        updateTree(slot, -1);
+        mSize--;
+        if (mSlotCount - mSize > Math.max(MIN_CAPACITY, mSize)) {
+            // Too many empty slots, compact them.
+            rebuild(mSlots.length);
+        }
+        if (mListener != null) {
+            mListener.onMemberRemoved(position);
+        }
+        return position;
+    }
+
+    public boolean hasChanges() {
+        return !mMembersToAdd.isEmpty() || !mMembersToRemove.isEmpty();
+    }
+
+    public long[] getMembersToAdd() {
+        final long[] result = new long[mMembersToAdd.size()];
+        int i = 0;
+        for (Long rawContactId : mMembersToAdd.keySet()) {
+            result[i++] = rawContactId;
+        }
+        return result;
+    }
+
+    public long[] getMembersToRemove() {
+        return mMembersToRemove.toArray();
+    }
+
+    /**
+     * Returns the added members whose details need to be loaded again after restoring the state.
+     */
+    public long[] getMembersToAddWithoutDetails() {
+        final List<Long> pending = new ArrayList<Long>();
+        for (Map.Entry<Long, Member> entry : mMembersToAdd.entrySet()) {
+            if (entry.getValue() == null) {
+                pending.add(entry.getKey());
+            }
+        }
+        final long[] result = new long[pending.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = pending.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Restores the changes saved with {@link #getMembersToAdd} and {@link #getMembersToRemove}.
+     * The members are displayed once {@link #setExistingMembers} and {@link #onAddedMemberLoaded}
+     * provide their details.
+     */
+    public void restoreChanges(long[] membersToAdd, long[] membersToRemove) {
+        mMembersToAdd.clear();
+        mMembersToRemove.clear();
+        if (membersToAdd != null) {
+            for (long rawContactId : membersToAdd) {
+                mMembersToAdd.put(rawContactId, null);
+            }
+        }
+        if (membersToRemove != null) {
+            for (long rawContactId : membersToRemove) {
+                mMembersToRemove.add(rawContactId);
+            }
+        }
+    }
+
+    private void clearSlots(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize) {
+            capacity <<= 1;
+        }
+        mSlots = new Member[capacity];
+        mTree = new int[capacity + 1];
+        mSlotCount = 0;
+        mSize = 0;
+        mSlotByRawContactId.clear();
+    }
+
+    private void appendSlot(Member member) {
+        if (mSlotCount == mSlots.length) {
+            // Grow only if compacting would not free enough slots.
+            rebuild(mSize * 2 >= mSlots.length ? mSlots.length * 2 : mSlots.length);
+        }
+        final int slot = mSlotCount++;
+        mSlots[slot] = member;
+        mSlotByRawContactId.put(member.getRawContactId(), slot);
+        updateTree(slot, 1);
+        mSize++;
+    }
+
+    /**
+     * Moves the members to the first slots of new arrays with the given capacity and rebuilds
+     * the tree in linear time.
+     */
+    private void rebuild(int capacity) {
+        final Member[] oldSlots = mSlots;
+        final int oldSlotCount = mSlotCount;
+        mSlots = new Member[capacity];
+        mTree = new int[capacity + 1];
+        mSlotCount = 0;
+        for (int i = 0; i < oldSlotCount; i++) {
+            final Member member = oldSlots[i];
+            if (member != null) {
+                final int slot = mSlotCount++;
+                mSlots[slot] = member;
+                mSlotByRawContactId.put(member.getRawContactId(), slot);
+                mTree[slot + 1] = 1;
+            }
+        }
+        for (int i = 1; i <= capacity; i++) {
+            final int parent = i + (i & -i);
+            if (parent <= capacity) {
+                mTree[parent] += mTree[i];
+            }
+        }
+    }
+
+    private void updateTree(int slot, int delta) {
+        for (int i = slot + 1; i < mTree.length; i += i & -i) {
+            mTree[i] += delta;
+        }
+    }
+
+    /** Returns the number of members in the slots before the given one. */
+    private int countMembersBefore(int slot) {
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            count += mTree[i];
+        }
+        return count;
+    }
+
+    /** Returns the slot of the member at the given position. */
+    private int findSlot(int position) {
+        int slot = 0;
+        int remaining = position + 1;
+        for (int step = Integer.highestOneBit(mTree.length - 1); step > 0; step >>= 1) {
+            final int next = slot + step;
+            if (next < mTree.length && mTree[next] < remaining) {
+                slot = next;
+                remaining -= mTree[next];
+            }
+        }
+        return slot;
+    }
+}
@@ -27,6 +27,7 @@ import android.provider.ContactsContract.Contacts.Data;
 import android.provider.ContactsContract.RawContacts;
 import android.provider.ContactsContract.RawContactsEntity;
 import android.text.TextUtils;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -39,6 +40,7 @@ import android.widget.TextView;
 import com.android.contacts.R;
 import com.android.contacts.common.ContactPhotoManager;
 import com.android.contacts.group.SuggestedMemberListAdapter.SuggestedMember;
+import com.android.contacts.util.LongHashSet;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -54,12 +56,14 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
     private static final String[] PROJECTION_FILTERED_MEMBERS = new String[] {
         RawContacts._ID,                        // 0
         RawContacts.CONTACT_ID,                 // 1
-        RawContacts.DISPLAY_NAME_PRIMARY        // 2
+        RawContacts.DISPLAY_NAME_PRIMARY,       // 2
+        RawContacts.DISPLAY_NAME_ALTERNATIVE    // 3
     };
 
     private static final int RAW_CONTACT_ID_COLUMN_INDEX = 0;
     private static final int CONTACT_ID_COLUMN_INDEX = 1;
     private static final int DISPLAY_NAME_PRIMARY_COLUMN_INDEX = 2;
+    private static final int DISPLAY_NAME_ALTERNATIVE_COLUMN_INDEX = 3;
 
     private static final String[] PROJECTION_MEMBER_DATA = new String[] {
         RawContacts._ID,                        // 0
@@ -81,12 +85,41 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
     private String mAccountName;
     private String mDataSet;
 
-    // TODO: Make this a Map for better performance when we check if a new contact is in the list
-    // or not
-    private final List<Long> mExistingMemberContactIds = new ArrayList<Long>();
+    /**
+     * Contact IDs of the group members, which are not suggested. Guarded by itself since the
+     * filter reads it on a worker thread.
+     */
+    private final LongHashSet mExistingMemberContactIds = new LongHashSet();
+
+    /**
+     * All candidates matching the last prefix that was queried. While the user keeps typing, the
+     * longer prefixes are matched against these in memory instead of querying again.
+     */
+    private volatile CandidateCache mCandidateCache;
 
     private static final int SUGGESTIONS_LIMIT = 5;
 
+    /**
+     * Prefixes matching more raw contacts than this are not cached. Short prefixes in large
+     * accounts would otherwise hold most of the account in memory.
+     */
+    private static final int MAX_CACHED_CANDIDATES = 500;
+
+    /** Upper bound of the memory used by decoded suggestion photos. */
+    private static final int MAX_PHOTO_CACHE_BYTES = 1024 * 1024;
+
+    /**
+     * Decoded photos of suggested raw contacts. The filter decodes them on its worker thread, so
+     * binding a row never decodes. The hash in the key makes a changed photo miss the cache.
+     */
+    private final LruCache<PhotoKey, Bitmap> mPhotoCache =
+            new LruCache<PhotoKey, Bitmap>(MAX_PHOTO_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(PhotoKey key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
     public SuggestedMemberListAdapter(Context context, int textViewResourceId) {
         super(context, textViewResourceId);
         mInflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
@@ -109,48 +142,58 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
     }
 
     public void updateExistingMembersList(List<GroupEditorFragment.Member> list) {
-        mExistingMemberContactIds.clear();
-        for (GroupEditorFragment.Member member : list) {
-            mExistingMemberContactIds.add(member.getContactId());
+        synchronized (mExistingMemberContactIds) {
+            mExistingMemberContactIds.clear();
+            for (GroupEditorFragment.Member member : list) {
+                mExistingMemberContactIds.add(member.getContactId());
+            }
         }
     }
 
     public void addNewMember(long contactId) {
-        mExistingMemberContactIds.add(contactId);
+        synchronized (mExistingMemberContactIds) {
+            mExistingMemberContactIds.add(contactId);
+        }
     }
 
     public void removeMember(long contactId) {
-        if (mExistingMemberContactIds.contains(contactId)) {
+        synchronized (mExistingMemberContactIds) {
             mExistingMemberContactIds.remove(contactId);
         }
     }
 
+    private boolean isExistingMember(long contactId) {
+        synchronized (mExistingMemberContactIds) {
+            return mExistingMemberContactIds.contains(contactId);
+        }
+    }
+
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         View result = convertView;
+        final ViewHolder holder;
         if (result == null) {
             result = mInflater.inflate(R.layout.group_member_suggestion, parent, false);
+            holder = new ViewHolder(result);
+            result.setTag(holder);
+        } else {
+            holder = (ViewHolder) result.getTag();
         }
-        // TODO: Use a viewholder
         SuggestedMember member = getItem(position);
-        TextView text1 = (TextView) result.findViewById(R.id.text1);
-        TextView text2 = (TextView) result.findViewById(R.id.text2);
-        ImageView icon = (ImageView) result.findViewById(R.id.icon);
-        text1.setText(member.getDisplayName());
+        holder.text1.setText(member.getDisplayName());
         if (member.hasExtraInfo()) {
-            text2.setText(member.getExtraInfo());
+            holder.text2.setText(member.getExtraInfo());
+            holder.text2.setVisibility(View.VISIBLE);
         } else {
-            text2.setVisibility(View.GONE);
+            holder.text2.setVisibility(View.GONE);
         }
-        byte[] byteArray = member.getPhotoByteArray();
-        if (byteArray == null) {
-            icon.setImageDrawable(ContactPhotoManager.getDefaultAvatarDrawableForContact(
-                    icon.getResources(), false, null));
+        Bitmap photo = member.getPhoto();
+        if (photo == null) {
+            holder.icon.setImageDrawable(ContactPhotoManager.getDefaultAvatarDrawableForContact(
+                    holder.icon.getResources(), false, null));
         } else {
-            Bitmap bitmap = BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length);
-            icon.setImageBitmap(bitmap);
+            holder.icon.setImageBitmap(photo);
         }
-        result.setTag(member);
         return result;
     }
 
@@ -172,6 +215,13 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
         protected FilterResults performFiltering(CharSequence prefix) {
             FilterResults results = new FilterResults();
             if (mContentResolver == null || TextUtils.isEmpty(prefix)) {
+                // The user starts over, don't keep candidates that may be outdated by now.
+                mCandidateCache = null;
+                return results;
+            }
+
+            final List<Candidate> candidates = getCandidates(prefix.toString());
+            if (candidates == null) {
                 return results;
             }
 
@@ -182,54 +232,22 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
             List<SuggestedMember> suggestionsList = new ArrayList<SuggestedMember>();
             HashMap<Long, SuggestedMember> suggestionsMap = new HashMap<Long, SuggestedMember>();
 
-            // First query for all the raw contacts that match the given search query
-            // and have the same account name and type as specified in this adapter
-            String searchQuery = prefix.toString() + "%";
-            String accountClause = RawContacts.ACCOUNT_NAME + "=? AND " +
-                    RawContacts.ACCOUNT_TYPE + "=?";
-            String[] args;
-            if (mDataSet == null) {
-                accountClause += " AND " + RawContacts.DATA_SET + " IS NULL";
-                args = new String[] {mAccountName, mAccountType, searchQuery, searchQuery};
-            } else {
-                accountClause += " AND " + RawContacts.DATA_SET + "=?";
-                args = new String[] {
-                        mAccountName, mAccountType, mDataSet, searchQuery, searchQuery
-                };
-            }
-
-            Cursor cursor = mContentResolver.query(
-                    RawContacts.CONTENT_URI, PROJECTION_FILTERED_MEMBERS,
-                    accountClause + " AND (" +
-                    RawContacts.DISPLAY_NAME_PRIMARY + " LIKE ? OR " +
-                    RawContacts.DISPLAY_NAME_ALTERNATIVE + " LIKE ? )",
-                    args, RawContacts.DISPLAY_NAME_PRIMARY + " COLLATE LOCALIZED ASC");
-
-            if (cursor == null) {
-                return results;
-            }
-
-            // Read back the results from the cursor and filter out existing group members.
-            // For valid suggestions, add them to the hash map of suggested members.
-            try {
-                cursor.moveToPosition(-1);
-                while (cursor.moveToNext() && suggestionsMap.keySet().size() < SUGGESTIONS_LIMIT) {
-                    long rawContactId = cursor.getLong(RAW_CONTACT_ID_COLUMN_INDEX);
-                    long contactId = cursor.getLong(CONTACT_ID_COLUMN_INDEX);
-                    // Filter out contacts that have already been added to this group
-                    if (mExistingMemberContactIds.contains(contactId)) {
-                        continue;
-                    }
-                    // Otherwise, add the contact as a suggested new group member
-                    String displayName = cursor.getString(DISPLAY_NAME_PRIMARY_COLUMN_INDEX);
-                    SuggestedMember member = new SuggestedMember(rawContactId, displayName,
-                            contactId);
-                    // Store the member in the list of suggestions and add it to the hash map too.
-                    suggestionsList.add(member);
-                    suggestionsMap.put(rawContactId, member);
+            // Filter out existing group members from the candidates. For valid suggestions, add
+            // them to the hash map of suggested members.
+            for (Candidate candidate : candidates) {
+                if (suggestionsMap.size() >= SUGGESTIONS_LIMIT) {
+                    break;
                 }
-            } finally {
-                cursor.close();
+                // Filter out contacts that have already been added to this group
+                if (isExistingMember(candidate.contactId)) {
+                    continue;
+                }
+                // Otherwise, add the contact as a suggested new group member
+                SuggestedMember member = new SuggestedMember(candidate.rawContactId,
+                        candidate.displayName, candidate.contactId);
+                // Store the member in the list of suggestions and add it to the hash map too.
+                suggestionsList.add(member);
+                suggestionsMap.put(candidate.rawContactId, member);
             }
 
             int numSuggestions = suggestionsMap.keySet().size();
@@ -278,7 +296,7 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
                         if (Photo.CONTENT_ITEM_TYPE.equals(mimetype)) {
                             // Set photo
                             byte[] bitmapArray = memberDataCursor.getBlob(PHOTO_COLUMN_INDEX);
-                            member.setPhotoByteArray(bitmapArray);
+                            member.setPhoto(getPhoto(rawContactId, bitmapArray));
                         } else if (Email.CONTENT_ITEM_TYPE.equals(mimetype) ||
                                 Phone.CONTENT_ITEM_TYPE.equals(mimetype)) {
                             // Set at most 1 extra piece of contact info that can be a phone number or
@@ -297,6 +315,106 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
             return results;
         }
 
+        /**
+         * Returns the decoded photo of the raw contact, from the cache if the same photo was
+         * decoded before.
+         */
+        private Bitmap getPhoto(long rawContactId, byte[] bitmapArray) {
+            if (bitmapArray == null) {
+                return null;
+            }
+            final PhotoKey key = new PhotoKey(rawContactId, Arrays.hashCode(bitmapArray));
+            Bitmap bitmap = mPhotoCache.get(key);
+            if (bitmap == null) {
+                bitmap = BitmapFactory.decodeByteArray(bitmapArray, 0, bitmapArray.length);
+                if (bitmap != null) {
+                    mPhotoCache.put(key, bitmap);
+                }
+            }
+            return bitmap;
+        }
+
+        /**
+         * Returns the raw contacts in the account of this adapter whose primary or alternative
+         * display name starts with the given prefix, ordered by display name. If the prefix
+         * refines the one of the cached candidates, they are filtered in memory. Otherwise the
+         * provider is queried. Returns null if the query failed.
+         */
+        private List<Candidate> getCandidates(String prefix) {
+            final CandidateCache cache = mCandidateCache;
+            if (cache != null && cache.canRefine(prefix, mAccountName, mAccountType, mDataSet)) {
+                final List<Candidate> candidates = new ArrayList<Candidate>();
+                for (Candidate candidate : cache.candidates) {
+                    if (candidate.matches(prefix)) {
+                        candidates.add(candidate);
+                    }
+                }
+                mCandidateCache = new CandidateCache(prefix, mAccountName, mAccountType, mDataSet,
+                        candidates);
+                return candidates;
+            }
+
+            // Query for all the raw contacts that match the given search query
+            // and have the same account name and type as specified in this adapter
+            final String accountName = mAccountName;
+            final String accountType = mAccountType;
+            final String dataSet = mDataSet;
+            String searchQuery = prefix + "%";
+            String accountClause = RawContacts.ACCOUNT_NAME + "=? AND " +
+                    RawContacts.ACCOUNT_TYPE + "=?";
+            String[] args;
+            if (dataSet == null) {
+                accountClause += " AND " + RawContacts.DATA_SET + " IS NULL";
+                args = new String[] {accountName, accountType, searchQuery, searchQuery};
+            } else {
+                accountClause += " AND " + RawContacts.DATA_SET + "=?";
+                args = new String[] {
+                        accountName, accountType, dataSet, searchQuery, searchQuery
+                };
+            }
+
+            Cursor cursor = mContentResolver.query(
+                    RawContacts.CONTENT_URI, PROJECTION_FILTERED_MEMBERS,
+                    accountClause + " AND (" +
+                    RawContacts.DISPLAY_NAME_PRIMARY + " LIKE ? OR " +
+                    RawContacts.DISPLAY_NAME_ALTERNATIVE + " LIKE ? )",
+                    args, RawContacts.DISPLAY_NAME_PRIMARY + " COLLATE LOCALIZED ASC");
+
+            if (cursor == null) {
+                mCandidateCache = null;
+                return null;
+            }
+
+            final List<Candidate> candidates = new ArrayList<Candidate>();
+            try {
+                final boolean cacheable = cursor.getCount() <= MAX_CACHED_CANDIDATES;
+                int suggestionCount = 0;
+                cursor.moveToPosition(-1);
+                while (cursor.moveToNext()) {
+                    final Candidate candidate = new Candidate(
+                            cursor.getLong(RAW_CONTACT_ID_COLUMN_INDEX),
+                            cursor.getLong(CONTACT_ID_COLUMN_INDEX),
+                            cursor.getString(DISPLAY_NAME_PRIMARY_COLUMN_INDEX),
+                            cursor.getString(DISPLAY_NAME_ALTERNATIVE_COLUMN_INDEX));
+                    if (cacheable) {
+                        candidates.add(candidate);
+                    } else if (!isExistingMember(candidate.contactId)) {
+                        // Too many to cache, only keep as many as can be suggested.
+                        candidates.add(candidate);
+                        if (++suggestionCount >= SUGGESTIONS_LIMIT) {
+                            break;
+                        }
+                    }
+                }
+                mCandidateCache = cacheable
+                        ? new CandidateCache(prefix, accountName, accountType, dataSet, candidates)
+                        : null;
+            } finally {
+                cursor.close();
+            }
+            return candidates;
+        }
+
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
             @SuppressWarnings("unchecked")
@@ -317,6 +435,122 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
         }
     }
 
+    private static class ViewHolder {
+        final TextView text1;
+        final TextView text2;
+        final ImageView icon;
+
+        ViewHolder(View view) {
+            text1 = (TextView) view.findViewById(R.id.text1);
+            text2 = (TextView) view.findViewById(R.id.text2);
+            icon = (ImageView) view.findViewById(R.id.icon);
+        }
+    }
+
+    /**
+     * Identifies a decoded photo by the raw contact and the hash of the encoded photo.
+     */
+    private static class PhotoKey {
+        final long rawContactId;
+        final int photoHash;
+
+        PhotoKey(long rawContactId, int photoHash) {
+            this.rawContactId = rawContactId;
+            this.photoHash = photoHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PhotoKey)) {
+                return false;
+            }
+            final PhotoKey other = (PhotoKey) o;
+            return rawContactId == other.rawContactId && photoHash == other.photoHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (rawContactId ^ (rawContactId >>> 32)) + photoHash;
+        }
+    }
+
+    /**
+     * A raw contact matching the prefix of the last query.
+     */
+    private static class Candidate {
+        final long rawContactId;
+        final long contactId;
+        final String displayName;
+        final String displayNameAlternative;
+
+        Candidate(long rawContactId, long contactId, String displayName,
+                String displayNameAlternative) {
+            this.rawContactId = rawContactId;
+            this.contactId = contactId;
+            this.displayName = displayName;
+            this.displayNameAlternative = displayNameAlternative;
+        }
+
+        /** Whether the provider would return this raw contact for the given prefix. */
+        boolean matches(String prefix) {
+            return likePrefixMatches(displayName, prefix)
+                    || likePrefixMatches(displayNameAlternative, prefix);
+        }
+    }
+
+    /**
+     * The candidates for a prefix in a given account.
+     */
+    private static class CandidateCache {
+        final String prefix;
+        final String accountName;
+        final String accountType;
+        final String dataSet;
+        final List<Candidate> candidates;
+
+        CandidateCache(String prefix, String accountName, String accountType, String dataSet,
+                List<Candidate> candidates) {
+            this.prefix = prefix;
+            this.accountName = accountName;
+            this.accountType = accountType;
+            this.dataSet = dataSet;
+            this.candidates = candidates;
+        }
+
+        /**
+         * Whether the candidates for the given prefix are a subset of these candidates, so they
+         * can be found without querying the provider.
+         */
+        boolean canRefine(String newPrefix, String newAccountName, String newAccountType,
+                String newDataSet) {
+            return newPrefix.startsWith(prefix)
+                    // Wildcards typed by the user are interpreted by LIKE, leave them to SQLite.
+                    && newPrefix.indexOf('%') < 0 && newPrefix.indexOf('_') < 0
+                    && TextUtils.equals(accountName, newAccountName)
+                    && TextUtils.equals(accountType, newAccountType)
+                    && TextUtils.equals(dataSet, newDataSet);
+        }
+    }
+
+    /**
+     * Matches the way SQLite evaluates {@code value LIKE 'prefix%'}: case insensitive for ASCII
+     * letters only.
+     */
+    private static boolean likePrefixMatches(String value, String prefix) {
+        if (value == null || value.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            final char a = value.charAt(i);
+            final char b = prefix.charAt(i);
+            if (a != b && (a >= 0x80 || b >= 0x80
+                    || Character.toLowerCase(a) != Character.toLowerCase(b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * This represents a single contact that is a suggestion for the user to add to a group.
      */
@@ -328,7 +562,7 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
         private long mContactId;
         private String mDisplayName;
         private String mExtraInfo;
-        private byte[] mPhoto;
+        private Bitmap mPhoto;
 
         public SuggestedMember(long rawContactId, String displayName, long contactId) {
             mRawContactId = rawContactId;
@@ -352,7 +586,7 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
             return mContactId;
         }
 
-        public byte[] getPhotoByteArray() {
+        public Bitmap getPhoto() {
             return mPhoto;
         }
 
@@ -367,7 +601,7 @@ public class SuggestedMemberListAdapter extends ArrayAdapter<SuggestedMember> {
             mExtraInfo = info;
         }
 
-        public void setPhotoByteArray(byte[] photo) {
+        public void setPhoto(Bitmap photo) {
             mPhoto = photo;
         }
 
@@ -16,63 +16,51 @@
 
 package com.android.contacts.interactions;
 
-import com.google.common.collect.Sets;
-
 import com.android.contacts.ContactSaveService;
 import com.android.contacts.R;
-import com.android.contacts.common.model.AccountTypeManager;
-import com.android.contacts.common.model.account.AccountType;
 
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Fragment;
 import android.app.FragmentManager;
 import android.app.LoaderManager.LoaderCallbacks;
+import android.content.ComponentName;
 import android.content.Context;
-import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnDismissListener;
 import android.content.Loader;
-import android.database.Cursor;
 import android.os.Bundle;
-import android.provider.ContactsContract.RawContacts;
 import android.util.Log;
 
-import java.util.HashSet;
-import java.util.TreeSet;
-
 /**
  * An interaction invoked to delete multiple contacts.
  *
  * This class is very similar to {@link ContactDeletionInteraction}.
  */
 public class ContactMultiDeletionInteraction extends Fragment
-        implements LoaderCallbacks<Cursor> {
+        implements LoaderCallbacks<ContactMultiDeletionLoader.Result> {
 
     public interface MultiContactDeleteListener {
+        /**
+         * The user confirmed the deletion of the contacts, which now runs in the background.
+         * The result is delivered to the activity by {@link ContactSaveService} with the
+         * {@link #ACTION_DELETION_COMPLETED} action.
+         */
+        void onDeletionStarted(long[] contactIds);
         void onDeletionFinished();
     }
 
+    /** Action of the callback intent delivered once the contacts are deleted. */
+    public static final String ACTION_DELETION_COMPLETED = "multipleDeletionCompleted";
+
     private static final String FRAGMENT_TAG = "deleteMultipleContacts";
     private static final String TAG = "ContactMultiDeletionInteraction";
     private static final String KEY_ACTIVE = "active";
     private static final String KEY_CONTACTS_IDS = "contactIds";
     public static final String ARG_CONTACT_IDS = "contactIds";
 
-    private static final String[] RAW_CONTACT_PROJECTION = new String[] {
-            RawContacts._ID,
-            RawContacts.ACCOUNT_TYPE,
-            RawContacts.DATA_SET,
-            RawContacts.CONTACT_ID,
-    };
-
-    private static final int COLUMN_INDEX_RAW_CONTACT_ID = 0;
-    private static final int COLUMN_INDEX_ACCOUNT_TYPE = 1;
-    private static final int COLUMN_INDEX_DATA_SET = 2;
-    private static final int COLUMN_INDEX_CONTACT_ID = 3;
-
     private boolean mIsLoaderActive;
-    private TreeSet<Long> mContactIds;
+    private long[] mContactIds;
     private Context mContext;
     private AlertDialog mDialog;
 
@@ -83,8 +71,7 @@ public class ContactMultiDeletionInteraction extends Fragment
      * @param contactIds the IDs of contacts to be deleted
      * @return the newly created interaction
      */
-    public static ContactMultiDeletionInteraction start(
-            Activity activity, TreeSet<Long> contactIds) {
+    public static ContactMultiDeletionInteraction start(Activity activity, long[] contactIds) {
         if (contactIds == null) {
             return null;
         }
@@ -119,12 +106,12 @@ public class ContactMultiDeletionInteraction extends Fragment
         }
     }
 
-    public void setContactIds(TreeSet<Long> contactIds) {
+    public void setContactIds(long[] contactIds) {
         mContactIds = contactIds;
         mIsLoaderActive = true;
         if (isStarted()) {
             Bundle args = new Bundle();
-            args.putSerializable(ARG_CONTACT_IDS, mContactIds);
+            args.putLongArray(ARG_CONTACT_IDS, mContactIds);
             getLoaderManager().restartLoader(R.id.dialog_delete_multiple_contact_loader_id,
                     args, this);
         }
@@ -138,7 +125,7 @@ public class ContactMultiDeletionInteraction extends Fragment
     public void onStart() {
         if (mIsLoaderActive) {
             Bundle args = new Bundle();
-            args.putSerializable(ARG_CONTACT_IDS, mContactIds);
+            args.putLongArray(ARG_CONTACT_IDS, mContactIds);
             getLoaderManager().initLoader(
                     R.id.dialog_delete_multiple_contact_loader_id, args, this);
         }
@@ -154,26 +141,13 @@ public class ContactMultiDeletionInteraction extends Fragment
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        final TreeSet<Long> contactIds = (TreeSet<Long>) args.getSerializable(ARG_CONTACT_IDS);
-        final Object[] parameterObject = contactIds.toArray();
-        final String[] parameters = new String[contactIds.size()];
-
-        final StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < contactIds.size(); i++) {
-            parameters[i] = String.valueOf(parameterObject[i]);
-            builder.append(RawContacts.CONTACT_ID + " =?");
-            if (i == contactIds.size() -1) {
-                break;
-            }
-            builder.append(" OR ");
-        }
-        return new CursorLoader(mContext, RawContacts.CONTENT_URI, RAW_CONTACT_PROJECTION,
-                builder.toString(), parameters, null);
+    public Loader<ContactMultiDeletionLoader.Result> onCreateLoader(int id, Bundle args) {
+        return new ContactMultiDeletionLoader(mContext, args.getLongArray(ARG_CONTACT_IDS));
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+    public void onLoadFinished(Loader<ContactMultiDeletionLoader.Result> loader,
+            ContactMultiDeletionLoader.Result result) {
         if (mDialog != null) {
             mDialog.dismiss();
             mDialog = null;
@@ -183,35 +157,13 @@ public class ContactMultiDeletionInteraction extends Fragment
             return;
         }
 
-        if (cursor == null || cursor.isClosed()) {
+        if (result == null) {
             Log.e(TAG, "Failed to load contacts");
             return;
         }
 
-        // This cursor may contain duplicate raw contacts, so we need to de-dupe them first
-        final HashSet<Long> readOnlyRawContacts = Sets.newHashSet();
-        final HashSet<Long> writableRawContacts = Sets.newHashSet();
-        final HashSet<Long> contactIds = Sets.newHashSet();
-
-        AccountTypeManager accountTypes = AccountTypeManager.getInstance(getActivity());
-        cursor.moveToPosition(-1);
-        while (cursor.moveToNext()) {
-            final long rawContactId = cursor.getLong(COLUMN_INDEX_RAW_CONTACT_ID);
-            final String accountType = cursor.getString(COLUMN_INDEX_ACCOUNT_TYPE);
-            final String dataSet = cursor.getString(COLUMN_INDEX_DATA_SET);
-            final long contactId = cursor.getLong(COLUMN_INDEX_CONTACT_ID);
-            contactIds.add(contactId);
-            final AccountType type = accountTypes.getAccountType(accountType, dataSet);
-            boolean writable = type == null || type.areContactsWritable();
-            if (writable) {
-                writableRawContacts.add(rawContactId);
-            } else {
-                readOnlyRawContacts.add(rawContactId);
-            }
-        }
-
-        final int readOnlyCount = readOnlyRawContacts.size();
-        final int writableCount = writableRawContacts.size();
+        final int readOnlyCount = result.readOnlyRawContactCount;
+        final int writableCount = result.writableRawContactCount;
 
         final int messageId;
         int positiveButtonId = android.R.string.ok;
@@ -228,15 +180,7 @@ public class ContactMultiDeletionInteraction extends Fragment
             positiveButtonId = R.string.deleteConfirmation_positive_button;
         }
 
-        // Convert set of contact ids into a format that is easily parcellable and iterated upon
-        // for the sake of ContactSaveService.
-        final Long[] contactIdObjectArray = contactIds.toArray(new Long[contactIds.size()]);
-        final long[] contactIdArray = new long[contactIds.size()];
-        for (int i = 0; i < contactIds.size(); i++) {
-            contactIdArray[i] = contactIdObjectArray[i];
-        }
-
-        showDialog(messageId, positiveButtonId, contactIdArray);
+        showDialog(messageId, positiveButtonId, result.contactIds);
 
         // We don't want onLoadFinished() calls any more, which may come when the database is
         // updating.
@@ -244,7 +188,7 @@ public class ContactMultiDeletionInteraction extends Fragment
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<ContactMultiDeletionLoader.Result> loader) {
     }
 
     private void showDialog(int messageId, int positiveButtonId, final long[] contactIds) {
@@ -276,7 +220,7 @@ public class ContactMultiDeletionInteraction extends Fragment
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
         outState.putBoolean(KEY_ACTIVE, mIsLoaderActive);
-        outState.putSerializable(KEY_CONTACTS_IDS, mContactIds);
+        outState.putLongArray(KEY_CONTACTS_IDS, mContactIds);
     }
 
     @Override
@@ -284,20 +228,27 @@ public class ContactMultiDeletionInteraction extends Fragment
         super.onActivityCreated(savedInstanceState);
         if (savedInstanceState != null) {
             mIsLoaderActive = savedInstanceState.getBoolean(KEY_ACTIVE);
-            mContactIds = (TreeSet<Long>) savedInstanceState.getSerializable(KEY_CONTACTS_IDS);
+            mContactIds = savedInstanceState.getLongArray(KEY_CONTACTS_IDS);
         }
     }
 
     protected void doDeleteContact(long[] contactIds) {
-        mContext.startService(ContactSaveService.createDeleteMultipleContactsIntent(mContext,
-                contactIds));
-        notifyListenerActivity();
-    }
-
-    private void notifyListenerActivity() {
-        if (getActivity() instanceof MultiContactDeleteListener) {
-            final MultiContactDeleteListener listener = (MultiContactDeleteListener) getActivity();
+        final Activity activity = getActivity();
+        if (activity instanceof MultiContactDeleteListener) {
+            // The service delivers the callback to the activity whose intent has the same
+            // component, which is an alias when the activity was started through one.
+            ComponentName component = activity.getIntent().getComponent();
+            if (component == null) {
+                component = new ComponentName(activity, activity.getClass());
+            }
+            mContext.startService(ContactSaveService.createDeleteMultipleContactsIntent(mContext,
+                    contactIds, component, ACTION_DELETION_COMPLETED));
+            final MultiContactDeleteListener listener = (MultiContactDeleteListener) activity;
+            listener.onDeletionStarted(contactIds);
             listener.onDeletionFinished();
+        } else {
+            mContext.startService(ContactSaveService.createDeleteMultipleContactsIntent(mContext,
+                    contactIds));
         }
     }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.interactions;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.ContactsContract.RawContacts;
+
+import com.android.contacts.common.model.AccountTypeManager;
+import com.android.contacts.common.model.account.AccountType;
+
+import java.util.Arrays;
+
+/**
+ * Classifies the raw contacts of the contacts to be deleted by {@link
+ * ContactMultiDeletionInteraction} into writable and read-only ones. The raw contacts are
+ * queried in batches of {@link #BATCH_SIZE} contacts, with the IDs inlined in the selection so
+ * that no batch comes close to the limit on bound arguments, and only the counts are kept.
+ */
+public class ContactMultiDeletionLoader
+        extends AsyncTaskLoader<ContactMultiDeletionLoader.Result> {
+
+    /**
+     * The outcome of the classification.
+     */
+    public static class Result {
+        /** The contacts that still exist, in ascending order. */
+        public final long[] contactIds;
+        public final int writableRawContactCount;
+        public final int readOnlyRawContactCount;
+
+        public Result(long[] contactIds, int writableRawContactCount,
+                int readOnlyRawContactCount) {
+            this.contactIds = contactIds;
+            this.writableRawContactCount = writableRawContactCount;
+            this.readOnlyRawContactCount = readOnlyRawContactCount;
+        }
+    }
+
+    /** Maximum number of contacts per raw contact query. */
+    private static final int BATCH_SIZE = 500;
+
+    private static final String[] RAW_CONTACT_PROJECTION = new String[] {
+            RawContacts.CONTACT_ID,
+            RawContacts.ACCOUNT_TYPE,
+            RawContacts.DATA_SET,
+    };
+
+    private static final int COLUMN_INDEX_CONTACT_ID = 0;
+    private static final int COLUMN_INDEX_ACCOUNT_TYPE = 1;
+    private static final int COLUMN_INDEX_DATA_SET = 2;
+
+    private final long[] mContactIds;
+    private Result mResult;
+
+    /**
+     * @param contactIds the IDs of the contacts to be deleted, in ascending order
+     */
+    public ContactMultiDeletionLoader(Context context, long[] contactIds) {
+        super(context);
+        mContactIds = contactIds;
+    }
+
+    @Override
+    public Result loadInBackground() {
+        final AccountTypeManager accountTypes = AccountTypeManager.getInstance(getContext());
+        final long[] foundContactIds = new long[mContactIds.length];
+        int foundCount = 0;
+        int writableCount = 0;
+        int readOnlyCount = 0;
+        for (int start = 0; start < mContactIds.length; start += BATCH_SIZE) {
+            if (isLoadInBackgroundCanceled()) {
+                return null;
+            }
+            final int end = Math.min(mContactIds.length, start + BATCH_SIZE);
+            final Cursor cursor = getContext().getContentResolver().query(
+                    RawContacts.CONTENT_URI, RAW_CONTACT_PROJECTION,
+                    createSelection(start, end), null, RawContacts.CONTACT_ID);
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    // Sorted by contact, so a contact only needs to be compared to the last one.
+                    final long contactId = cursor.getLong(COLUMN_INDEX_CONTACT_ID);
+                    if (foundCount == 0 || foundContactIds[foundCount - 1] != contactId) {
+                        foundContactIds[foundCount++] = contactId;
+                    }
+                    final AccountType type = accountTypes.getAccountType(
+                            cursor.getString(COLUMN_INDEX_ACCOUNT_TYPE),
+                            cursor.getString(COLUMN_INDEX_DATA_SET));
+                    if (type == null || type.areContactsWritable()) {
+                        writableCount++;
+                    } else {
+                        readOnlyCount++;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return new Result(Arrays.copyOf(foundContactIds, foundCount), writableCount,
+                readOnlyCount);
+    }
+
+    private String createSelection(int start, int end) {
+        final StringBuilder selection = new StringBuilder();
+        selection.append(RawContacts.CONTACT_ID).append(" IN (");
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                selection.append(',');
+            }
+            selection.append(mContactIds[i]);
+        }
+        return selection.append(')').toString();
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mResult != null) {
+            deliverResult(mResult);
+        }
+        if (takeContentChanged() || mResult == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    public void deliverResult(Result result) {
+        mResult = result;
+        if (isStarted()) {
+            super.deliverResult(result);
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mResult = null;
+    }
+}
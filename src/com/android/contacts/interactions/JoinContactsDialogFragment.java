@@ -44,25 +44,33 @@ public class JoinContactsDialogFragment extends DialogFragment {
     }
 
     public static void start(Activity activity, TreeSet<Long> contactIds) {
+        final long[] contactIdsArray = new long[contactIds.size()];
+        int i = 0;
+        for (Long contactId : contactIds) {
+            contactIdsArray[i++] = contactId;
+        }
+        start(activity, contactIdsArray);
+    }
+
+    public static void start(Activity activity, long[] contactIds) {
         final FragmentTransaction ft = activity.getFragmentManager().beginTransaction();
         final JoinContactsDialogFragment newFragment
                 = JoinContactsDialogFragment.newInstance(contactIds);
         newFragment.show(ft, FRAGMENT_TAG);
     }
 
-    private static JoinContactsDialogFragment newInstance(TreeSet<Long> contactIds) {
+    private static JoinContactsDialogFragment newInstance(long[] contactIds) {
         final JoinContactsDialogFragment fragment = new JoinContactsDialogFragment();
         Bundle arguments = new Bundle();
-        arguments.putSerializable(KEY_CONTACT_IDS, contactIds);
+        arguments.putLongArray(KEY_CONTACT_IDS, contactIds);
         fragment.setArguments(arguments);
         return fragment;
     }
 
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
-        final TreeSet<Long> contactIds =
-                (TreeSet<Long>) getArguments().getSerializable(KEY_CONTACT_IDS);
-        if (contactIds.size() <= 1) {
+        final long[] contactIds = getArguments().getLongArray(KEY_CONTACT_IDS);
+        if (contactIds.length <= 1) {
             return new AlertDialog.Builder(getActivity())
                     .setIconAttribute(android.R.attr.alertDialogIcon)
                     .setMessage(R.string.batch_link_single_contact_warning)
@@ -84,15 +92,9 @@ public class JoinContactsDialogFragment extends DialogFragment {
                 .create();
     }
 
-    private void joinContacts(TreeSet<Long> contactIds) {
-        final Long[] contactIdsArray = contactIds.toArray(new Long[contactIds.size()]);
-        final long[] contactIdsArray2 = new long[contactIdsArray.length];
-        for (int i = 0; i < contactIds.size(); i++) {
-            contactIdsArray2[i] = contactIdsArray[i];
-        }
-
+    private void joinContacts(long[] contactIds) {
         final Intent intent = ContactSaveService.createJoinSeveralContactsIntent(getActivity(),
-                contactIdsArray2);
+                contactIds);
         getActivity().startService(intent);
 
         notifyListener();
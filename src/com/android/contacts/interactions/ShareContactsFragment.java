@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.interactions;
+
+import android.app.Activity;
+import android.app.Fragment;
+import android.app.FragmentManager;
+import android.app.ProgressDialog;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.provider.ContactsContract.Contacts;
+import android.support.v4.content.FileProvider;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.android.contacts.R;
+import com.android.contacts.common.util.ImplicitIntentsUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shares a set of contacts as vCards. The lookup keys of the contacts are read in a few batched
+ * queries off the main thread. Small selections are shared with a multi vCard URI of the
+ * provider; larger ones are written to a file in the cache, a few contacts at a time, and shared
+ * through the file provider so the URI stays short.
+ *
+ * The work is done by a headless fragment retained across configuration changes, so that a
+ * share survives a rotation. The progress dialog belongs to the current activity: it is
+ * dismissed when the fragment is detached and shown again in the new activity.
+ */
+public class ShareContactsFragment extends Fragment {
+    private static final String TAG = "ShareContactsFragment";
+
+    private static final String ARG_CONTACT_IDS = "contactIds";
+
+    /** Maximum number of contact IDs in the IN clause of a lookup key query. */
+    private static final int LOOKUP_BATCH_SIZE = 500;
+
+    /** Larger selections are written to a file instead of being encoded in the URI. */
+    private static final int MAX_CONTACTS_IN_URI = 100;
+
+    /** Number of contacts read from the provider per vCard request when writing the file. */
+    private static final int VCARD_BATCH_SIZE = 50;
+
+    private static final String SHARED_VCARD_DIRECTORY = "shared_contacts";
+    private static final String SHARED_VCARD_FILE_NAME = "contacts.vcf";
+    /** Age after which the file of a share is deleted, the receiving app is done with it. */
+    private static final long MAX_SHARED_VCARD_AGE_MILLIS = DateUtils.DAY_IN_MILLIS;
+
+    private static final String[] LOOKUP_PROJECTION = new String[] {
+            Contacts._ID,
+            Contacts.LOOKUP_KEY,
+    };
+    private static final int LOOKUP_KEY = 1;
+
+    private Context mContext;
+    private ShareTask mTask;
+    private ProgressDialog mProgressDialog;
+    /** Number of contacts written so far and in total, or 0 while the file isn't written. */
+    private int mProgress;
+    private int mProgressMax;
+
+    /**
+     * Starts sharing the contacts with the given IDs, replacing a share in progress.
+     */
+    public static void start(Activity activity, long[] contactIds) {
+        final FragmentManager fragmentManager = activity.getFragmentManager();
+        final Fragment previous = fragmentManager.findFragmentByTag(TAG);
+        final Bundle args = new Bundle();
+        args.putLongArray(ARG_CONTACT_IDS, contactIds);
+        final ShareContactsFragment fragment = new ShareContactsFragment();
+        fragment.setArguments(args);
+        if (previous != null) {
+            fragmentManager.beginTransaction().remove(previous).add(fragment, TAG).commit();
+        } else {
+            fragmentManager.beginTransaction().add(fragment, TAG).commit();
+        }
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+        mContext = getActivity().getApplicationContext();
+        mTask = new ShareTask();
+        mTask.execute(getArguments().getLongArray(ARG_CONTACT_IDS));
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        if (mProgressMax > 0) {
+            showProgress();
+        }
+    }
+
+    @Override
+    public void onDetach() {
+        // The dialog belongs to the activity being destroyed.
+        dismissProgressDialog();
+        super.onDetach();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mTask.cancel(false);
+    }
+
+    private void showProgress() {
+        if (mProgressDialog == null) {
+            // Only shown when writing a file, sharing a few contacts is quick.
+            mProgressDialog = new ProgressDialog(getActivity());
+            mProgressDialog.setMessage(getText(R.string.sharing_contacts_progress));
+            mProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+            mProgressDialog.setCancelable(true);
+            mProgressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+                @Override
+                public void onCancel(DialogInterface dialog) {
+                    mProgressDialog = null;
+                    finish();
+                }
+            });
+            mProgressDialog.setMax(mProgressMax);
+            mProgressDialog.show();
+        }
+        mProgressDialog.setProgress(mProgress);
+    }
+
+    private void dismissProgressDialog() {
+        if (mProgressDialog != null) {
+            mProgressDialog.dismiss();
+            mProgressDialog = null;
+        }
+    }
+
+    /**
+     * Removes this fragment, which cancels the share if it is still in progress.
+     */
+    private void finish() {
+        dismissProgressDialog();
+        if (isAdded() && !isRemoving()) {
+            getFragmentManager().beginTransaction().remove(this).commitAllowingStateLoss();
+        }
+    }
+
+    private void onShareReady(Uri uri, boolean failed) {
+        final Activity activity = getActivity();
+        finish();
+        if (uri == null) {
+            if (failed) {
+                Toast.makeText(mContext, R.string.sharing_contacts_error, Toast.LENGTH_SHORT)
+                        .show();
+            }
+            return;
+        }
+        if (activity == null) {
+            return;
+        }
+        final Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType(Contacts.CONTENT_VCARD_TYPE);
+        intent.putExtra(Intent.EXTRA_STREAM, uri);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        ImplicitIntentsUtil.startActivityOutsideApp(activity, intent);
+    }
+
+    private final class ShareTask extends AsyncTask<long[], Integer, Uri> {
+        private boolean mFailed;
+
+        @Override
+        protected Uri doInBackground(long[]... params) {
+            final ContentResolver resolver = mContext.getContentResolver();
+            final List<String> lookupKeys = queryLookupKeys(resolver, params[0]);
+            if (lookupKeys.isEmpty() || isCancelled()) {
+                return null;
+            }
+            if (lookupKeys.size() <= MAX_CONTACTS_IN_URI) {
+                return buildMultiVCardUri(lookupKeys);
+            }
+            try {
+                return writeVCardFile(this, resolver, lookupKeys);
+            } catch (IOException e) {
+                Log.e(TAG, "Couldn't write the vCards of " + lookupKeys.size() + " contacts", e);
+                mFailed = true;
+                return null;
+            }
+        }
+
+        private void onVCardsWritten(int count, int total) {
+            publishProgress(count, total);
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            mProgress = values[0];
+            mProgressMax = values[1];
+            if (getActivity() != null) {
+                showProgress();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Uri uri) {
+            onShareReady(uri, mFailed);
+        }
+    }
+
+    /**
+     * Returns the lookup keys of the contacts, querying them in batches of
+     * {@link #LOOKUP_BATCH_SIZE} IDs. Contacts that don't exist anymore are skipped.
+     */
+    private static List<String> queryLookupKeys(ContentResolver resolver, long[] contactIds) {
+        final List<String> lookupKeys = new ArrayList<String>(contactIds.length);
+        for (int start = 0; start < contactIds.length; start += LOOKUP_BATCH_SIZE) {
+            final int end = Math.min(contactIds.length, start + LOOKUP_BATCH_SIZE);
+            final StringBuilder selection = new StringBuilder();
+            selection.append(Contacts._ID).append(" IN (");
+            for (int i = start; i < end; i++) {
+                if (i > start) {
+                    selection.append(',');
+                }
+                selection.append(contactIds[i]);
+            }
+            selection.append(')');
+            final Cursor cursor = resolver.query(Contacts.CONTENT_URI, LOOKUP_PROJECTION,
+                    selection.toString(), null, null);
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    final String lookupKey = cursor.getString(LOOKUP_KEY);
+                    if (!TextUtils.isEmpty(lookupKey)) {
+                        lookupKeys.add(lookupKey);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return lookupKeys;
+    }
+
+    private static Uri buildMultiVCardUri(List<String> lookupKeys) {
+        final StringBuilder uriListBuilder = new StringBuilder();
+        for (String lookupKey : lookupKeys) {
+            if (uriListBuilder.length() > 0) {
+                uriListBuilder.append(':');
+            }
+            uriListBuilder.append(Uri.encode(lookupKey));
+        }
+        return Uri.withAppendedPath(Contacts.CONTENT_MULTI_VCARD_URI,
+                Uri.encode(uriListBuilder.toString()));
+    }
+
+    /**
+     * Writes the vCards of the contacts to a file in the cache directory and returns its content
+     * URI. Returns null if cancelled.
+     *
+     * Each share gets its own directory, so that a share doesn't overwrite the file the app
+     * receiving a previous one may still be reading. The files of old shares are deleted.
+     */
+    private Uri writeVCardFile(ShareTask task, ContentResolver resolver, List<String> lookupKeys)
+            throws IOException {
+        final File sharesDirectory = new File(mContext.getCacheDir(), SHARED_VCARD_DIRECTORY);
+        deleteOldShares(sharesDirectory);
+        final File directory = createShareDirectory(sharesDirectory);
+        final File file = new File(directory, SHARED_VCARD_FILE_NAME);
+        final byte[] buffer = new byte[8192];
+        final OutputStream out = new FileOutputStream(file);
+        boolean written = false;
+        try {
+            for (int start = 0; start < lookupKeys.size(); start += VCARD_BATCH_SIZE) {
+                if (task.isCancelled()) {
+                    return null;
+                }
+                final int end = Math.min(lookupKeys.size(), start + VCARD_BATCH_SIZE);
+                final InputStream in = resolver.openInputStream(
+                        buildMultiVCardUri(lookupKeys.subList(start, end)));
+                if (in == null) {
+                    throw new IOException("No vCards for contacts " + start + " to " + end);
+                }
+                try {
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
+                } finally {
+                    in.close();
+                }
+                task.onVCardsWritten(end, lookupKeys.size());
+            }
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                deleteShare(directory);
+            }
+        }
+        return FileProvider.getUriForFile(mContext,
+                mContext.getString(R.string.contacts_file_provider_authority), file);
+    }
+
+    /**
+     * Creates a new directory for the file of a share, named after the current time.
+     */
+    private static File createShareDirectory(File sharesDirectory) throws IOException {
+        if (!sharesDirectory.isDirectory() && !sharesDirectory.mkdirs()) {
+            throw new IOException("Couldn't create " + sharesDirectory);
+        }
+        for (long name = System.currentTimeMillis(); ; name++) {
+            final File directory = new File(sharesDirectory, Long.toString(name));
+            if (directory.mkdir()) {
+                return directory;
+            }
+            if (!directory.exists()) {
+                throw new IOException("Couldn't create " + directory);
+            }
+        }
+    }
+
+    private static void deleteOldShares(File sharesDirectory) {
+        final File[] shares = sharesDirectory.listFiles();
+        if (shares == null) {
+            return;
+        }
+        final long oldest = System.currentTimeMillis() - MAX_SHARED_VCARD_AGE_MILLIS;
+        for (File share : shares) {
+            if (share.lastModified() < oldest) {
+                deleteShare(share);
+            }
+        }
+    }
+
+    private static void deleteShare(File share) {
+        final File[] files = share.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        share.delete();
+    }
+}
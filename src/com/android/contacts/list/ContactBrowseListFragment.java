@@ -16,14 +16,12 @@
 package com.android.contacts.list;
 
 import android.app.Activity;
-import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.Loader;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.database.Cursor;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -33,6 +31,12 @@ import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Directory;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.ListView;
 
 import com.android.common.widget.CompositeCursorAdapter.Partition;
 import com.android.contacts.common.list.AutoScrollListView;
@@ -40,7 +44,8 @@ import com.android.contacts.common.list.ContactEntryListFragment;
 import com.android.contacts.common.list.ContactListAdapter;
 import com.android.contacts.common.list.ContactListFilter;
 import com.android.contacts.common.list.DirectoryPartition;
-import com.android.contacts.common.util.ContactLoaderUtils;
+import com.android.contacts.quickcontact.QuickContactHeaderSnapshot;
+import com.android.contacts.quickcontact.QuickContactPrefetcher;
 
 import java.util.List;
 
@@ -96,67 +101,43 @@ public abstract class ContactBrowseListFragment extends
     private String mPersistentSelectionPrefix = PERSISTENT_SELECTION_PREFIX;
 
     protected OnContactBrowserActionListener mListener;
-    private ContactLookupTask mContactLookupTask;
+    /** URI of the selected contact being resolved by {@link ContactLookupUriCache}, or null. */
+    private Uri mPendingLookupUri;
 
-    private final class ContactLookupTask extends AsyncTask<Void, Void, Uri> {
-
-        private final Uri mUri;
-        private boolean mIsCancelled;
-
-        public ContactLookupTask(Uri uri) {
-            mUri = uri;
-        }
+    /** Contact that is speculatively loaded for QuickContact while it is touched or hovered. */
+    private Uri mPrefetchedContactUri;
 
+    private final View.OnHoverListener mPrefetchHoverListener = new View.OnHoverListener() {
         @Override
-        protected Uri doInBackground(Void... args) {
-            Cursor cursor = null;
-            try {
-                final ContentResolver resolver = getContext().getContentResolver();
-                final Uri uriCurrentFormat = ContactLoaderUtils.ensureIsContactUri(resolver, mUri);
-                cursor = resolver.query(uriCurrentFormat,
-                        new String[] { Contacts._ID, Contacts.LOOKUP_KEY }, null, null, null);
-
-                if (cursor != null && cursor.moveToFirst()) {
-                    final long contactId = cursor.getLong(0);
-                    final String lookupKey = cursor.getString(1);
-                    if (contactId != 0 && !TextUtils.isEmpty(lookupKey)) {
-                        return Contacts.getLookupUri(contactId, lookupKey);
-                    }
-                }
-
-                Log.e(TAG, "Error: No contact ID or lookup key for contact " + mUri);
-                return null;
-            } catch (Exception e) {
-                Log.e(TAG, "Error loading the contact: " + mUri, e);
-                return null;
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
-                }
+        public boolean onHover(View view, MotionEvent event) {
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_HOVER_ENTER:
+                case MotionEvent.ACTION_HOVER_MOVE:
+                    prefetchContactAt((int) event.getX(), (int) event.getY());
+                    break;
+                case MotionEvent.ACTION_HOVER_EXIT:
+                    cancelContactPrefetch();
+                    break;
             }
+            return false;
         }
+    };
 
-        public void cancel() {
-            super.cancel(true);
-            // Use a flag to keep track of whether the {@link AsyncTask} was cancelled or not in
-            // order to ensure onPostExecute() is not executed after the cancel request. The flag is
-            // necessary because {@link AsyncTask} still calls onPostExecute() if the cancel request
-            // came after the worker thread was finished.
-            mIsCancelled = true;
-        }
-
+    private final ContactLookupUriCache.Callback mLookupUriCallback =
+            new ContactLookupUriCache.Callback() {
         @Override
-        protected void onPostExecute(Uri uri) {
+        public void onLookupUriResolved(Uri uri, Uri lookupUri) {
             // Make sure the {@link Fragment} is at least still attached to the {@link Activity}
             // before continuing. Null URIs should still be allowed so that the list can be
             // refreshed and a default contact can be selected (i.e. the case of deleted
             // contacts).
-            if (mIsCancelled || !isAdded()) {
+            if (!uri.equals(mPendingLookupUri) || !isAdded()) {
                 return;
             }
-            onContactUriQueryFinished(uri);
+            mPendingLookupUri = null;
+            onContactUriQueryFinished(lookupUri);
         }
-    }
+    };
 
     private boolean mDelaySelection;
 
@@ -176,6 +157,70 @@ public abstract class ContactBrowseListFragment extends
         return mHandler;
     }
 
+    @Override
+    protected void onCreateView(LayoutInflater inflater, ViewGroup container) {
+        super.onCreateView(inflater, container);
+        getListView().setOnHoverListener(mPrefetchHoverListener);
+    }
+
+    @Override
+    public boolean onTouch(View view, MotionEvent event) {
+        if (view == getListView()) {
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    prefetchContactAt((int) event.getX(), (int) event.getY());
+                    break;
+                case MotionEvent.ACTION_CANCEL:
+                    cancelContactPrefetch();
+                    break;
+            }
+        }
+        return super.onTouch(view, event);
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        super.onScrollStateChanged(view, scrollState);
+        if (scrollState != SCROLL_STATE_IDLE) {
+            // The touch turned into a scroll, so the touched contact will not be opened.
+            cancelContactPrefetch();
+        }
+    }
+
+    /**
+     * Starts loading the QuickContact data of the contact at the given list coordinates, so
+     * that it is ready if the touch turns into a click. Only local contacts are prefetched.
+     */
+    private void prefetchContactAt(int x, int y) {
+        final ContactListAdapter adapter = getAdapter();
+        final ListView listView = getListView();
+        if (adapter == null || listView == null) {
+            return;
+        }
+        final int position = listView.pointToPosition(x, y) - listView.getHeaderViewsCount();
+        Uri uri = null;
+        if (position >= 0 && position < adapter.getCount()
+                && !adapter.isEnterpriseContact(position)) {
+            uri = adapter.getContactUri(position);
+        }
+        if (uri != null && uri.getQueryParameter(ContactsContract.DIRECTORY_PARAM_KEY) != null) {
+            uri = null;
+        }
+        if (uri == null || uri.equals(mPrefetchedContactUri)) {
+            return;
+        }
+        cancelContactPrefetch();
+        mPrefetchedContactUri = uri;
+        QuickContactPrefetcher.getInstance(getContext()).prefetch(uri);
+    }
+
+    private void cancelContactPrefetch() {
+        if (mPrefetchedContactUri != null) {
+            QuickContactPrefetcher.getInstance(getContext()).cancel(mPrefetchedContactUri);
+            mPrefetchedContactUri = null;
+        }
+    }
+
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
@@ -248,8 +293,11 @@ public abstract class ContactBrowseListFragment extends
     }
 
     protected void refreshSelectedContactUri() {
-        if (mContactLookupTask != null) {
-            mContactLookupTask.cancel();
+        final ContactLookupUriCache lookupUriCache = ContactLookupUriCache.getInstance(
+                getContext());
+        if (mPendingLookupUri != null) {
+            lookupUriCache.cancel(mPendingLookupUri, mLookupUriCallback);
+            mPendingLookupUri = null;
         }
 
         if (!isSelectionVisible()) {
@@ -267,8 +315,13 @@ public abstract class ContactBrowseListFragment extends
                 && mSelectedContactDirectoryId != Directory.LOCAL_INVISIBLE) {
             onContactUriQueryFinished(mSelectedContactUri);
         } else {
-            mContactLookupTask = new ContactLookupTask(mSelectedContactUri);
-            mContactLookupTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[])null);
+            final Uri cachedLookupUri = lookupUriCache.getCachedLookupUri(mSelectedContactUri);
+            if (cachedLookupUri != null) {
+                onContactUriQueryFinished(cachedLookupUri);
+            } else {
+                mPendingLookupUri = mSelectedContactUri;
+                lookupUriCache.resolve(mPendingLookupUri, mLookupUriCallback);
+            }
         }
     }
 
@@ -601,8 +654,17 @@ public abstract class ContactBrowseListFragment extends
     }
 
     public void viewContact(Uri contactUri, boolean isEnterpriseContact) {
+        viewContact(contactUri, isEnterpriseContact, null);
+    }
+
+    public void viewContact(Uri contactUri, boolean isEnterpriseContact,
+            QuickContactHeaderSnapshot headerSnapshot) {
+        // The prefetch, if any, is now owned by QuickContact which claims it by URI.
+        mPrefetchedContactUri = null;
         setSelectedContactUri(contactUri, false, false, true, false);
-        if (mListener != null) mListener.onViewContactAction(contactUri, isEnterpriseContact);
+        if (mListener != null) {
+            mListener.onViewContactAction(contactUri, isEnterpriseContact, headerSnapshot);
+        }
     }
 
     public void deleteContact(Uri contactUri) {
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract.Contacts;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.contacts.common.util.ContactLoaderUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Resolves contact URIs, including raw contact and legacy URIs, to the lookup URIs of their
+ * contacts. Resolved URIs are cached until a contact changes, and concurrent requests for the
+ * same URI share a single query.
+ *
+ * All methods must be called from the UI thread.
+ */
+public class ContactLookupUriCache {
+    private static final String TAG = "ContactLookupUriCache";
+
+    public interface Callback {
+        /**
+         * Called with the lookup URI of the contact, or null if the contact doesn't exist.
+         */
+        void onLookupUriResolved(Uri uri, Uri lookupUri);
+    }
+
+    private static final int MAX_CACHED_URIS = 100;
+
+    private static final String[] PROJECTION = new String[] {
+            Contacts._ID,
+            Contacts.LOOKUP_KEY,
+    };
+
+    private static ContactLookupUriCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<Uri, Uri> mLookupUris = new LruCache<Uri, Uri>(MAX_CACHED_URIS);
+    private final HashMap<Uri, LookupTask> mPendingLookups = new HashMap<Uri, LookupTask>();
+
+    /** Incremented when a contact changes, so lookups started before aren't cached. */
+    private int mGeneration;
+
+    private final ContentObserver mObserver = new ContentObserver(
+            new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            mGeneration++;
+            mLookupUris.evictAll();
+        }
+    };
+
+    public static synchronized ContactLookupUriCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ContactLookupUriCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ContactLookupUriCache(Context context) {
+        mContext = context;
+        mContext.getContentResolver().registerContentObserver(Contacts.CONTENT_URI, true,
+                mObserver);
+    }
+
+    /**
+     * Returns the lookup URI of the contact if it is known already, or null.
+     */
+    public Uri getCachedLookupUri(Uri uri) {
+        return mLookupUris.get(uri);
+    }
+
+    /**
+     * Resolves the URI in the background and passes the result to the callback, unless the
+     * request is cancelled first.
+     */
+    public void resolve(Uri uri, Callback callback) {
+        LookupTask task = mPendingLookups.get(uri);
+        if (task == null) {
+            task = new LookupTask(uri, mGeneration);
+            mPendingLookups.put(uri, task);
+            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
+        }
+        task.mCallbacks.add(callback);
+    }
+
+    /**
+     * Cancels a request made with {@link #resolve}. The query keeps running if other callers
+     * are waiting for the same URI.
+     */
+    public void cancel(Uri uri, Callback callback) {
+        final LookupTask task = mPendingLookups.get(uri);
+        if (task == null) {
+            return;
+        }
+        task.mCallbacks.remove(callback);
+        if (task.mCallbacks.isEmpty()) {
+            mPendingLookups.remove(uri);
+            task.cancel(true);
+        }
+    }
+
+    private void onLookupFinished(LookupTask task, Uri lookupUri) {
+        if (mPendingLookups.get(task.mUri) != task) {
+            return;
+        }
+        mPendingLookups.remove(task.mUri);
+        if (lookupUri != null && task.mGeneration == mGeneration) {
+            mLookupUris.put(task.mUri, lookupUri);
+        }
+        for (Callback callback : task.mCallbacks) {
+            callback.onLookupUriResolved(task.mUri, lookupUri);
+        }
+    }
+
+    private Uri queryLookupUri(Uri uri) {
+        Cursor cursor = null;
+        try {
+            final ContentResolver resolver = mContext.getContentResolver();
+            final Uri uriCurrentFormat = ContactLoaderUtils.ensureIsContactUri(resolver, uri);
+            cursor = resolver.query(uriCurrentFormat, PROJECTION, null, null, null);
+
+            if (cursor != null && cursor.moveToFirst()) {
+                final long contactId = cursor.getLong(0);
+                final String lookupKey = cursor.getString(1);
+                if (contactId != 0 && !TextUtils.isEmpty(lookupKey)) {
+                    return Contacts.getLookupUri(contactId, lookupKey);
+                }
+            }
+
+            Log.e(TAG, "Error: No contact ID or lookup key for contact " + uri);
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading the contact: " + uri, e);
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private final class LookupTask extends AsyncTask<Void, Void, Uri> {
+        private final Uri mUri;
+        private final int mGeneration;
+        private final List<Callback> mCallbacks = new ArrayList<Callback>(1);
+
+        public LookupTask(Uri uri, int generation) {
+            mUri = uri;
+            mGeneration = generation;
+        }
+
+        @Override
+        protected Uri doInBackground(Void... args) {
+            return queryLookupUri(mUri);
+        }
+
+        @Override
+        protected void onPostExecute(Uri lookupUri) {
+            onLookupFinished(this, lookupUri);
+        }
+    }
+}
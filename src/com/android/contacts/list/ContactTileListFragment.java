@@ -65,6 +65,10 @@ public class ContactTileListFragment extends Fragment {
 
     private boolean mOptionsMenuHasFrequents;
 
+    /** The rows saved after the last load, shown until the tiles are loaded. */
+    private Cursor mSnapshotCursor;
+    private boolean mContactsLoaded;
+
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
@@ -94,10 +98,43 @@ public class ContactTileListFragment extends Fragment {
         mListView.setItemsCanFocus(true);
         mListView.setAdapter(mAdapter);
         ContactListViewUtils.applyCardPaddingToView(getResources(), mListView, listLayout);
+        showSnapshot();
 
         return listLayout;
     }
 
+    /**
+     * Shows the tiles saved after the last load, if the tiles haven't been loaded yet, so that
+     * they appear before the provider has answered on a cold start.
+     */
+    private void showSnapshot() {
+        if (mDisplayType == null || mContactsLoaded || mSnapshotCursor != null) {
+            return;
+        }
+        mSnapshotCursor = CursorSnapshot.load(getActivity(), getSnapshotName(),
+                mDisplayType.name());
+        if (mSnapshotCursor != null) {
+            mAdapter.setContactCursor(mSnapshotCursor);
+        }
+    }
+
+    private void closeSnapshot() {
+        if (mSnapshotCursor != null) {
+            mSnapshotCursor.close();
+            mSnapshotCursor = null;
+        }
+    }
+
+    private String getSnapshotName() {
+        return "tiles_" + mDisplayType.name();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        closeSnapshot();
+    }
+
     @Override
     public void onHiddenChanged(boolean hidden) {
         super.onHiddenChanged(hidden);
@@ -180,6 +217,9 @@ public class ContactTileListFragment extends Fragment {
                 return;
             }
             mAdapter.setContactCursor(data);
+            mContactsLoaded = true;
+            closeSnapshot();
+            CursorSnapshot.save(getActivity(), getSnapshotName(), mDisplayType.name(), data);
             mEmptyView.setText(getEmptyStateText());
             mListView.setEmptyView(mEmptyView);
 
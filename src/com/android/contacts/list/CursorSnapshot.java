@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.provider.ContactsContract.Contacts;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A copy of the first rows of a list cursor kept on disk, so that the first screen of a list can
+ * be shown on a cold start before the provider has answered. The snapshot holds the columns of
+ * the cursor for its first {@link #MAX_ROWS} rows and the matching part of the address book
+ * index, in a small binary file that is memory mapped when read.
+ *
+ * A snapshot is only returned for the key it was saved with, which should identify the query,
+ * e.g. its filter and sort order.
+ */
+public final class CursorSnapshot {
+    private static final String TAG = "CursorSnapshot";
+
+    /** Number of rows kept, about a screen on large devices. */
+    public static final int MAX_ROWS = 30;
+
+    private static final String DIRECTORY = "list_snapshots";
+    private static final int MAGIC = 0x434e5053;
+    private static final int VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_STRING = 3;
+
+    private final String mKey;
+    private final String[] mColumnNames;
+    private final Object[][] mRows;
+    private final String[] mSectionTitles;
+    private final int[] mSectionCounts;
+
+    private CursorSnapshot(String key, String[] columnNames, Object[][] rows,
+            String[] sectionTitles, int[] sectionCounts) {
+        mKey = key;
+        mColumnNames = columnNames;
+        mRows = rows;
+        mSectionTitles = sectionTitles;
+        mSectionCounts = sectionCounts;
+    }
+
+    /**
+     * Returns the saved snapshot as a cursor, or null if there is none for the given key. Reading
+     * is cheap enough to be done on the main thread while the first screen is created.
+     */
+    public static Cursor load(Context context, String name, String key) {
+        final File file = getFile(context, name);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final CursorSnapshot snapshot = read(file);
+            return snapshot.mKey.equals(key) ? snapshot.toCursor() : null;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring unreadable snapshot " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Copies the first rows of the cursor and writes them in the background, replacing the
+     * previous snapshot with the same name.
+     */
+    public static void save(Context context, String name, String key, Cursor cursor) {
+        final CursorSnapshot snapshot = capture(key, cursor, MAX_ROWS);
+        final AtomicFile file = new AtomicFile(getFile(context, name));
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(file, snapshot);
+                } catch (IOException e) {
+                    Log.w(TAG, "Couldn't write snapshot " + file.getBaseFile(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes all snapshots, e.g. to measure a cold start without them.
+     */
+    public static void deleteAll(Context context) {
+        final File[] files = new File(context.getCacheDir(), DIRECTORY).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static File getFile(Context context, String name) {
+        return new File(new File(context.getCacheDir(), DIRECTORY), name);
+    }
+
+    @VisibleForTesting
+    static CursorSnapshot capture(String key, Cursor cursor, int maxRows) {
+        final String[] columnNames = cursor.getColumnNames();
+        final int count = Math.min(cursor.getCount(), maxRows);
+        final Object[][] rows = new Object[count][];
+        final int savedPosition = cursor.getPosition();
+        for (int row = 0; row < count && cursor.moveToPosition(row); row++) {
+            final Object[] values = new Object[columnNames.length];
+            for (int column = 0; column < columnNames.length; column++) {
+                switch (cursor.getType(column)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        values[column] = cursor.getLong(column);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        values[column] = cursor.getDouble(column);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        values[column] = cursor.getString(column);
+                        break;
+                    default:
+                        // Photos are loaded separately, blobs are not worth keeping.
+                        break;
+                }
+            }
+            rows[row] = values;
+        }
+        cursor.moveToPosition(savedPosition);
+
+        // Keep the part of the address book index that covers the rows kept. The index doesn't
+        // count the rows at the top of the cursor that are not part of it, like the profile.
+        final Bundle extras = cursor.getExtras();
+        final String[] titles = extras == null ? null
+                : extras.getStringArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES);
+        final int[] counts = extras == null ? null
+                : extras.getIntArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS);
+        String[] sectionTitles = null;
+        int[] sectionCounts = null;
+        if (titles != null && counts != null && titles.length == counts.length) {
+            int indexedCount = 0;
+            for (int sectionCount : counts) {
+                indexedCount += sectionCount;
+            }
+            int remaining = count - Math.max(0, cursor.getCount() - indexedCount);
+            int sections = 0;
+            sectionCounts = new int[counts.length];
+            while (sections < counts.length && remaining > 0) {
+                sectionCounts[sections] = Math.min(counts[sections], remaining);
+                remaining -= sectionCounts[sections];
+                sections++;
+            }
+            sectionTitles = Arrays.copyOf(titles, sections);
+            sectionCounts = Arrays.copyOf(sectionCounts, sections);
+        }
+        return new CursorSnapshot(key, columnNames, rows, sectionTitles, sectionCounts);
+    }
+
+    @VisibleForTesting
+    static void write(AtomicFile file, CursorSnapshot snapshot) throws IOException {
+        final File directory = file.getBaseFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create " + directory);
+        }
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            final DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, snapshot.mKey);
+            out.writeInt(snapshot.mColumnNames.length);
+            for (String columnName : snapshot.mColumnNames) {
+                writeString(out, columnName);
+            }
+            final int sectionCount = snapshot.mSectionTitles == null
+                    ? -1 : snapshot.mSectionTitles.length;
+            out.writeInt(sectionCount);
+            for (int i = 0; i < sectionCount; i++) {
+                writeString(out, snapshot.mSectionTitles[i]);
+                out.writeInt(snapshot.mSectionCounts[i]);
+            }
+            out.writeInt(snapshot.mRows.length);
+            for (Object[] row : snapshot.mRows) {
+                for (Object value : row) {
+                    if (value instanceof Long) {
+                        out.writeByte(TYPE_LONG);
+                        out.writeLong((Long) value);
+                    } else if (value instanceof Double) {
+                        out.writeByte(TYPE_DOUBLE);
+                        out.writeDouble((Double) value);
+                    } else if (value instanceof String) {
+                        out.writeByte(TYPE_STRING);
+                        writeString(out, (String) value);
+                    } else {
+                        out.writeByte(TYPE_NULL);
+                    }
+                }
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+            throw e;
+        }
+    }
+
+    @VisibleForTesting
+    static CursorSnapshot read(File file) throws IOException {
+        final FileInputStream stream = new FileInputStream(file);
+        final ByteBuffer buffer;
+        try {
+            final FileChannel channel = stream.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            stream.close();
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a snapshot or an older version");
+        }
+        final String key = readString(buffer);
+        final String[] columnNames = new String[buffer.getInt()];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = readString(buffer);
+        }
+        final int sectionCount = buffer.getInt();
+        String[] sectionTitles = null;
+        int[] sectionCounts = null;
+        if (sectionCount >= 0) {
+            sectionTitles = new String[sectionCount];
+            sectionCounts = new int[sectionCount];
+            for (int i = 0; i < sectionCount; i++) {
+                sectionTitles[i] = readString(buffer);
+                sectionCounts[i] = buffer.getInt();
+            }
+        }
+        final Object[][] rows = new Object[buffer.getInt()][];
+        for (int row = 0; row < rows.length; row++) {
+            final Object[] values = new Object[columnNames.length];
+            for (int column = 0; column < values.length; column++) {
+                final byte type = buffer.get();
+                switch (type) {
+                    case TYPE_NULL:
+                        break;
+                    case TYPE_LONG:
+                        values[column] = buffer.getLong();
+                        break;
+                    case TYPE_DOUBLE:
+                        values[column] = buffer.getDouble();
+                        break;
+                    case TYPE_STRING:
+                        values[column] = readString(buffer);
+                        break;
+                    default:
+                        throw new IOException("Unknown value type " + type);
+                }
+            }
+            rows[row] = values;
+        }
+        return new CursorSnapshot(key, columnNames, rows, sectionTitles, sectionCounts);
+    }
+
+    private Cursor toCursor() {
+        final Bundle extras = new Bundle();
+        if (mSectionTitles != null) {
+            extras.putStringArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES, mSectionTitles);
+            extras.putIntArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS, mSectionCounts);
+        }
+        final MatrixCursor cursor = new MatrixCursor(mColumnNames, mRows.length) {
+            @Override
+            public Bundle getExtras() {
+                return extras;
+            }
+        };
+        for (Object[] row : mRows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -18,8 +18,11 @@ package com.android.contacts.list;
 import android.content.Context;
 import android.content.CursorLoader;
 import android.content.Intent;
+import android.content.Loader;
+import android.database.Cursor;
 import android.net.Uri;
 import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.Directory;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -32,17 +35,24 @@ import android.widget.FrameLayout;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import com.android.common.widget.CompositeCursorAdapter.Partition;
 import com.android.contacts.R;
+import com.android.contacts.common.list.ContactEntryListAdapter;
 import com.android.contacts.common.list.ContactListAdapter;
 import com.android.contacts.common.list.ContactListFilter;
 import com.android.contacts.common.list.ContactListFilterController;
 import com.android.contacts.common.list.ContactListItemView;
 import com.android.contacts.common.list.DefaultContactListAdapter;
+import com.android.contacts.common.list.DirectoryPartition;
 import com.android.contacts.common.list.ProfileAndContactsLoader;
+import com.android.contacts.common.preference.ContactsPreferences;
 import com.android.contacts.common.util.ImplicitIntentsUtil;
 import com.android.contacts.editor.ContactEditorFragment;
+import com.android.contacts.quickcontact.QuickContactHeaderSnapshot;
 import com.android.contacts.common.util.AccountFilterUtil;
 
+import com.google.common.annotations.VisibleForTesting;
+
 /**
  * Fragment containing a contact list used for browsing (as compared to
  * picking a contact with one of the PICK intents).
@@ -52,6 +62,9 @@ public class DefaultContactBrowseListFragment extends ContactBrowseListFragment
 
     private static final int REQUEST_CODE_ACCOUNT_FILTER = 1;
 
+    /** Name of the snapshot of the first rows of the list, shown until the list is loaded. */
+    private static final String SNAPSHOT_NAME = "contacts";
+
     private View mSearchHeaderView;
     private View mAccountFilterHeader;
     private FrameLayout mProfileHeaderContainer;
@@ -92,7 +105,34 @@ public class DefaultContactBrowseListFragment extends ContactBrowseListFragment
         if (uri == null) {
             return;
         }
-        viewContact(uri, getAdapter().isEnterpriseContact(position));
+        viewContact(uri, getAdapter().isEnterpriseContact(position),
+                createHeaderSnapshot(position));
+    }
+
+    /**
+     * Captures the name and photo shown in the given row, so that QuickContact can display
+     * them while it loads the contact.
+     */
+    private QuickContactHeaderSnapshot createHeaderSnapshot(int position) {
+        final Object item = getAdapter().getItem(position);
+        if (!(item instanceof Cursor)) {
+            return null;
+        }
+        final Cursor cursor = (Cursor) item;
+        int nameColumn = cursor.getColumnIndex(Contacts.DISPLAY_NAME_PRIMARY);
+        if (nameColumn == -1) {
+            nameColumn = cursor.getColumnIndex(Contacts.DISPLAY_NAME_ALTERNATIVE);
+        }
+        final int photoUriColumn = cursor.getColumnIndex(Contacts.PHOTO_THUMBNAIL_URI);
+        final int lookupKeyColumn = cursor.getColumnIndex(Contacts.LOOKUP_KEY);
+        if (nameColumn == -1 || TextUtils.isEmpty(cursor.getString(nameColumn))) {
+            return null;
+        }
+        final String photoUri = photoUriColumn == -1 ? null : cursor.getString(photoUriColumn);
+        return new QuickContactHeaderSnapshot(cursor.getString(nameColumn),
+                photoUri == null ? null : Uri.parse(photoUri),
+                /* thumbnailBytes = */ null,
+                lookupKeyColumn == -1 ? null : cursor.getString(lookupKeyColumn));
     }
 
     @Override
@@ -134,6 +174,63 @@ public class DefaultContactBrowseListFragment extends ContactBrowseListFragment
         mSearchProgressText = (TextView) mSearchHeaderView.findViewById(R.id.totalContactsText);
     }
 
+    @Override
+    public void onStart() {
+        // Before the list is loaded, and once the adapter has its photo loader.
+        showSnapshot();
+        super.onStart();
+    }
+
+    /**
+     * Shows the rows saved after the last load of the list, if it hasn't been loaded yet, so that
+     * the first screen isn't empty while the provider runs the query on a cold start. The
+     * snapshot is replaced by the loaded cursor.
+     */
+    private void showSnapshot() {
+        final ContactListAdapter adapter = getAdapter();
+        if (isSearchMode() || adapter == null || adapter.getPartitionCount() == 0
+                || adapter.getCursor(Directory.DEFAULT) != null) {
+            return;
+        }
+        final Cursor snapshot = CursorSnapshot.load(getContext(), SNAPSHOT_NAME, getSnapshotKey());
+        if (snapshot != null) {
+            showSnapshot(adapter, snapshot);
+        }
+    }
+
+    /**
+     * Shows the snapshot in the default partition while leaving the partition to be loaded.
+     */
+    @VisibleForTesting
+    static void showSnapshot(ContactEntryListAdapter adapter, Cursor snapshot) {
+        adapter.changeCursor(Directory.DEFAULT, snapshot);
+        // changeCursor() marks the partition as loaded, which would keep startLoading() from
+        // running the query for it.
+        final Partition partition = adapter.getPartition(Directory.DEFAULT);
+        if (partition instanceof DirectoryPartition) {
+            ((DirectoryPartition) partition).setStatus(DirectoryPartition.STATUS_NOT_LOADED);
+        }
+    }
+
+    /**
+     * Returns what the rows of the list depend on, so that a snapshot isn't shown for another
+     * filter or order.
+     */
+    private String getSnapshotKey() {
+        final ContactsPreferences preferences = new ContactsPreferences(getContext());
+        return getFilter() + "|" + preferences.getSortOrder() + "|"
+                + preferences.getDisplayOrder();
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        super.onLoadFinished(loader, data);
+        if (loader.getId() == Directory.DEFAULT && data != null && !data.isClosed()
+                && !isSearchMode()) {
+            CursorSnapshot.save(getContext(), SNAPSHOT_NAME, getSnapshotKey(), data);
+        }
+    }
+
     @Override
     protected void setSearchMode(boolean flag) {
         super.setSearchMode(flag);
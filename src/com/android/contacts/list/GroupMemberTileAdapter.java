@@ -18,6 +18,7 @@ package com.android.contacts.list;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.widget.SectionIndexer;
 
 import com.android.contacts.GroupMemberLoader;
 import com.android.contacts.common.list.ContactEntry;
@@ -26,11 +27,15 @@ import com.android.contacts.common.list.ContactTileView;
 import com.google.common.collect.Lists;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
- * Tile adapter for groups.
+ * Tile adapter for groups. The members are read from {@link GroupMemberWindows} when set, or
+ * from the contact cursor otherwise.
  */
-public class GroupMemberTileAdapter extends ContactTileAdapter {
+public class GroupMemberTileAdapter extends ContactTileAdapter implements SectionIndexer {
+
+    private GroupMemberWindows mMemberWindows;
 
     public GroupMemberTileAdapter(Context context, ContactTileView.Listener listener, int numCols) {
         super(context, listener, numCols, DisplayType.GROUP_MEMBERS);
@@ -62,8 +67,23 @@ public class GroupMemberTileAdapter extends ContactTileAdapter {
         return -1;
     }
 
+    /**
+     * Sets the windows the members are read from. The previous windows are closed. The first
+     * window should also be set as the contact cursor.
+     */
+    public void setMemberWindows(GroupMemberWindows memberWindows) {
+        if (mMemberWindows != null && mMemberWindows != memberWindows) {
+            mMemberWindows.close();
+        }
+        mMemberWindows = memberWindows;
+        notifyDataSetChanged();
+    }
+
     @Override
     public int getCount() {
+        if (mMemberWindows != null) {
+            return getRowCount(mMemberWindows.getCount());
+        }
         if (mContactCursor == null || mContactCursor.isClosed()) {
             return 0;
         }
@@ -77,9 +97,44 @@ public class GroupMemberTileAdapter extends ContactTileAdapter {
         int contactIndex = position * mColumnCount;
 
         for (int columnCounter = 0; columnCounter < mColumnCount; columnCounter++) {
-            resultList.add(createContactEntryFromCursor(mContactCursor, contactIndex));
+            if (mMemberWindows != null) {
+                // Members of windows that are still loading are left blank for now.
+                final Cursor cursor = mMemberWindows.moveToMember(contactIndex);
+                resultList.add(cursor == null ? null
+                        : createContactEntryFromCursor(cursor, cursor.getPosition()));
+            } else {
+                resultList.add(createContactEntryFromCursor(mContactCursor, contactIndex));
+            }
             contactIndex++;
         }
         return resultList;
     }
+
+    @Override
+    public Object[] getSections() {
+        return mMemberWindows == null ? new String[0] : mMemberWindows.getSections();
+    }
+
+    @Override
+    public int getPositionForSection(int sectionIndex) {
+        if (mMemberWindows == null) {
+            return 0;
+        }
+        final int[] positions = mMemberWindows.getSectionPositions();
+        if (sectionIndex < 0 || sectionIndex >= positions.length) {
+            return 0;
+        }
+        return positions[sectionIndex] / mColumnCount;
+    }
+
+    @Override
+    public int getSectionForPosition(int position) {
+        if (mMemberWindows == null) {
+            return 0;
+        }
+        final int[] positions = mMemberWindows.getSectionPositions();
+        final int index = Arrays.binarySearch(positions, position * mColumnCount);
+        // Sections are sorted by their first member; pick the last one starting at or before.
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.provider.ContactsContract.Contacts;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import com.android.contacts.GroupMemberLoader;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The members of a group on the group detail page, loaded in windows of
+ * {@link GroupMemberLoader#GROUP_DETAIL_WINDOW_SIZE} as they are needed. Only the few most
+ * recently used windows are kept, so memory stays bounded whatever the size of the group.
+ *
+ * The size of the group comes from an aggregate count and is only an estimate: the count is
+ * corrected once a window returns fewer or more members than expected.
+ *
+ * Must only be used on the main thread.
+ */
+public class GroupMemberWindows {
+
+    public interface Listener {
+        /**
+         * A window was loaded or the member count changed.
+         */
+        void onWindowLoaded();
+    }
+
+    private static final int WINDOW_SIZE = GroupMemberLoader.GROUP_DETAIL_WINDOW_SIZE;
+
+    /** Number of windows kept in memory. */
+    private static final int MAX_WINDOWS = 5;
+
+    private final Context mContext;
+    private final long mGroupId;
+    private final Listener mListener;
+    private int mCount;
+    private final String[] mSections;
+    private final int[] mSectionPositions;
+
+    private final LruCache<Integer, Cursor> mWindows = new LruCache<Integer, Cursor>(MAX_WINDOWS) {
+        @Override
+        protected void entryRemoved(boolean evicted, Integer key, Cursor oldValue,
+                Cursor newValue) {
+            if (oldValue != newValue) {
+                oldValue.close();
+            }
+        }
+    };
+
+    private final SparseArray<AsyncTask<?, ?, ?>> mPendingLoads =
+            new SparseArray<AsyncTask<?, ?, ?>>();
+    private boolean mClosed;
+
+    /**
+     * @param firstWindow the first window of members, as loaded by the loader returned by
+     *         {@link GroupMemberLoader#constructLoaderForGroupDetailQuery}. Not owned by this
+     *         object.
+     * @param memberCount the estimated number of members in the group
+     */
+    public GroupMemberWindows(Context context, long groupId, Cursor firstWindow, int memberCount,
+            Listener listener) {
+        mContext = context.getApplicationContext();
+        mGroupId = groupId;
+        mListener = listener;
+        if (firstWindow.getCount() < WINDOW_SIZE) {
+            mCount = firstWindow.getCount();
+        } else {
+            // With a full first window, make sure the next one gets a chance to load.
+            mCount = Math.max(memberCount, WINDOW_SIZE + 1);
+        }
+        // The loader owns the first window, keep a wrapper so eviction doesn't close it.
+        mWindows.put(0, new UnclosableCursor(firstWindow));
+
+        final Bundle extras = firstWindow.getExtras();
+        final String[] titles = extras == null ? null
+                : extras.getStringArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES);
+        final int[] counts = extras == null ? null
+                : extras.getIntArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS);
+        if (titles != null && counts != null && titles.length == counts.length) {
+            mSections = titles;
+            mSectionPositions = new int[counts.length];
+            int position = 0;
+            for (int i = 0; i < counts.length; i++) {
+                mSectionPositions[i] = position;
+                position += counts[i];
+            }
+        } else {
+            mSections = new String[0];
+            mSectionPositions = new int[0];
+        }
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the section titles of the address book index, if the provider returned it.
+     */
+    public String[] getSections() {
+        return mSections;
+    }
+
+    /**
+     * Returns the position of the first member of each section.
+     */
+    public int[] getSectionPositions() {
+        return mSectionPositions;
+    }
+
+    /**
+     * Returns the cursor of the window holding the member, moved to it, or null if the window is
+     * not loaded yet. In that case the window is loaded and the listener notified. Neighbouring
+     * windows are loaded ahead of time when the member is close to them.
+     */
+    public Cursor moveToMember(int position) {
+        if (mClosed || position < 0 || position >= mCount) {
+            return null;
+        }
+        final int window = position / WINDOW_SIZE;
+        final int offsetInWindow = position % WINDOW_SIZE;
+        if (offsetInWindow >= WINDOW_SIZE * 3 / 4) {
+            prefetch(window + 1);
+        } else if (offsetInWindow < WINDOW_SIZE / 4) {
+            prefetch(window - 1);
+        }
+        final Cursor cursor = mWindows.get(window);
+        if (cursor == null) {
+            load(window);
+            return null;
+        }
+        return cursor.moveToPosition(offsetInWindow) ? cursor : null;
+    }
+
+    /**
+     * Stops the pending loads and closes the windows.
+     */
+    public void close() {
+        mClosed = true;
+        for (int i = 0; i < mPendingLoads.size(); i++) {
+            mPendingLoads.valueAt(i).cancel(false);
+        }
+        mPendingLoads.clear();
+        mWindows.evictAll();
+    }
+
+    private void prefetch(int window) {
+        if (window >= 0 && window * WINDOW_SIZE < mCount && mWindows.get(window) == null) {
+            load(window);
+        }
+    }
+
+    private void load(int window) {
+        if (mPendingLoads.get(window) != null) {
+            return;
+        }
+        mPendingLoads.put(window, startLoad(window));
+    }
+
+    /**
+     * Starts loading the window in the background. {@link #onWindowLoaded} is called with it.
+     */
+    @VisibleForTesting
+    AsyncTask<?, ?, ?> startLoad(int window) {
+        // Not on the serial executor, so that scrolling doesn't wait for other tasks of the app.
+        return new WindowLoadTask(window).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @VisibleForTesting
+    void onWindowLoaded(int window, Cursor cursor) {
+        mPendingLoads.remove(window);
+        if (mClosed) {
+            cursor.close();
+            return;
+        }
+        final int offset = window * WINDOW_SIZE;
+        final int rows = cursor.getCount();
+        if (rows < WINDOW_SIZE) {
+            // The last window, the exact count is known now.
+            mCount = offset + rows;
+        } else if (offset + rows >= mCount) {
+            // The estimate was too low, there may be more members.
+            mCount = offset + rows + 1;
+        }
+        mWindows.put(window, cursor);
+        mListener.onWindowLoaded();
+    }
+
+    private class WindowLoadTask extends AsyncTask<Void, Void, Cursor> {
+        private final int mWindow;
+
+        public WindowLoadTask(int window) {
+            mWindow = window;
+        }
+
+        @Override
+        protected Cursor doInBackground(Void... params) {
+            final Cursor cursor = GroupMemberLoader.queryGroupDetailWindow(mContext, mGroupId,
+                    mWindow * WINDOW_SIZE, WINDOW_SIZE);
+            if (cursor != null) {
+                // Fill the window off the main thread.
+                cursor.getCount();
+            }
+            return cursor;
+        }
+
+        @Override
+        protected void onPostExecute(Cursor cursor) {
+            if (cursor == null) {
+                mPendingLoads.remove(mWindow);
+                return;
+            }
+            onWindowLoaded(mWindow, cursor);
+        }
+
+        @Override
+        protected void onCancelled(Cursor cursor) {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Keeps a cursor owned by someone else open when its window is evicted.
+     */
+    private static class UnclosableCursor extends CursorWrapper {
+        public UnclosableCursor(Cursor cursor) {
+            super(cursor);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
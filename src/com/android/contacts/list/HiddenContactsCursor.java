@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.os.Bundle;
+import android.provider.ContactsContract.Contacts;
+
+import com.android.contacts.util.LongHashSet;
+
+import java.util.Arrays;
+
+/**
+ * Hides the rows of some contacts from a contact list cursor, for instance the ones being
+ * deleted in the background. Positions are remapped so the remaining rows are contiguous, and
+ * the counts of the address book index in the extras are reduced by the hidden rows so that
+ * section headers and fast scrolling stay consistent with the rows shown.
+ *
+ * With no contacts to hide, the cursor is passed through as is. This allows keeping a cursor
+ * wrapped so that it can be {@link #release}d and wrapped again when contacts get hidden.
+ *
+ * Finding the hidden rows reads the whole cursor. A loader can do it ahead of time on its
+ * thread with {@link ContactRows#find}, so that wrapping the cursor it delivers doesn't page in
+ * every cursor window on the main thread.
+ */
+public class HiddenContactsCursor extends CursorWrapper {
+
+    /**
+     * A cursor along with the rows of some contacts in it, found on a background thread.
+     */
+    public static final class ContactRows extends CursorWrapper {
+        private final LongHashSet mSearchedContactIds;
+        private final long[] mContactIds;
+        private final int[] mPositions;
+
+        private ContactRows(Cursor cursor, LongHashSet searchedContactIds, long[] contactIds,
+                int[] positions) {
+            super(cursor);
+            mSearchedContactIds = searchedContactIds;
+            mContactIds = contactIds;
+            mPositions = positions;
+        }
+
+        /**
+         * Finds the rows of the contacts in the cursor and returns the cursor wrapped with them.
+         */
+        public static ContactRows find(Cursor cursor, int contactIdColumn, long[] contactIds) {
+            final LongHashSet searchedContactIds = new LongHashSet(contactIds.length);
+            for (long contactId : contactIds) {
+                searchedContactIds.add(contactId);
+            }
+            final long[] foundContactIds = new long[searchedContactIds.size()];
+            final int[] positions = new int[foundContactIds.length];
+            int found = 0;
+            if (!searchedContactIds.isEmpty()) {
+                cursor.moveToPosition(-1);
+                while (found < foundContactIds.length && cursor.moveToNext()) {
+                    final long contactId = cursor.getLong(contactIdColumn);
+                    if (searchedContactIds.contains(contactId)) {
+                        foundContactIds[found] = contactId;
+                        positions[found++] = cursor.getPosition();
+                    }
+                }
+                cursor.moveToPosition(-1);
+            }
+            return new ContactRows(cursor, searchedContactIds,
+                    Arrays.copyOf(foundContactIds, found), Arrays.copyOf(positions, found));
+        }
+
+        private boolean hasSearched(LongHashSet contactIds) {
+            for (long contactId : contactIds.toArray()) {
+                if (!mSearchedContactIds.contains(contactId)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Underlying position of each visible row, or null if no row is hidden. */
+    private final int[] mPositions;
+    private final int mCount;
+    private final Bundle mExtras;
+    /** The contacts whose rows are hidden. */
+    private final LongHashSet mHiddenContactIds = new LongHashSet();
+    private int mPosition = -1;
+    private boolean mReleased;
+
+    /**
+     * @param cursor the contact list cursor, whose rows are in address book index order. If it
+     *         is a {@link ContactRows} that was searched for all the contacts to hide, the rows
+     *         found are hidden without reading the cursor.
+     * @param contactIdColumn the index of the contact ID column
+     * @param hiddenContactIds the contacts to hide
+     */
+    public HiddenContactsCursor(Cursor cursor, int contactIdColumn,
+            LongHashSet hiddenContactIds) {
+        super(cursor);
+        final int count = cursor.getCount();
+        final boolean[] hidden = hiddenContactIds.isEmpty() ? null : new boolean[count];
+        if (hidden != null && cursor instanceof ContactRows
+                && ((ContactRows) cursor).hasSearched(hiddenContactIds)) {
+            final ContactRows rows = (ContactRows) cursor;
+            for (int i = 0; i < rows.mContactIds.length; i++) {
+                if (hiddenContactIds.contains(rows.mContactIds[i])) {
+                    hidden[rows.mPositions[i]] = true;
+                    mHiddenContactIds.add(rows.mContactIds[i]);
+                }
+            }
+        } else if (hidden != null) {
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                final long contactId = cursor.getLong(contactIdColumn);
+                if (hiddenContactIds.contains(contactId)) {
+                    hidden[cursor.getPosition()] = true;
+                    mHiddenContactIds.add(contactId);
+                }
+            }
+            cursor.moveToPosition(-1);
+        }
+        if (mHiddenContactIds.isEmpty()) {
+            mPositions = null;
+            mCount = count;
+            mExtras = cursor.getExtras();
+            return;
+        }
+        final int[] positions = new int[count];
+        int visibleCount = 0;
+        for (int position = 0; position < count; position++) {
+            if (!hidden[position]) {
+                positions[visibleCount++] = position;
+            }
+        }
+        mPositions = Arrays.copyOf(positions, visibleCount);
+        mCount = visibleCount;
+        mExtras = adjustIndexExtras(cursor.getExtras(), count, hidden);
+    }
+
+    /**
+     * Returns whether the row of the contact is hidden, i.e. the contact is in the cursor.
+     */
+    public boolean isHidingContact(long contactId) {
+        return mHiddenContactIds.contains(contactId);
+    }
+
+    /**
+     * Returns the extras with the rows that are hidden removed from the counts of the address
+     * book index. The index doesn't count the rows at the top of the cursor that are not part
+     * of it, like the profile.
+     */
+    private static Bundle adjustIndexExtras(Bundle extras, int count, boolean[] hidden) {
+        if (extras == null || !extras.containsKey(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS)) {
+            return extras;
+        }
+        final String[] titles = extras.getStringArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES);
+        final int[] counts = extras.getIntArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS);
+        if (titles == null || counts == null || titles.length != counts.length) {
+            return extras;
+        }
+        int indexedCount = 0;
+        for (int sectionCount : counts) {
+            indexedCount += sectionCount;
+        }
+        int position = Math.max(0, count - indexedCount);
+        final int[] newCounts = counts.clone();
+        int sectionCount = 0;
+        for (int section = 0; section < counts.length; section++) {
+            for (int i = 0; i < counts[section] && position < count; i++, position++) {
+                if (hidden[position]) {
+                    newCounts[section]--;
+                }
+            }
+            if (newCounts[section] > 0) {
+                sectionCount++;
+            }
+        }
+
+        // Drop the sections left empty.
+        final String[] adjustedTitles = new String[sectionCount];
+        final int[] adjustedCounts = new int[sectionCount];
+        for (int section = 0, i = 0; section < counts.length; section++) {
+            if (newCounts[section] > 0) {
+                adjustedTitles[i] = titles[section];
+                adjustedCounts[i++] = newCounts[section];
+            }
+        }
+        final Bundle adjusted = new Bundle(extras);
+        adjusted.putStringArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES, adjustedTitles);
+        adjusted.putIntArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS, adjustedCounts);
+        return adjusted;
+    }
+
+    /**
+     * Returns the underlying cursor and makes {@link #close} leave it open, so that it can be
+     * wrapped again with other hidden contacts.
+     */
+    public Cursor release() {
+        mReleased = true;
+        return getWrappedCursor();
+    }
+
+    @Override
+    public void close() {
+        if (!mReleased) {
+            super.close();
+        }
+    }
+
+    @Override
+    public Bundle getExtras() {
+        return mExtras;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        final int count = mCount;
+        if (position < 0) {
+            mPosition = -1;
+            super.moveToPosition(-1);
+            return false;
+        }
+        if (position >= count) {
+            mPosition = count;
+            super.moveToPosition(super.getCount());
+            return false;
+        }
+        mPosition = position;
+        return super.moveToPosition(mPositions == null ? position : mPositions[position]);
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(mPosition + offset);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(mCount - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(mPosition - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return mCount > 0 && mPosition == 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return mCount > 0 && mPosition == mCount - 1;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return mCount == 0 || mPosition == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return mCount == 0 || mPosition == mCount;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.android.contacts.common.list.ProfileAndContactsLoader;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads the contact list and finds the rows of the contacts that are hidden from it on the
+ * loader thread, so that the adapter doesn't have to read the whole cursor on the main thread
+ * to hide them. See {@link HiddenContactsCursor.ContactRows}.
+ */
+public class HiddenContactsLoader extends ProfileAndContactsLoader {
+
+    private volatile AtomicReference<long[]> mHiddenContactIds;
+    private volatile int mContactIdColumn;
+
+    public HiddenContactsLoader(Context context) {
+        super(context);
+    }
+
+    /**
+     * Sets the contacts to look for, read each time the list is loaded.
+     */
+    public void setHiddenContactIds(AtomicReference<long[]> hiddenContactIds,
+            int contactIdColumn) {
+        mHiddenContactIds = hiddenContactIds;
+        mContactIdColumn = contactIdColumn;
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        final Cursor cursor = super.loadInBackground();
+        final AtomicReference<long[]> hiddenContactIds = mHiddenContactIds;
+        if (cursor == null || hiddenContactIds == null) {
+            return cursor;
+        }
+        final long[] contactIds = hiddenContactIds.get();
+        return contactIds.length == 0 ? cursor
+                : HiddenContactsCursor.ContactRows.find(cursor, mContactIdColumn, contactIds);
+    }
+}
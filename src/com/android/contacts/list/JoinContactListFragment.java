@@ -24,8 +24,10 @@ import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.ContactsContract.Contacts;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -36,10 +38,13 @@ import com.android.contacts.common.list.ContactEntryListFragment;
 import com.android.contacts.common.list.ContactListItemView;
 import com.android.contacts.list.JoinContactLoader.JoinContactLoaderResult;
 
+import com.google.common.annotations.VisibleForTesting;
+
 /**
  * Fragment for the Join Contact list.
  */
 public class JoinContactListFragment extends ContactEntryListFragment<JoinContactListAdapter> {
+    private static final String TAG = "JoinContactListFragment";
 
     private static final int DISPLAY_NAME_LOADER = -2;
 
@@ -48,6 +53,10 @@ public class JoinContactListFragment extends ContactEntryListFragment<JoinContac
     private OnContactPickerActionListener mListener;
     private long mTargetContactId;
 
+    /** Time the current load started, used to measure the time to the first suggestion. */
+    private long mLoadStartTime;
+    private long mTimeToFirstSuggestionMillis = -1;
+
     private final LoaderCallbacks<Cursor> mLoaderCallbacks = new LoaderCallbacks<Cursor>() {
 
         @Override
@@ -61,6 +70,7 @@ public class JoinContactListFragment extends ContactEntryListFragment<JoinContac
                 }
                 case JoinContactListAdapter.PARTITION_ALL_CONTACTS: {
                     JoinContactLoader loader = new JoinContactLoader(getActivity());
+                    loader.setOnSuggestionsLoadedListener(mSuggestionsLoadedListener);
                     JoinContactListAdapter adapter = getAdapter();
                     if (adapter != null) {
                         adapter.configureLoader(loader, 0);
@@ -96,6 +106,21 @@ public class JoinContactListFragment extends ContactEntryListFragment<JoinContac
         }
     };
 
+    private final JoinContactLoader.OnSuggestionsLoadedListener mSuggestionsLoadedListener =
+            new JoinContactLoader.OnSuggestionsLoadedListener() {
+        @Override
+        public void onSuggestionsLoaded(Cursor suggestionsCursor) {
+            final JoinContactListAdapter adapter = getAdapter();
+            if (adapter == null) {
+                suggestionsCursor.close();
+                return;
+            }
+            // Show the suggestions while the full list is still loading.
+            adapter.setSuggestionsCursor(suggestionsCursor);
+            onSuggestionsShown();
+        }
+    };
+
     public JoinContactListFragment() {
         setPhotoLoaderEnabled(true);
         setSectionHeaderDisplayEnabled(true);
@@ -110,6 +135,8 @@ public class JoinContactListFragment extends ContactEntryListFragment<JoinContac
     @Override
     protected void startLoading() {
         configureAdapter();
+        mLoadStartTime = SystemClock.elapsedRealtime();
+        mTimeToFirstSuggestionMillis = -1;
 
         getLoaderManager().initLoader(DISPLAY_NAME_LOADER, null, mLoaderCallbacks);
 
@@ -122,10 +149,30 @@ public class JoinContactListFragment extends ContactEntryListFragment<JoinContac
     private void onContactListLoaded(Cursor suggestionsCursor, Cursor allContactsCursor) {
         JoinContactListAdapter adapter = getAdapter();
         adapter.setSuggestionsCursor(suggestionsCursor);
+        onSuggestionsShown();
         setVisibleScrollbarEnabled(true);
         onPartitionLoaded(JoinContactListAdapter.PARTITION_ALL_CONTACTS, allContactsCursor);
     }
 
+    private void onSuggestionsShown() {
+        if (mTimeToFirstSuggestionMillis >= 0) {
+            return;
+        }
+        mTimeToFirstSuggestionMillis = SystemClock.elapsedRealtime() - mLoadStartTime;
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Time to first suggestion: " + mTimeToFirstSuggestionMillis + "ms");
+        }
+    }
+
+    /**
+     * Returns the time from the start of the last load until the suggestions were shown, or -1
+     * if they have not been shown yet.
+     */
+    @VisibleForTesting
+    public long getTimeToFirstSuggestionMillis() {
+        return mTimeToFirstSuggestionMillis;
+    }
+
     private void showTargetContactName(String displayName) {
         Activity activity = getActivity();
         TextView blurbView = (TextView) activity.findViewById(R.id.join_contact_blurb);
@@ -19,7 +19,17 @@ import android.content.Context;
 import android.content.CursorLoader;
 import android.database.Cursor;
 import android.database.CursorWrapper;
+import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * A specialized loader for the Join Contacts UI.  It executes two queries:
@@ -27,11 +37,31 @@ import android.net.Uri;
  *
  * This loader also loads the "suggestion" cursor, which can be accessed with:
  * {@code ((JoinContactLoaderResult) result).suggestionCursor }
+ *
+ * Both queries run concurrently. Since the suggestions usually arrive well before the full
+ * list, a copy of them is passed to the {@link OnSuggestionsLoadedListener} as soon as they are
+ * available, ahead of the result.
  */
 public class JoinContactLoader extends CursorLoader {
 
+    /**
+     * Receives the suggestions before the full result of the loader is delivered.
+     */
+    public interface OnSuggestionsLoadedListener {
+        /**
+         * Called on the main thread. The listener owns the cursor. The same suggestions are
+         * part of the result delivered afterwards.
+         */
+        void onSuggestionsLoaded(Cursor suggestionsCursor);
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
     private String[] mProjection;
     private Uri mSuggestionUri;
+    private OnSuggestionsLoadedListener mSuggestionsListener;
+    /** Signal of the suggestions query in flight, if any. Guarded by {@code this}. */
+    private CancellationSignal mSuggestionsCancellationSignal;
 
     /**
      * Actual returned class.  It's guaranteed that this loader always returns an instance of this
@@ -71,6 +101,10 @@ public class JoinContactLoader extends CursorLoader {
         this.mSuggestionUri = uri;
     }
 
+    public void setOnSuggestionsLoadedListener(OnSuggestionsLoadedListener listener) {
+        mSuggestionsListener = listener;
+    }
+
     @Override
     public void setProjection(String[] projection) {
         super.setProjection(projection);
@@ -79,27 +113,144 @@ public class JoinContactLoader extends CursorLoader {
 
     @Override
     public Cursor loadInBackground() {
-        // First execute the suggestions query, then call super.loadInBackground
-        // to load the entire list
-        final Cursor suggestionsCursor = getContext().getContentResolver()
-                .query(mSuggestionUri, mProjection, null, null, null);
-        if (suggestionsCursor == null) {
-            return null;
+        final CancellationSignal cancellationSignal;
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            cancellationSignal = new CancellationSignal();
+            mSuggestionsCancellationSignal = cancellationSignal;
         }
-        Cursor cursorToClose = suggestionsCursor;
+
+        // Run the suggestions query next to the full list query, which super.loadInBackground
+        // runs on this thread.
+        final FutureTask<Cursor> suggestionsTask = new FutureTask<>(new Callable<Cursor>() {
+            @Override
+            public Cursor call() {
+                final Cursor cursor = getContext().getContentResolver().query(mSuggestionUri,
+                        mProjection, null, null, null, cancellationSignal);
+                if (cursor != null) {
+                    // Fill the window here rather than on the main thread.
+                    cursor.getCount();
+                    notifySuggestionsLoaded(cursor);
+                }
+                return cursor;
+            }
+        });
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(suggestionsTask);
+
+        Cursor baseCursor = null;
+        Cursor suggestionsCursor = null;
+        boolean suggestionsTaskDone = false;
         try {
-            final Cursor baseCursor = super.loadInBackground();
-            if (baseCursor != null) {
+            baseCursor = super.loadInBackground();
+            suggestionsCursor = getSuggestionsCursor(suggestionsTask);
+            suggestionsTaskDone = true;
+            if (baseCursor != null && suggestionsCursor != null) {
                 final JoinContactLoaderResult result =
                         new JoinContactLoaderResult(baseCursor, suggestionsCursor);
-                cursorToClose = null;
+                baseCursor = null;
+                suggestionsCursor = null;
                 return result;
             }
+            return null;
         } finally {
-            if (cursorToClose != null) {
-                cursorToClose.close();
+            if (!suggestionsTaskDone) {
+                // The full list query failed or was cancelled. Stop the suggestions query and
+                // close its cursor if it completed anyway.
+                cancellationSignal.cancel();
+                try {
+                    suggestionsCursor = getSuggestionsCursor(suggestionsTask);
+                } catch (RuntimeException e) {
+                    // Already failing, nothing to close.
+                }
+            }
+            if (suggestionsCursor != null) {
+                suggestionsCursor.close();
+            }
+            if (baseCursor != null) {
+                baseCursor.close();
+            }
+            synchronized (this) {
+                mSuggestionsCancellationSignal = null;
+            }
+        }
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (mSuggestionsCancellationSignal != null) {
+                mSuggestionsCancellationSignal.cancel();
+            }
+        }
+    }
+
+    private static Cursor getSuggestionsCursor(FutureTask<Cursor> suggestionsTask) {
+        try {
+            return suggestionsTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Passes a copy of the suggestions to the listener. The copy is posted before the result of
+     * this load, so the listener never sees suggestions older than the delivered result.
+     */
+    private void notifySuggestionsLoaded(Cursor cursor) {
+        final OnSuggestionsLoadedListener listener = mSuggestionsListener;
+        if (listener == null) {
+            return;
+        }
+        final MatrixCursor copy = copyCursor(cursor);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isStarted() && !isAbandoned() && !isReset()) {
+                    listener.onSuggestionsLoaded(copy);
+                } else {
+                    copy.close();
+                }
+            }
+        });
+    }
+
+    private static MatrixCursor copyCursor(Cursor cursor) {
+        final String[] columnNames = cursor.getColumnNames();
+        final MatrixCursor copy = new MatrixCursor(columnNames, cursor.getCount());
+        final Object[] row = new Object[columnNames.length];
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            for (int i = 0; i < row.length; i++) {
+                switch (cursor.getType(i)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[i] = cursor.getLong(i);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[i] = cursor.getDouble(i);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[i] = cursor.getBlob(i);
+                        break;
+                    case Cursor.FIELD_TYPE_NULL:
+                        row[i] = null;
+                        break;
+                    default:
+                        row[i] = cursor.getString(i);
+                }
             }
+            copy.addRow(row);
         }
-        return null;
+        cursor.moveToPosition(-1);
+        return copy;
     }
 }
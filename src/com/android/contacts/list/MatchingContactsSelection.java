@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.content.Context;
+import android.content.CursorLoader;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.provider.ContactsContract.Contacts;
+import android.text.TextUtils;
+
+import com.android.contacts.util.SortedLongSet;
+
+import java.util.Arrays;
+
+/**
+ * A selection of all the contacts matching the query of the contact list, minus the ones the
+ * user unchecked afterwards. Selecting all contacts this way only keeps the query and the
+ * exclusions, the IDs of the selected contacts are read from the provider with {@link #resolve}
+ * when an action needs them.
+ */
+public class MatchingContactsSelection {
+
+    public interface Listener {
+        /**
+         * Called on the main thread with the IDs of the selected contacts.
+         */
+        void onSelectionResolved(SortedLongSet contactIds);
+    }
+
+    private static final String KEY_URI = "matching_selection_uri";
+    private static final String KEY_SELECTION = "matching_selection_selection";
+    private static final String KEY_SELECTION_ARGS = "matching_selection_selection_args";
+    private static final String KEY_MATCHING_COUNT = "matching_selection_matching_count";
+    private static final String KEY_EXCLUDED = "matching_selection_excluded";
+
+    /** Initial capacity of the array the IDs are read into. */
+    private static final int INITIAL_CAPACITY = 512;
+
+    private static final String[] PROJECTION = new String[] { Contacts._ID };
+
+    private final Uri mUri;
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+    private int mMatchingCount;
+    private final SortedLongSet mExcludedContactIds;
+
+    private MatchingContactsSelection(Uri uri, String selection, String[] selectionArgs,
+            int matchingCount, SortedLongSet excludedContactIds) {
+        mUri = uri;
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+        mMatchingCount = matchingCount;
+        mExcludedContactIds = excludedContactIds;
+    }
+
+    /**
+     * Selects the contacts returned by the query of the given loader, which must have been
+     * configured by the contact list adapter for the local directory.
+     *
+     * @param matchingCount the number of contacts currently returned by the query
+     */
+    public static MatchingContactsSelection fromLoader(CursorLoader loader, int matchingCount) {
+        return new MatchingContactsSelection(loader.getUri(), loader.getSelection(),
+                loader.getSelectionArgs(), matchingCount, new SortedLongSet());
+    }
+
+    /**
+     * Returns the selection saved with {@link #saveToBundle}, or null if none was saved.
+     */
+    public static MatchingContactsSelection fromBundle(Bundle bundle) {
+        final String uri = bundle.getString(KEY_URI);
+        if (uri == null) {
+            return null;
+        }
+        return new MatchingContactsSelection(Uri.parse(uri), bundle.getString(KEY_SELECTION),
+                bundle.getStringArray(KEY_SELECTION_ARGS), bundle.getInt(KEY_MATCHING_COUNT),
+                SortedLongSet.fromArray(bundle.getLongArray(KEY_EXCLUDED)));
+    }
+
+    public void saveToBundle(Bundle bundle) {
+        bundle.putString(KEY_URI, mUri.toString());
+        bundle.putString(KEY_SELECTION, mSelection);
+        bundle.putStringArray(KEY_SELECTION_ARGS, mSelectionArgs);
+        bundle.putInt(KEY_MATCHING_COUNT, mMatchingCount);
+        bundle.putLongArray(KEY_EXCLUDED, mExcludedContactIds.toArray());
+    }
+
+    /**
+     * Whether the given loader runs the same query as the one this selection was made from.
+     */
+    public boolean hasSameQuery(CursorLoader loader) {
+        return mUri.equals(loader.getUri())
+                && TextUtils.equals(mSelection, loader.getSelection())
+                && Arrays.equals(mSelectionArgs, loader.getSelectionArgs());
+    }
+
+    /**
+     * Updates the number of contacts returned by the query, after the list was reloaded.
+     */
+    public void setMatchingCount(int matchingCount) {
+        mMatchingCount = matchingCount;
+    }
+
+    /**
+     * Returns the number of selected contacts, as of the last time the list was loaded.
+     */
+    public int size() {
+        return Math.max(0, mMatchingCount - mExcludedContactIds.size());
+    }
+
+    /**
+     * Whether the contact is selected. Only meaningful for contacts returned by the query.
+     */
+    public boolean contains(long contactId) {
+        return !mExcludedContactIds.contains(contactId);
+    }
+
+    public void setSelected(long contactId, boolean selected) {
+        if (selected) {
+            mExcludedContactIds.remove(contactId);
+        } else {
+            mExcludedContactIds.add(contactId);
+        }
+    }
+
+    public void toggle(long contactId) {
+        setSelected(contactId, !contains(contactId));
+    }
+
+    /**
+     * Reads the IDs of the selected contacts in the background and passes them to the listener.
+     * The returned task can be cancelled, in which case the listener is not called. The IDs
+     * are kept as primitive longs all the way, since a selection may hold every contact.
+     */
+    public AsyncTask<Void, Void, SortedLongSet> resolve(Context context,
+            final Listener listener) {
+        final Context appContext = context.getApplicationContext();
+        // The exclusions may change on the main thread while the query runs.
+        final long[] excluded = mExcludedContactIds.toArray();
+        final AsyncTask<Void, Void, SortedLongSet> task =
+                new AsyncTask<Void, Void, SortedLongSet>() {
+            @Override
+            protected SortedLongSet doInBackground(Void... params) {
+                final Cursor cursor = appContext.getContentResolver().query(mUri, PROJECTION,
+                        mSelection, mSelectionArgs, null);
+                if (cursor == null) {
+                    return new SortedLongSet();
+                }
+                try {
+                    long[] contactIds = new long[INITIAL_CAPACITY];
+                    int count = 0;
+                    while (cursor.moveToNext()) {
+                        if (isCancelled()) {
+                            return null;
+                        }
+                        final long contactId = cursor.getLong(0);
+                        if (Arrays.binarySearch(excluded, contactId) >= 0) {
+                            continue;
+                        }
+                        if (count == contactIds.length) {
+                            contactIds = Arrays.copyOf(contactIds, count * 2);
+                        }
+                        contactIds[count++] = contactId;
+                    }
+                    return SortedLongSet.fromArray(Arrays.copyOf(contactIds, count));
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            @Override
+            protected void onPostExecute(SortedLongSet contactIds) {
+                listener.onSelectionResolved(contactIds);
+            }
+        };
+        task.execute();
+        return task;
+    }
+}
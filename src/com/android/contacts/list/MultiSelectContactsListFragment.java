@@ -22,9 +22,13 @@ import com.android.contacts.common.list.DefaultContactListAdapter;
 import com.android.contacts.common.logging.SearchState;
 import com.android.contacts.list.MultiSelectEntryContactListAdapter.SelectedContactsListener;
 import com.android.contacts.common.logging.Logger;
+import com.android.contacts.util.SortedLongSet;
 
+import android.content.Context;
+import android.content.CursorLoader;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.provider.ContactsContract;
 import android.text.TextUtils;
@@ -32,7 +36,6 @@ import android.view.accessibility.AccessibilityEvent;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeSet;
 
 /**
  * Fragment containing a contact list used for browsing contacts and optionally selecting
@@ -50,9 +53,11 @@ public class MultiSelectContactsListFragment extends DefaultContactBrowseListFra
     private static final String EXTRA_KEY_SELECTED_CONTACTS = "selected_contacts";
 
     private static final String KEY_SEARCH_RESULT_CLICKED = "search_result_clicked";
+    private static final String KEY_PENDING_DELETIONS = "pending_deletions";
 
     private OnCheckBoxListActionListener mCheckBoxListListener;
     private boolean mSearchResultClicked;
+    private AsyncTask<?, ?, ?> mResolveSelectionTask;
 
     public void setCheckBoxListListener(OnCheckBoxListActionListener checkBoxListListener) {
         mCheckBoxListListener = checkBoxListListener;
@@ -83,7 +88,7 @@ public class MultiSelectContactsListFragment extends DefaultContactBrowseListFra
 
     @Override
     public void onSelectedContactsChangedViaCheckBox() {
-        if (getAdapter().getSelectedContactIds().size() == 0) {
+        if (getAdapter().getSelectedContactCount() == 0) {
             // Last checkbox has been unchecked. So we should stop displaying checkboxes.
             mCheckBoxListListener.onStopDisplayingCheckBoxes();
         } else {
@@ -95,21 +100,112 @@ public class MultiSelectContactsListFragment extends DefaultContactBrowseListFra
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
         if (savedInstanceState != null) {
-            final TreeSet<Long> selectedContactIds = (TreeSet<Long>)
-                    savedInstanceState.getSerializable(EXTRA_KEY_SELECTED_CONTACTS);
+            final SortedLongSet selectedContactIds = SortedLongSet.fromArray(
+                    savedInstanceState.getLongArray(EXTRA_KEY_SELECTED_CONTACTS));
             getAdapter().setSelectedContactIds(selectedContactIds);
+            final MatchingContactsSelection matchingSelection =
+                    MatchingContactsSelection.fromBundle(savedInstanceState);
+            if (matchingSelection != null) {
+                getAdapter().setMatchingSelection(matchingSelection);
+            }
             if (mCheckBoxListListener != null) {
                 mCheckBoxListListener.onSelectedContactIdsChanged();
             }
             mSearchResultClicked = savedInstanceState.getBoolean(KEY_SEARCH_RESULT_CLICKED);
+            final long[] pendingDeletions = savedInstanceState.getLongArray(KEY_PENDING_DELETIONS);
+            if (pendingDeletions != null) {
+                getAdapter().hideContactsPendingDeletion(pendingDeletions);
+            }
         }
     }
 
-    public TreeSet<Long> getSelectedContactIds() {
+    /**
+     * Hides the contacts from the list until {@link #onContactsDeletionCompleted} is called.
+     */
+    public void hideContactsPendingDeletion(long[] contactIds) {
+        getAdapter().hideContactsPendingDeletion(contactIds);
+    }
+
+    /**
+     * Shows the contacts again if their deletion failed. Otherwise they stay hidden until the
+     * list is reloaded without them.
+     */
+    public void onContactsDeletionCompleted(long[] contactIds, boolean succeeded) {
+        getAdapter().onContactsDeletionCompleted(contactIds, succeeded);
+    }
+
+    /**
+     * Returns the contacts selected one by one. Use {@link #resolveSelectedContactIds} to get all
+     * the selected contacts, including the ones selected by {@link #selectAllMatching}.
+     */
+    public SortedLongSet getSelectedContactIds() {
         final MultiSelectEntryContactListAdapter adapter = getAdapter();
         return adapter.getSelectedContactIds();
     }
 
+    public int getSelectedContactCount() {
+        return getAdapter().getSelectedContactCount();
+    }
+
+    /**
+     * Selects all the contacts of the local directory matching the current filter or search
+     * query. Only the query is kept, the IDs of the contacts are read when they are needed.
+     */
+    public void selectAllMatching() {
+        final MultiSelectEntryContactListAdapter adapter = getAdapter();
+        if (adapter.getPartitionCount() == 0) {
+            return;
+        }
+        final Cursor cursor = adapter.getCursor(ContactsContract.Directory.DEFAULT);
+        if (cursor == null || cursor.isClosed()) {
+            return;
+        }
+        final CursorLoader loader = new CursorLoader(getContext());
+        adapter.configureLoader(loader, ContactsContract.Directory.DEFAULT);
+        adapter.setMatchingSelection(MatchingContactsSelection.fromLoader(loader,
+                cursor.getCount() - (adapter.hasProfile() ? 1 : 0)));
+    }
+
+    /**
+     * Passes the IDs of all the selected contacts to the listener. If all the contacts matching
+     * the query are selected, their IDs are read in the background first. A pending request is
+     * dropped when a new one is made.
+     */
+    public void resolveSelectedContactIds(final MatchingContactsSelection.Listener listener) {
+        if (mResolveSelectionTask != null) {
+            mResolveSelectionTask.cancel(false);
+            mResolveSelectionTask = null;
+        }
+        final MatchingContactsSelection matchingSelection = getAdapter().getMatchingSelection();
+        if (matchingSelection == null) {
+            listener.onSelectionResolved(
+                    SortedLongSet.fromArray(getSelectedContactIds().toArray()));
+            return;
+        }
+        mResolveSelectionTask = matchingSelection.resolve(getContext(),
+                new MatchingContactsSelection.Listener() {
+                    @Override
+                    public void onSelectionResolved(SortedLongSet contactIds) {
+                        mResolveSelectionTask = null;
+                        listener.onSelectionResolved(contactIds);
+                    }
+                });
+    }
+
+    @Override
+    public void onDestroy() {
+        if (mResolveSelectionTask != null) {
+            mResolveSelectionTask.cancel(false);
+            mResolveSelectionTask = null;
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public CursorLoader createCursorLoader(Context context) {
+        return new HiddenContactsLoader(context);
+    }
+
     @Override
     public MultiSelectEntryContactListAdapter getAdapter() {
         return (MultiSelectEntryContactListAdapter) super.getAdapter();
@@ -124,8 +220,13 @@ public class MultiSelectContactsListFragment extends DefaultContactBrowseListFra
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putSerializable(EXTRA_KEY_SELECTED_CONTACTS, getSelectedContactIds());
+        outState.putLongArray(EXTRA_KEY_SELECTED_CONTACTS, getSelectedContactIds().toArray());
+        final MatchingContactsSelection matchingSelection = getAdapter().getMatchingSelection();
+        if (matchingSelection != null) {
+            matchingSelection.saveToBundle(outState);
+        }
         outState.putBoolean(KEY_SEARCH_RESULT_CLICKED, mSearchResultClicked);
+        outState.putLongArray(KEY_PENDING_DELETIONS, getAdapter().getContactsPendingDeletion());
     }
 
     public void displayCheckBoxes(boolean displayCheckBoxes) {
@@ -136,12 +237,12 @@ public class MultiSelectContactsListFragment extends DefaultContactBrowseListFra
     }
 
     public void clearCheckBoxes() {
-        getAdapter().setSelectedContactIds(new TreeSet<Long>());
+        getAdapter().setSelectedContactIds(new SortedLongSet());
     }
 
     @Override
     protected boolean onItemLongClick(int position, long id) {
-        final int previouslySelectedCount = getAdapter().getSelectedContactIds().size();
+        final int previouslySelectedCount = getAdapter().getSelectedContactCount();
         final Uri uri = getAdapter().getContactUri(position);
         final int partition = getAdapter().getPartitionForPosition(position);
         if (uri != null && (partition == ContactsContract.Directory.DEFAULT
@@ -162,7 +263,7 @@ public class MultiSelectContactsListFragment extends DefaultContactBrowseListFra
                 }
             }
         }
-        final int nowSelectedCount = getAdapter().getSelectedContactIds().size();
+        final int nowSelectedCount = getAdapter().getSelectedContactCount();
         if (mCheckBoxListListener != null
                 && previouslySelectedCount != 0 && nowSelectedCount == 0) {
             // Last checkbox has been unchecked. So we should stop displaying checkboxes.
@@ -189,7 +290,7 @@ public class MultiSelectContactsListFragment extends DefaultContactBrowseListFra
             }
             super.onItemClick(position, id);
         }
-        if (mCheckBoxListListener != null && getAdapter().getSelectedContactIds().size() == 0) {
+        if (mCheckBoxListListener != null && getAdapter().getSelectedContactCount() == 0) {
             mCheckBoxListListener.onStopDisplayingCheckBoxes();
         }
     }
@@ -18,15 +18,21 @@ package com.android.contacts.list;
 
 import com.android.contacts.common.list.ContactListItemView;
 import com.android.contacts.common.list.DefaultContactListAdapter;
+import com.android.contacts.util.LongHashSet;
+import com.android.contacts.util.SortedLongSet;
 
 import android.content.Context;
+import android.content.CursorLoader;
 import android.database.Cursor;
 import android.provider.ContactsContract;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.widget.CheckBox;
 
-import java.util.TreeSet;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * An extension of the default contact adapter that adds checkboxes and the ability
@@ -35,9 +41,28 @@ import java.util.TreeSet;
 public class MultiSelectEntryContactListAdapter extends DefaultContactListAdapter {
 
     private SelectedContactsListener mSelectedContactsListener;
-    private TreeSet<Long> mSelectedContactIds = new TreeSet<Long>();
+    private SortedLongSet mSelectedContactIds = new SortedLongSet();
+    /** All the contacts matching the query are selected, or null. */
+    private MatchingContactsSelection mMatchingSelection;
     private boolean mDisplayCheckBoxes;
 
+    /** Contacts being deleted in the background, hidden from the local directory. */
+    private final LongHashSet mPendingDeletions = new LongHashSet();
+    /** Deleted contacts, hidden until a cursor without them is loaded. */
+    private final LongHashSet mConfirmedDeletions = new LongHashSet();
+    /** A copy of {@link #mPendingDeletions} for the loader thread. */
+    private final AtomicReference<long[]> mPendingDeletionsForLoader =
+            new AtomicReference<>(new long[0]);
+    private boolean mRehidingContacts;
+
+    /**
+     * The checkboxes of the rows created by this adapter, so that a change of selection can be
+     * applied to the visible rows without rebinding them. Rows are recycled by the list, so
+     * there are only about as many as fit on the screen.
+     */
+    private final Set<CheckBox> mCheckBoxes =
+            Collections.newSetFromMap(new WeakHashMap<CheckBox, Boolean>());
+
     public interface SelectedContactsListener {
         void onSelectedContactsChanged();
         void onSelectedContactsChangedViaCheckBox();
@@ -54,16 +79,46 @@ public class MultiSelectEntryContactListAdapter extends DefaultContactListAdapte
     /**
      * Returns set of selected contacts.
      */
-    public TreeSet<Long> getSelectedContactIds() {
+    public SortedLongSet getSelectedContactIds() {
         return mSelectedContactIds;
     }
 
+    /**
+     * Returns the number of selected contacts, including the ones selected by
+     * {@link #setMatchingSelection}.
+     */
+    public int getSelectedContactCount() {
+        return mMatchingSelection != null ? mMatchingSelection.size() : mSelectedContactIds.size();
+    }
+
+    /**
+     * Returns the selection of all the contacts matching the query, or null if the contacts
+     * were selected one by one.
+     */
+    public MatchingContactsSelection getMatchingSelection() {
+        return mMatchingSelection;
+    }
+
+    /**
+     * Selects all the contacts matching the query of the local directory, replacing the set of
+     * selected contacts.
+     */
+    public void setMatchingSelection(MatchingContactsSelection selection) {
+        mSelectedContactIds = new SortedLongSet();
+        mMatchingSelection = selection;
+        updateCheckBoxes();
+        if (mSelectedContactsListener != null) {
+            mSelectedContactsListener.onSelectedContactsChanged();
+        }
+    }
+
     /**
      * Update set of selected contacts. This changes which checkboxes are set.
      */
-    public void setSelectedContactIds(TreeSet<Long> selectedContactIds) {
+    public void setSelectedContactIds(SortedLongSet selectedContactIds) {
         this.mSelectedContactIds = selectedContactIds;
-        notifyDataSetChanged();
+        mMatchingSelection = null;
+        updateCheckBoxes();
         if (mSelectedContactsListener != null) {
             mSelectedContactsListener.onSelectedContactsChanged();
         }
@@ -75,7 +130,7 @@ public class MultiSelectEntryContactListAdapter extends DefaultContactListAdapte
      */
     public void setDisplayCheckBoxes(boolean showCheckBoxes) {
         if (!mDisplayCheckBoxes && showCheckBoxes) {
-            setSelectedContactIds(new TreeSet<Long>());
+            setSelectedContactIds(new SortedLongSet());
         }
         mDisplayCheckBoxes = showCheckBoxes;
         notifyDataSetChanged();
@@ -95,17 +150,167 @@ public class MultiSelectEntryContactListAdapter extends DefaultContactListAdapte
      * Toggle the checkbox beside the contact for {@param contactId}.
      */
     public void toggleSelectionOfContactId(long contactId) {
-        if (mSelectedContactIds.contains(contactId)) {
-            mSelectedContactIds.remove(contactId);
-        } else {
+        if (mMatchingSelection != null) {
+            mMatchingSelection.toggle(contactId);
+        } else if (!mSelectedContactIds.remove(contactId)) {
             mSelectedContactIds.add(contactId);
         }
-        notifyDataSetChanged();
+        updateCheckBoxes();
         if (mSelectedContactsListener != null) {
             mSelectedContactsListener.onSelectedContactsChanged();
         }
     }
 
+    /**
+     * Checks the checkboxes of the bound rows according to the current selection. Rows bound
+     * later pick up the selection in {@link #bindView}.
+     */
+    private void updateCheckBoxes() {
+        for (CheckBox checkBox : mCheckBoxes) {
+            final Object contactId = checkBox.getTag();
+            if (contactId != null) {
+                checkBox.setChecked(isContactSelected((Long) contactId));
+            }
+        }
+    }
+
+    private boolean isContactSelected(long contactId) {
+        return mMatchingSelection != null ? mMatchingSelection.contains(contactId)
+                : mSelectedContactIds.contains(contactId);
+    }
+
+    @Override
+    public void configureLoader(CursorLoader loader, long directoryId) {
+        super.configureLoader(loader, directoryId);
+        if (mMatchingSelection != null && directoryId == ContactsContract.Directory.DEFAULT
+                && !mMatchingSelection.hasSameQuery(loader)) {
+            // The query changed, the contacts it matched are not the ones shown anymore.
+            setSelectedContactIds(new SortedLongSet());
+        }
+        if (loader instanceof HiddenContactsLoader
+                && directoryId == ContactsContract.Directory.DEFAULT) {
+            ((HiddenContactsLoader) loader).setHiddenContactIds(mPendingDeletionsForLoader,
+                    ContactQuery.CONTACT_ID);
+        }
+    }
+
+    /**
+     * Hides the contacts from the list right away, while they are deleted in the background.
+     */
+    public void hideContactsPendingDeletion(long[] contactIds) {
+        for (long contactId : contactIds) {
+            mPendingDeletions.add(contactId);
+            mConfirmedDeletions.remove(contactId);
+        }
+        mPendingDeletionsForLoader.set(mPendingDeletions.toArray());
+        rehideContacts();
+    }
+
+    /**
+     * Called once the deletion of the contacts is over. If it succeeded, the contacts stay
+     * hidden until a cursor without them is loaded, since the list may still be reloaded from
+     * queries that started before they were deleted. Otherwise they are shown again.
+     */
+    public void onContactsDeletionCompleted(long[] contactIds, boolean succeeded) {
+        for (long contactId : contactIds) {
+            if (!mPendingDeletions.contains(contactId)) {
+                continue;
+            }
+            if (succeeded) {
+                mConfirmedDeletions.add(contactId);
+            } else {
+                mPendingDeletions.remove(contactId);
+            }
+        }
+        if (succeeded) {
+            final Cursor cursor = getPartitionCount() == 0 ? null
+                    : getCursor(ContactsContract.Directory.DEFAULT);
+            if (cursor instanceof HiddenContactsCursor) {
+                // The current cursor may have been loaded after the deletion already.
+                forgetDeletedContacts((HiddenContactsCursor) cursor);
+            }
+        } else {
+            mPendingDeletionsForLoader.set(mPendingDeletions.toArray());
+            rehideContacts();
+        }
+    }
+
+    /**
+     * Stops hiding the deleted contacts that are not in the cursor.
+     */
+    private void forgetDeletedContacts(HiddenContactsCursor cursor) {
+        boolean changed = false;
+        for (long contactId : mConfirmedDeletions.toArray()) {
+            if (!cursor.isHidingContact(contactId)) {
+                mConfirmedDeletions.remove(contactId);
+                mPendingDeletions.remove(contactId);
+                changed = true;
+            }
+        }
+        if (changed) {
+            mPendingDeletionsForLoader.set(mPendingDeletions.toArray());
+        }
+    }
+
+    /**
+     * Returns the contacts hidden while they are being deleted.
+     */
+    public long[] getContactsPendingDeletion() {
+        return mPendingDeletions.toArray();
+    }
+
+    /**
+     * Hides the pending deletions from the current cursor of the local directory again.
+     */
+    private void rehideContacts() {
+        if (getPartitionCount() == 0) {
+            return;
+        }
+        final Cursor cursor = getCursor(ContactsContract.Directory.DEFAULT);
+        if (!(cursor instanceof HiddenContactsCursor) || cursor.isClosed()) {
+            return;
+        }
+        // Releasing the cursor keeps the loader cursor open when the superclass closes the
+        // previous cursor of the partition.
+        final Cursor base = ((HiddenContactsCursor) cursor).release();
+        mRehidingContacts = true;
+        try {
+            changeCursor(ContactsContract.Directory.DEFAULT, base);
+        } finally {
+            mRehidingContacts = false;
+        }
+    }
+
+    @Override
+    public void changeCursor(int partitionIndex, Cursor cursor) {
+        if (partitionIndex == ContactsContract.Directory.DEFAULT && cursor != null) {
+            final Cursor previous = partitionIndex < getPartitionCount()
+                    ? getCursor(partitionIndex) : null;
+            if (!mRehidingContacts && previous instanceof HiddenContactsCursor
+                    && ((HiddenContactsCursor) previous).getWrappedCursor() == cursor) {
+                // The loader delivered the same cursor again. Wrapping it anew would close it
+                // along with the previous wrapper.
+                return;
+            }
+            // Always wrapped, even with nothing to hide, so that the cursor can be wrapped
+            // again without being closed when contacts get hidden.
+            final HiddenContactsCursor hiddenContactsCursor = new HiddenContactsCursor(cursor,
+                    ContactQuery.CONTACT_ID, mPendingDeletions);
+            if (!mRehidingContacts) {
+                forgetDeletedContacts(hiddenContactsCursor);
+            }
+            cursor = hiddenContactsCursor;
+        }
+        super.changeCursor(partitionIndex, cursor);
+        if (mMatchingSelection != null && partitionIndex == ContactsContract.Directory.DEFAULT
+                && cursor != null) {
+            mMatchingSelection.setMatchingCount(cursor.getCount() - (hasProfile() ? 1 : 0));
+            if (mSelectedContactsListener != null) {
+                mSelectedContactsListener.onSelectedContactsChanged();
+            }
+        }
+    }
+
     @Override
     protected void bindView(View itemView, int partition, Cursor cursor, int position) {
         super.bindView(itemView, partition, cursor, position);
@@ -126,8 +331,9 @@ public class MultiSelectEntryContactListAdapter extends DefaultContactListAdapte
             return;
         }
         final CheckBox checkBox = view.getCheckBox();
+        mCheckBoxes.add(checkBox);
         final long contactId = cursor.getLong(ContactQuery.CONTACT_ID);
-        checkBox.setChecked(mSelectedContactIds.contains(contactId));
+        checkBox.setChecked(isContactSelected(contactId));
         checkBox.setTag(contactId);
         checkBox.setOnClickListener(mCheckBoxClickListener);
     }
@@ -137,7 +343,9 @@ public class MultiSelectEntryContactListAdapter extends DefaultContactListAdapte
         public void onClick(View v) {
             final CheckBox checkBox = (CheckBox) v;
             final Long contactId = (Long) checkBox.getTag();
-            if (checkBox.isChecked()) {
+            if (mMatchingSelection != null) {
+                mMatchingSelection.setSelected(contactId, checkBox.isChecked());
+            } else if (checkBox.isChecked()) {
                 mSelectedContactIds.add(contactId);
             } else {
                 mSelectedContactIds.remove(contactId);
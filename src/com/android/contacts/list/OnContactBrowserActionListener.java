@@ -17,6 +17,8 @@ package com.android.contacts.list;
 
 import android.net.Uri;
 
+import com.android.contacts.quickcontact.QuickContactHeaderSnapshot;
+
 /**
  * Action callbacks that can be sent by a contact list.
  */
@@ -32,8 +34,11 @@ public interface OnContactBrowserActionListener  {
      * Opens the specified contact for viewing.
      *
      * @param contactLookupUri The lookup-uri of the Contact that should be opened
+     * @param headerSnapshot What the list knows about the contact's header, or null. Lets
+     *            QuickContact show the header before the contact is loaded.
      */
-    void onViewContactAction(Uri contactLookupUri, boolean isEnterpriseContact);
+    void onViewContactAction(Uri contactLookupUri, boolean isEnterpriseContact,
+            QuickContactHeaderSnapshot headerSnapshot);
 
     /**
      * Initiates the contact deletion process.
@@ -15,13 +15,14 @@
  */
 package com.android.contacts.list;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Handler;
+import android.preference.PreferenceManager;
 import android.provider.ContactsContract.ProviderStatus;
 import android.util.Log;
 
@@ -54,25 +55,24 @@ public class ProviderStatusWatcher extends ContentObserver {
     };
 
     /**
-     * We'll wait for this amount of time on the UI thread if the load hasn't finished.
+     * Preference holding the last loaded status, returned until the status is loaded again.
      */
-    private static final int LOAD_WAIT_TIMEOUT_MS = 1000;
+    private static final String KEY_LAST_PROVIDER_STATUS = "providerStatusWatcher.lastStatus";
 
     private static ProviderStatusWatcher sInstance;
 
     private final Context mContext;
     private final Handler mHandler = new Handler();
 
-    private final Object mSignal = new Object();
-
     private int mStartRequestedCount;
 
     private LoaderTask mLoaderTask;
 
-    /** Last known provider status.  This can be changed on a worker thread.
-     *  See {@link ProviderStatus#STATUS} */
+    /** Provider status loaded since the process started.  See {@link ProviderStatus#STATUS} */
     private Integer mProviderStatus;
 
+    private SharedPreferences mPrefs;
+
     private final ArrayList<ProviderStatusListener> mListeners = Lists.newArrayList();
 
     private final Runnable mStartLoadingRunnable = new Runnable() {
@@ -160,43 +160,28 @@ public class ProviderStatusWatcher extends ContentObserver {
     /**
      * @return last known provider status.
      *
-     * If this method is called when we haven't started the status query or the query is still in
-     * progress, it will start a query in a worker thread if necessary, and *wait for the result*.
-     *
-     * This means this method is essentially a blocking {@link ProviderStatus#CONTENT_URI} query.
-     * This URI is not backed by the file system, so is usually fast enough to perform on the main
-     * thread, but in extreme cases (when the system takes a while to bring up the contacts
-     * provider?) this may still cause ANRs.
-     *
-     * In order to avoid that, if we can't load the status within {@link #LOAD_WAIT_TIMEOUT_MS},
-     * we'll give up and just returns {@link ProviderStatusCompat#STATUS_BUSY} in order to unblock
-     * the UI thread.  The actual result will be delivered later via {@link ProviderStatusListener}.
-     * (If {@link ProviderStatusCompat#STATUS_BUSY} is returned, the app (should) shows an according
-     * message, like "contacts are being updated".)
+     * This never blocks.  Until the status has been loaded in this process, the status loaded the
+     * last time is returned, or {@link ProviderStatusCompat#STATUS_BUSY} if there is none, and a
+     * query is started in a worker thread if necessary.  The actual result will be delivered later
+     * via {@link ProviderStatusListener}.  (If {@link ProviderStatusCompat#STATUS_BUSY} is
+     * returned, the app (should) shows an according message, like "contacts are being updated".)
      */
     public int getProviderStatus() {
-        waitForLoaded();
-
-        if (mProviderStatus == null) {
-            return ProviderStatusCompat.STATUS_BUSY;
+        if (mProviderStatus != null) {
+            return mProviderStatus;
         }
 
-        return mProviderStatus;
+        // For some reason the loader couldn't load the status, or it hasn't been started yet.
+        startLoading();
+        return getPrefs().getInt(KEY_LAST_PROVIDER_STATUS, ProviderStatusCompat.STATUS_BUSY);
     }
 
-    private void waitForLoaded() {
-        if (mProviderStatus == null) {
-            if (mLoaderTask == null) {
-                // For some reason the loader couldn't load the status.  Let's start it again.
-                startLoading();
-            }
-            synchronized (mSignal) {
-                try {
-                    mSignal.wait(LOAD_WAIT_TIMEOUT_MS);
-                } catch (InterruptedException ignore) {
-                }
-            }
+    private SharedPreferences getPrefs() {
+        // Not in the constructor, which may be called before the activity has a base context.
+        if (mPrefs == null) {
+            mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
         }
+        return mPrefs;
     }
 
     private void startLoading() {
@@ -212,41 +197,36 @@ public class ProviderStatusWatcher extends ContentObserver {
         mLoaderTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
-    private class LoaderTask extends AsyncTask<Void, Void, Boolean> {
+    private class LoaderTask extends AsyncTask<Void, Void, Integer> {
         @Override
-        protected Boolean doInBackground(Void... params) {
-            try {
-                Cursor cursor = mContext.getContentResolver().query(ProviderStatus.CONTENT_URI,
-                        PROJECTION, null, null, null);
-                if (cursor != null) {
-                    try {
-                        if (cursor.moveToFirst()) {
-                            // Note here we can't just say "Status", as AsyncTask has the "Status"
-                            // enum too.
-                            mProviderStatus = cursor.getInt(0);
-                            return true;
-                        }
-                    } finally {
-                        cursor.close();
+        protected Integer doInBackground(Void... params) {
+            Cursor cursor = mContext.getContentResolver().query(ProviderStatus.CONTENT_URI,
+                    PROJECTION, null, null, null);
+            if (cursor != null) {
+                try {
+                    if (cursor.moveToFirst()) {
+                        // Note here we can't just say "Status", as AsyncTask has the "Status"
+                        // enum too.
+                        return cursor.getInt(0);
                     }
-                }
-                return false;
-            } finally {
-                synchronized (mSignal) {
-                    mSignal.notifyAll();
+                } finally {
+                    cursor.close();
                 }
             }
+            return null;
         }
 
         @Override
-        protected void onCancelled(Boolean result) {
+        protected void onCancelled(Integer result) {
             cleanUp();
         }
 
         @Override
-        protected void onPostExecute(Boolean loaded) {
+        protected void onPostExecute(Integer providerStatus) {
             cleanUp();
-            if (loaded != null && loaded) {
+            if (providerStatus != null) {
+                mProviderStatus = providerStatus;
+                getPrefs().edit().putInt(KEY_LAST_PROVIDER_STATUS, providerStatus).apply();
                 notifyListeners();
             }
         }
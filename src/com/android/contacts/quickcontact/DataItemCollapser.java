@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.contacts.quickcontact;
+
+import android.content.Context;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.Data;
+import android.text.TextUtils;
+
+import com.android.contacts.common.Collapser;
+import com.android.contacts.common.model.dataitem.DataItem;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Removes duplicate {@link DataItem}s of a single MIME type, like {@link Collapser}, but
+ * scales to lists with many duplicates.
+ *
+ * Items are first bucketed by a canonical key derived from their value, and each item is only
+ * checked with {@link DataItem#shouldCollapseWith} against the first item of its bucket. This
+ * removes exact and formatting-only duplicates (e.g. the same phone number synced from many
+ * accounts) in linear time. The remaining, distinct items then go through the regular pairwise
+ * {@link Collapser#collapseList} to catch duplicates the canonical key does not detect.
+ *
+ * Unlike {@link Collapser} alone, which leaves lists of more than
+ * {@link #COLLAPSER_MAX_LIST_SIZE} items untouched, lists of any size have their canonical
+ * duplicates removed. The pairwise pass still only runs if at most that many items remain.
+ */
+public final class DataItemCollapser {
+
+    /** Lists up to this size are handed to {@link Collapser} directly. */
+    private static final int MIN_LIST_SIZE_FOR_BUCKETING = 8;
+
+    /** Size above which {@link Collapser#collapseList} returns without collapsing. */
+    @VisibleForTesting
+    static final int COLLAPSER_MAX_LIST_SIZE = 20;
+
+    private DataItemCollapser() {
+    }
+
+    /**
+     * Collapses the given list of data items of a single MIME type in place.
+     */
+    public static void collapseList(List<DataItem> list, Context context) {
+        if (list.size() >= MIN_LIST_SIZE_FOR_BUCKETING) {
+            collapseByCanonicalKey(list, context);
+        }
+        Collapser.collapseList(list, context);
+    }
+
+    /**
+     * Merges every item into the first earlier item with the same canonical key it should
+     * collapse with. Keeps the order of the remaining items.
+     */
+    static void collapseByCanonicalKey(List<DataItem> list, Context context) {
+        final Map<String, DataItem> firstItemByKey = new HashMap<>(list.size() * 2);
+        final List<DataItem> remaining = new ArrayList<>(list.size());
+        for (DataItem item : list) {
+            final String key = getCanonicalKey(item);
+            if (key == null) {
+                remaining.add(item);
+                continue;
+            }
+            final DataItem first = firstItemByKey.get(key);
+            if (first == null) {
+                firstItemByKey.put(key, item);
+                remaining.add(item);
+            } else if (first.shouldCollapseWith(item, context)) {
+                first.collapseWith(item);
+            } else {
+                // Same key but not a duplicate. Leave it to the pairwise pass.
+                remaining.add(item);
+            }
+        }
+        if (remaining.size() != list.size()) {
+            list.clear();
+            list.addAll(remaining);
+        }
+    }
+
+    /**
+     * Returns a key that is equal for data items that are very likely duplicates, or null if
+     * the item should not be bucketed. Equal keys do not imply that items are collapsed; that
+     * is always confirmed with {@link DataItem#shouldCollapseWith}.
+     */
+    static String getCanonicalKey(DataItem item) {
+        final String mimeType = item.getMimeType();
+        final String value = item.getContentValues().getAsString(Data.DATA1);
+        if (mimeType == null || TextUtils.isEmpty(value)) {
+            return null;
+        }
+        final String normalizedValue;
+        if (Phone.CONTENT_ITEM_TYPE.equals(mimeType)) {
+            normalizedValue = normalizePhoneNumber(value);
+        } else if (Email.CONTENT_ITEM_TYPE.equals(mimeType)) {
+            normalizedValue = value.trim().toLowerCase(Locale.ROOT);
+        } else {
+            normalizedValue = value.trim();
+        }
+        return mimeType + '\u0000' + normalizedValue;
+    }
+
+    /**
+     * Strips visual separators from a phone number. Dialable characters, including pauses and
+     * waits, are kept since they change the meaning of the number.
+     */
+    private static String normalizePhoneNumber(String number) {
+        final StringBuilder sb = new StringBuilder(number.length());
+        for (int i = 0; i < number.length(); i++) {
+            final char c = number.charAt(i);
+            switch (c) {
+                case ' ':
+                case '-':
+                case '.':
+                case '/':
+                case '(':
+                case ')':
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
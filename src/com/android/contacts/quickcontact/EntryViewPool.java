@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.contacts.quickcontact;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.InflateException;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of freshly inflated, unbound views shared by all the {@link ExpandingEntryCardView}s of
+ * an activity. Views are keyed by their layout resource id and can be inflated ahead of time on
+ * a background thread, so that binding entries (and expanding a card) on the UI thread does not
+ * have to pay for inflation.
+ *
+ * Views are handed out at most once. Binding mutates padding and layout params, so bound views
+ * are never returned to the pool.
+ */
+public class EntryViewPool {
+    private static final String TAG = "EntryViewPool";
+
+    /** Upper bound on the number of idle views kept per layout. */
+    private static final int MAX_POOLED_VIEWS_PER_TYPE = 64;
+
+    private final Context mContext;
+    /** Inflater only ever used from the background thread. */
+    private final LayoutInflater mBackgroundInflater;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    /** Inflated, unbound views keyed by layout resource id. Guarded by {@code this}. */
+    private final SparseArray<ArrayDeque<View>> mPool = new SparseArray<>();
+    /** Number of views requested but not yet inflated, by layout. Guarded by {@code this}. */
+    private final SparseIntArray mPending = new SparseIntArray();
+
+    private boolean mReleased;
+
+    public EntryViewPool(Context context) {
+        mContext = context;
+        // LayoutInflater is not thread safe, so the background thread gets its own instance.
+        mBackgroundInflater = LayoutInflater.from(context).cloneInContext(context);
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * Asynchronously inflates {@code count} more views of the given layout. The number of idle
+     * views kept per layout is bounded, so callers can ask for every view they may need.
+     */
+    public void preInflate(final int layoutResId, int count) {
+        final int toInflate;
+        synchronized (this) {
+            if (mReleased) {
+                return;
+            }
+            final int available = getPooledCountLocked(layoutResId)
+                    + mPending.get(layoutResId);
+            toInflate = Math.min(count, MAX_POOLED_VIEWS_PER_TYPE - available);
+            if (toInflate <= 0) {
+                return;
+            }
+            mPending.put(layoutResId, mPending.get(layoutResId) + toInflate);
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Used only to generate layout params for the inflated views.
+                final ViewGroup parent = new FrameLayout(mContext);
+                for (int i = 0; i < toInflate; i++) {
+                    View view = null;
+                    try {
+                        view = mBackgroundInflater.inflate(layoutResId, parent, false);
+                    } catch (InflateException e) {
+                        Log.w(TAG, "Failed to pre-inflate layout " + layoutResId, e);
+                    }
+                    synchronized (EntryViewPool.this) {
+                        mPending.put(layoutResId, mPending.get(layoutResId) - 1);
+                        if (view != null && !mReleased) {
+                            getOrCreateQueueLocked(layoutResId).add(view);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns an unbound view of the given layout. A pre-inflated view is used when one is
+     * available, otherwise the view is inflated synchronously.
+     */
+    public View obtain(LayoutInflater inflater, int layoutResId, ViewGroup parent) {
+        synchronized (this) {
+            final ArrayDeque<View> queue = mPool.get(layoutResId);
+            if (queue != null && !queue.isEmpty()) {
+                return queue.poll();
+            }
+        }
+        return inflater.inflate(layoutResId, parent, false);
+    }
+
+    /**
+     * Drops all pooled views and stops the background thread. Should be called when the owning
+     * activity is destroyed.
+     */
+    public void release() {
+        synchronized (this) {
+            mReleased = true;
+            mPool.clear();
+            mPending.clear();
+        }
+        mThread.quit();
+    }
+
+    private int getPooledCountLocked(int layoutResId) {
+        final ArrayDeque<View> queue = mPool.get(layoutResId);
+        return queue == null ? 0 : queue.size();
+    }
+
+    private ArrayDeque<View> getOrCreateQueueLocked(int layoutResId) {
+        ArrayDeque<View> queue = mPool.get(layoutResId);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            mPool.put(layoutResId, queue);
+        }
+        return queue;
+    }
+}
@@ -98,16 +98,16 @@ public class ExpandingEntryCardView extends CardView {
         public static final int ACTION_CALL_WITH_SUBJECT = 3;
 
         private final int mId;
-        private final Drawable mIcon;
+        private Drawable mIcon;
         private final String mHeader;
         private final String mSubHeader;
         private final Drawable mSubHeaderIcon;
         private final String mText;
         private final Drawable mTextIcon;
         private Spannable mPrimaryContentDescription;
-        private final Intent mIntent;
+        private Intent mIntent;
         private final Drawable mAlternateIcon;
-        private final Intent mAlternateIntent;
+        private Intent mAlternateIntent;
         private Spannable mAlternateContentDescription;
         private final boolean mShouldApplyColor;
         private final boolean mIsEditable;
@@ -118,6 +118,7 @@ public class ExpandingEntryCardView extends CardView {
         private final int mIconResourceId;
         private final int mThirdAction;
         private final Bundle mThirdExtras;
+        private Resolver mResolver;
 
         public Entry(int id, Drawable mainIcon, String header, String subHeader,
                 Drawable subHeaderIcon, String text, Drawable textIcon,
@@ -127,6 +128,26 @@ public class ExpandingEntryCardView extends CardView {
                 EntryContextMenuInfo entryContextMenuInfo, Drawable thirdIcon, Intent thirdIntent,
                 String thirdContentDescription, int thirdAction, Bundle thirdExtras,
                 int iconResourceId) {
+            this(id, mainIcon, header, subHeader, subHeaderIcon, text, textIcon,
+                    primaryContentDescription, intent, alternateIcon, alternateIntent,
+                    alternateContentDescription, shouldApplyColor, isEditable,
+                    entryContextMenuInfo, thirdIcon, thirdIntent, thirdContentDescription,
+                    thirdAction, thirdExtras, iconResourceId, /* resolver = */ null);
+        }
+
+        /**
+         * @param resolver computes the final icon, intents and alternate content description
+         *  the first time any of them is needed. The values passed to this constructor are the
+         *  unresolved ones.
+         */
+        public Entry(int id, Drawable mainIcon, String header, String subHeader,
+                Drawable subHeaderIcon, String text, Drawable textIcon,
+                Spannable primaryContentDescription, Intent intent,
+                Drawable alternateIcon, Intent alternateIntent,
+                Spannable alternateContentDescription, boolean shouldApplyColor, boolean isEditable,
+                EntryContextMenuInfo entryContextMenuInfo, Drawable thirdIcon, Intent thirdIntent,
+                String thirdContentDescription, int thirdAction, Bundle thirdExtras,
+                int iconResourceId, Resolver resolver) {
             mId = id;
             mIcon = mainIcon;
             mHeader = header;
@@ -148,9 +169,41 @@ public class ExpandingEntryCardView extends CardView {
             mThirdAction = thirdAction;
             mThirdExtras = thirdExtras;
             mIconResourceId = iconResourceId;
+            mResolver = resolver;
         }
 
-        Drawable getIcon() {
+        /**
+         * Runs the {@link Resolver}, if there is one and it has not run yet. Safe to call from
+         * a background thread, e.g. to resolve the entries that are visible right away before
+         * they are bound.
+         */
+        public synchronized void resolve() {
+            if (mResolver != null) {
+                final Resolver resolver = mResolver;
+                mResolver = null;
+                resolver.resolve(this);
+            }
+        }
+
+        /**
+         * Replaces the fields computed by the {@link Resolver}. Only called by the resolver.
+         */
+        synchronized void setResolvedFields(Drawable icon, Intent intent, Intent alternateIntent,
+                Spannable alternateContentDescription) {
+            mIcon = icon;
+            mIntent = intent;
+            mAlternateIntent = alternateIntent;
+            mAlternateContentDescription = alternateContentDescription;
+        }
+
+        /**
+         * Returns the icon. Only runs the {@link Resolver} if the icon is one of the fields it
+         * computes, so that e.g. tinting the icons of all the entries doesn't resolve them.
+         */
+        synchronized Drawable getIcon() {
+            if (mResolver != null && mResolver.resolvesIcon()) {
+                resolve();
+            }
             return mIcon;
         }
 
@@ -178,7 +231,8 @@ public class ExpandingEntryCardView extends CardView {
             return mPrimaryContentDescription;
         }
 
-        Intent getIntent() {
+        synchronized Intent getIntent() {
+            resolve();
             return mIntent;
         }
 
@@ -186,11 +240,13 @@ public class ExpandingEntryCardView extends CardView {
             return mAlternateIcon;
         }
 
-        Intent getAlternateIntent() {
+        synchronized Intent getAlternateIntent() {
+            resolve();
             return mAlternateIntent;
         }
 
-        Spannable getAlternateContentDescription() {
+        synchronized Spannable getAlternateContentDescription() {
+            resolve();
             return mAlternateContentDescription;
         }
 
@@ -233,6 +289,26 @@ public class ExpandingEntryCardView extends CardView {
         public Bundle getThirdExtras() {
             return mThirdExtras;
         }
+
+        /**
+         * Computes the parts of an {@link Entry} that are expensive to build, like checking with
+         * the package manager whether its intents resolve. This lets entries that are never
+         * displayed, e.g. in a collapsed card, skip that work.
+         */
+        public interface Resolver {
+            /**
+             * Called at most once, the first time one of the lazily computed fields is read.
+             * The getters return the unresolved values while this runs. Implementations must
+             * call {@link Entry#setResolvedFields}.
+             */
+            void resolve(Entry entry);
+
+            /**
+             * Returns whether the icon passed to the {@link Entry} is replaced when resolving.
+             * Otherwise the icon is final and reading it doesn't resolve the entry.
+             */
+            boolean resolvesIcon();
+        }
     }
 
     public interface ExpandingEntryCardViewListener {
@@ -281,6 +357,8 @@ public class ExpandingEntryCardView extends CardView {
      */
     private List<View> mSeparators;
     private LinearLayout mContainer;
+    /** Optional pool of pre-inflated entry views, shared with the other cards of the activity. */
+    private EntryViewPool mEntryViewPool;
 
     private final OnClickListener mExpandCollapseButtonListener = new OnClickListener() {
         @Override
@@ -319,6 +397,14 @@ public class ExpandingEntryCardView extends CardView {
         mBadgeIds = new ArrayList<Integer>();
     }
 
+    /**
+     * Sets the pool that entry views are taken from. Entries that are not shown initially are
+     * pre-inflated into the pool in the background, so that expanding the card only binds views.
+     */
+    public void setEntryViewPool(EntryViewPool entryViewPool) {
+        mEntryViewPool = entryViewPool;
+    }
+
     public void initialize(List<List<Entry>> entries, int numInitialVisibleEntries,
             boolean isExpanded, boolean isAlwaysExpanded, ExpandingEntryCardViewListener listener,
             ViewGroup animationViewGroup) {
@@ -363,6 +449,7 @@ public class ExpandingEntryCardView extends CardView {
         } else {
             updateExpandCollapseButton(getExpandButtonText(), /* duration = */ 0);
             inflateInitialEntries(layoutInflater);
+            preInflateRemainingEntries();
         }
         insertEntriesIntoViewGroup();
         applyColor();
@@ -619,6 +706,21 @@ public class ExpandingEntryCardView extends CardView {
         mAllEntriesInflated = true;
     }
 
+    /**
+     * Requests background inflation of the views for entries that are hidden while the card is
+     * collapsed.
+     */
+    private void preInflateRemainingEntries() {
+        if (mEntryViewPool == null || mAllEntriesInflated) {
+            return;
+        }
+        int numInflated = 0;
+        for (List<View> viewList : mEntryViews) {
+            numInflated += viewList.size();
+        }
+        mEntryViewPool.preInflate(R.layout.expanding_entry_card_item, mNumEntries - numInflated);
+    }
+
     public void setColorAndFilter(int color, ColorFilter colorFilter) {
         mThemeColor = color;
         mThemeColorFilter = colorFilter;
@@ -686,9 +788,26 @@ public class ExpandingEntryCardView extends CardView {
 
     private View createEntryView(LayoutInflater layoutInflater, final Entry entry,
             int iconVisibility) {
-        final EntryView view = (EntryView) layoutInflater.inflate(
-                R.layout.expanding_entry_card_item, this, false);
+        final EntryView view = inflateEntryView(layoutInflater);
+        bindEntryView(view, entry, iconVisibility);
+        return view;
+    }
 
+    /**
+     * Returns an unbound entry view, taken from the {@link EntryViewPool} if one is set.
+     */
+    private EntryView inflateEntryView(LayoutInflater layoutInflater) {
+        if (mEntryViewPool != null) {
+            return (EntryView) mEntryViewPool.obtain(layoutInflater,
+                    R.layout.expanding_entry_card_item, this);
+        }
+        return (EntryView) layoutInflater.inflate(R.layout.expanding_entry_card_item, this, false);
+    }
+
+    /**
+     * Binds the given entry to a freshly inflated entry view.
+     */
+    private void bindEntryView(EntryView view, final Entry entry, int iconVisibility) {
         view.setContextMenuInfo(entry.getEntryContextMenuInfo());
         if (!TextUtils.isEmpty(entry.getPrimaryContentDescription())) {
             view.setContentDescription(entry.getPrimaryContentDescription());
@@ -812,8 +931,6 @@ public class ExpandingEntryCardView extends CardView {
         // Set a custom touch listener for expanding the extra icon touch areas
         view.setOnTouchListener(new EntryTouchListener(view, alternateIcon, thirdIcon));
         view.setOnCreateContextMenuListener(mOnCreateContextMenuListener);
-
-        return view;
     }
 
     private void updateExpandCollapseButton(CharSequence buttonText, long duration) {
@@ -24,6 +24,7 @@ import android.app.Fragment;
 import android.app.LoaderManager.LoaderCallbacks;
 import android.app.SearchManager;
 import android.content.ActivityNotFoundException;
+import android.content.AsyncTaskLoader;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
@@ -45,6 +46,7 @@ import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.os.Trace;
 import android.provider.CalendarContract;
 import android.provider.ContactsContract;
@@ -107,7 +109,6 @@ import com.android.contacts.R;
 import com.android.contacts.activities.ContactEditorBaseActivity;
 import com.android.contacts.common.CallUtil;
 import com.android.contacts.common.ClipboardUtils;
-import com.android.contacts.common.Collapser;
 import com.android.contacts.common.ContactPhotoManager;
 import com.android.contacts.common.ContactsUtils;
 import com.android.contacts.common.activity.RequestDesiredPermissionsActivity;
@@ -176,8 +177,11 @@ import com.android.contacts.widget.MultiShrinkScroller.MultiShrinkScrollerListen
 import com.android.contacts.widget.QuickContactImageView;
 import com.android.contactsbind.HelpUtils;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.SecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -261,6 +265,8 @@ public class QuickContactActivity extends ContactsActivity
     private ExpandingEntryCardView mNoContactDetailsCard;
     private ExpandingEntryCardView mRecentCard;
     private ExpandingEntryCardView mAboutCard;
+    /** Pre-inflated entry views shared by all the ExpandingEntryCardViews. */
+    private EntryViewPool mEntryViewPool;
 
     // Suggestion card.
     private CardView mCollapsedSuggestionCardView;
@@ -282,6 +288,7 @@ public class QuickContactActivity extends ContactsActivity
     private SelectAccountDialogFragmentListener mSelectAccountFragmentListener;
     private AsyncTask<Void, Void, Cp2DataCardModel> mEntriesAndActionsTask;
     private AsyncTask<Void, Void, Void> mRecentDataTask;
+    private AsyncTask<Void, Void, Bitmap> mHeaderSnapshotTask;
 
     private AggregationSuggestionEngine mAggregationSuggestionEngine;
     private List<Suggestion> mSuggestions;
@@ -382,6 +389,21 @@ public class QuickContactActivity extends ContactsActivity
     private Map<Integer, List<ContactInteraction>> mRecentLoaderResults =
         new ConcurrentHashMap<>(4, 0.9f, 1);
 
+    /**
+     * Contact prefetched by the list that launched us, claimed from
+     * {@link QuickContactPrefetcher}. Cleared once its interactions have been used.
+     */
+    private QuickContactPrefetcher.Prefetch mPrefetch;
+
+    /** Header passed by the launcher, shown until the contact has been loaded. */
+    private QuickContactHeaderSnapshot mHeaderSnapshot;
+    /** {@link SystemClock#elapsedRealtime} at which QuickContact was requested. */
+    private long mLaunchTime;
+    /** Time from launch until a header was shown, or -1 if none has been shown yet. */
+    private long mTimeToFirstHeaderMillis = -1;
+    /** Time from launch until the contact and about cards were bound, or -1. */
+    private long mTimeToCardsMillis = -1;
+
     private static final String FRAGMENT_TAG_SELECT_ACCOUNT = "select_account_fragment";
 
     final OnClickListener mEntryClickHandler = new OnClickListener() {
@@ -577,7 +599,7 @@ public class QuickContactActivity extends ContactsActivity
                 isCircular */ true);
         final ImageView photo = (ImageView) suggestionView.findViewById(
                 R.id.aggregation_suggestion_photo);
-        if (suggestion.photo != null) {
+        if (suggestion.photoId != 0) {
             ContactPhotoManager.getInstance(this).loadThumbnail(photo, suggestion.photoId,
                    /* darkTheme */ false, /* isCircular */ true, request);
         } else {
@@ -935,6 +957,12 @@ public class QuickContactActivity extends ContactsActivity
             getWindow().setStatusBarColor(Color.TRANSPARENT);
         }
 
+        if (savedInstanceState == null) {
+            mHeaderSnapshot = QuickContactHeaderSnapshot.fromIntent(getIntent());
+        }
+        mLaunchTime = mHeaderSnapshot != null
+                ? mHeaderSnapshot.getLaunchTime() : SystemClock.elapsedRealtime();
+
         processIntent(getIntent());
 
         // Show QuickContact in front of soft input
@@ -952,6 +980,12 @@ public class QuickContactActivity extends ContactsActivity
         mRecentCard = (ExpandingEntryCardView) findViewById(R.id.recent_card);
         mAboutCard = (ExpandingEntryCardView) findViewById(R.id.about_card);
 
+        mEntryViewPool = new EntryViewPool(this);
+        mContactCard.setEntryViewPool(mEntryViewPool);
+        mNoContactDetailsCard.setEntryViewPool(mEntryViewPool);
+        mRecentCard.setEntryViewPool(mEntryViewPool);
+        mAboutCard.setEntryViewPool(mEntryViewPool);
+
         mCollapsedSuggestionCardView = (CardView) findViewById(R.id.collapsed_suggestion_card);
         mExpandSuggestionCardView = (CardView) findViewById(R.id.expand_suggestion_card);
         mCollapasedSuggestionHeader = findViewById(R.id.collapsed_suggestion_header);
@@ -1049,6 +1083,9 @@ public class QuickContactActivity extends ContactsActivity
         mScroller.setVisibility(View.INVISIBLE);
 
         setHeaderNameText(R.string.missing_name);
+        if (mHeaderSnapshot != null) {
+            bindHeaderSnapshot(mHeaderSnapshot);
+        }
 
         mSelectAccountFragmentListener= (SelectAccountDialogFragmentListener) getFragmentManager()
                 .findFragmentByTag(FRAGMENT_TAG_SELECT_ACCOUNT);
@@ -1170,9 +1207,13 @@ public class QuickContactActivity extends ContactsActivity
         mLookupUri = lookupUri;
         mExcludeMimes = intent.getStringArrayExtra(QuickContact.EXTRA_EXCLUDE_MIMES);
         if (oldLookupUri == null) {
+            // If the list started loading this contact while it was being touched, take over
+            // that load instead of querying again.
+            mPrefetch = QuickContactPrefetcher.getInstance(this).claim(mLookupUri);
             mContactLoader = (ContactLoader) getLoaderManager().initLoader(
                     LOADER_CONTACT_ID, null, mLoaderContactCallbacks);
         } else if (oldLookupUri != mLookupUri) {
+            mPrefetch = null;
             // After copying a directory contact, the contact URI changes. Therefore,
             // we need to reload the new contact.
             destroyInteractionLoaders();
@@ -1205,6 +1246,128 @@ public class QuickContactActivity extends ContactsActivity
         return MultiWindowCompat.isInMultiWindowMode(this) && PhoneCapabilityTester.isPhone(this);
     }
 
+    /**
+     * Renders the header from the snapshot passed by the launcher, so that it can be shown
+     * before the contact is loaded. {@link #bindContactData} replaces it with the real data.
+     */
+    private void bindHeaderSnapshot(final QuickContactHeaderSnapshot snapshot) {
+        setHeaderNameText(snapshot.getDisplayName(), /* isPhoneNumber = */ false);
+        if (snapshot.getThumbnailBytes() == null && snapshot.getThumbnailUri() == null) {
+            final ContactPhotoManager.DefaultImageRequest request =
+                    new ContactPhotoManager.DefaultImageRequest(snapshot.getDisplayName(),
+                            snapshot.getTintSeed(), ContactPhotoManager.TYPE_DEFAULT,
+                            /* isCircular = */ false);
+            final Drawable letterTile = ContactPhotoManager.getDefaultAvatarDrawableForContact(
+                    getResources(), /* hires = */ true, request);
+            mPhotoView.setImageDrawable(letterTile);
+            if (letterTile instanceof LetterTileDrawable) {
+                applySnapshotThemeColor(mMaterialColorMapUtils.calculatePrimaryAndSecondaryColor(
+                        ((LetterTileDrawable) letterTile).getColor()));
+            }
+        } else {
+            mHeaderSnapshotTask = new AsyncTask<Void, Void, Bitmap>() {
+                private MaterialPalette mPalette;
+
+                @Override
+                protected Bitmap doInBackground(Void... params) {
+                    final Bitmap bitmap = decodeSnapshotThumbnail(snapshot);
+                    if (bitmap != null) {
+                        final int primaryColor = colorFromBitmap(bitmap);
+                        if (primaryColor != 0) {
+                            mPalette = mMaterialColorMapUtils.calculatePrimaryAndSecondaryColor(
+                                    primaryColor);
+                        }
+                    }
+                    return bitmap;
+                }
+
+                @Override
+                protected void onPostExecute(Bitmap bitmap) {
+                    // The real photo takes precedence once the contact has been bound.
+                    if (bitmap == null || mContactData != null || isFinishing()) {
+                        return;
+                    }
+                    mPhotoView.setImageDrawable(new BitmapDrawable(getResources(), bitmap));
+                    if (mPalette != null) {
+                        applySnapshotThemeColor(mPalette);
+                    }
+                }
+            };
+            mHeaderSnapshotTask.execute();
+        }
+        showActivity();
+        recordTimeToFirstHeader();
+    }
+
+    private Bitmap decodeSnapshotThumbnail(QuickContactHeaderSnapshot snapshot) {
+        final byte[] bytes = snapshot.getThumbnailBytes();
+        if (bytes != null) {
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        }
+        InputStream inputStream = null;
+        try {
+            inputStream = getContentResolver().openInputStream(snapshot.getThumbnailUri());
+            return inputStream == null ? null : BitmapFactory.decodeStream(inputStream);
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Unable to load snapshot thumbnail " + snapshot.getThumbnailUri(), e);
+            return null;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Tints the header from the snapshot. This does not mark the theme color as computed, so
+     * the color derived from the loaded contact still replaces it.
+     */
+    private void applySnapshotThemeColor(final MaterialPalette palette) {
+        // Setting the header tint before the MultiShrinkScroller has been measured causes
+        // incorrect tinting calculations.
+        SchedulingUtils.doOnPreDraw(mScroller, /* drawNextFrame = */ false, new Runnable() {
+            @Override
+            public void run() {
+                if (!mHasComputedThemeColor && mContactData == null) {
+                    setThemeColor(palette);
+                }
+            }
+        });
+    }
+
+    private void recordTimeToFirstHeader() {
+        if (mTimeToFirstHeaderMillis < 0) {
+            mTimeToFirstHeaderMillis = SystemClock.elapsedRealtime() - mLaunchTime;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Time to first header: " + mTimeToFirstHeaderMillis + "ms"
+                        + (mHeaderSnapshot != null ? " (from snapshot)" : ""));
+            }
+        }
+    }
+
+    private void recordTimeToCards() {
+        if (mTimeToCardsMillis < 0) {
+            mTimeToCardsMillis = SystemClock.elapsedRealtime() - mLaunchTime;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Time to full cards: " + mTimeToCardsMillis + "ms");
+            }
+        }
+    }
+
+    @VisibleForTesting
+    public long getTimeToFirstHeaderMillis() {
+        return mTimeToFirstHeaderMillis;
+    }
+
+    @VisibleForTesting
+    public long getTimeToCardsMillis() {
+        return mTimeToCardsMillis;
+    }
+
     /** Assign this string to the view if it is not empty. */
     private void setHeaderNameText(int resId) {
         if (mScroller != null) {
@@ -1262,6 +1425,7 @@ public class QuickContactActivity extends ContactsActivity
                 mScroller.setPhoneticNameGone();
             }
         }
+        recordTimeToFirstHeader();
 
         Trace.endSection();
 
@@ -1270,7 +1434,13 @@ public class QuickContactActivity extends ContactsActivity
             @Override
             protected Cp2DataCardModel doInBackground(
                     Void... params) {
-                return generateDataModelFromContact(data);
+                final Cp2DataCardModel cardDataModel = generateDataModelFromContact(data);
+                resolveInitialEntries(cardDataModel.contactCardEntries,
+                        MIN_NUM_CONTACT_ENTRIES_SHOWN);
+                // The about card is always expanded.
+                resolveInitialEntries(cardDataModel.aboutCardEntries, Integer.MAX_VALUE);
+                preInflateInitialEntryViews(cardDataModel);
+                return cardDataModel;
             }
 
             @Override
@@ -1288,10 +1458,31 @@ public class QuickContactActivity extends ContactsActivity
         mEntriesAndActionsTask.execute();
     }
 
+    /**
+     * Starts inflating the entry views that are visible once the contact and about cards are
+     * bound, so that binding them on the UI thread does not have to wait for inflation. Views for
+     * entries hidden in a collapsed card are requested by the card itself.
+     */
+    private void preInflateInitialEntryViews(Cp2DataCardModel cp2DataCardModel) {
+        int numContactCardEntries = 0;
+        for (List<Entry> entries : cp2DataCardModel.contactCardEntries) {
+            numContactCardEntries += entries.size();
+        }
+        int numAboutCardEntries = 0;
+        for (List<Entry> entries : cp2DataCardModel.aboutCardEntries) {
+            numAboutCardEntries += entries.size();
+        }
+        // The about card is always expanded and may gain a phonetic name entry.
+        mEntryViewPool.preInflate(R.layout.expanding_entry_card_item,
+                Math.min(numContactCardEntries, MIN_NUM_CONTACT_ENTRIES_SHOWN)
+                + numAboutCardEntries + 1);
+    }
+
     private void bindDataToCards(Cp2DataCardModel cp2DataCardModel) {
         startInteractionLoaders(cp2DataCardModel);
         populateContactAndAboutCard(cp2DataCardModel, /* shouldAddPhoneticName */ true);
         populateSuggestionCard();
+        recordTimeToCards();
     }
 
     private void startInteractionLoaders(Cp2DataCardModel cp2DataCardModel) {
@@ -1307,6 +1498,32 @@ public class QuickContactActivity extends ContactsActivity
                 phoneNumbers[i] = ((PhoneDataItem) phoneDataItems.get(i)).getNumber();
             }
         }
+        final List<DataItem> emailDataItems = dataItemsMap.get(Email.CONTENT_ITEM_TYPE);
+        if (emailDataItems != null && emailDataItems.size() == 1) {
+            mOnlyOneEmail = true;
+        }
+        String[] emailAddresses = null;
+        if (emailDataItems != null) {
+            emailAddresses = new String[emailDataItems.size()];
+            for (int i = 0; i < emailDataItems.size(); ++i) {
+                emailAddresses[i] = ((EmailDataItem) emailDataItems.get(i)).getAddress();
+            }
+        }
+
+        // Use the interactions prefetched along with the contact, if they are ready and were
+        // loaded for the same phone numbers and email addresses.
+        if (mPrefetch != null) {
+            final Map<Integer, List<ContactInteraction>> prefetchedInteractions =
+                    mPrefetch.getInteractionsIfMatching(phoneNumbers, emailAddresses);
+            mPrefetch = null;
+            if (prefetchedInteractions != null
+                    && prefetchedInteractions.size() == mRecentLoaderIds.length) {
+                mRecentLoaderResults.putAll(prefetchedInteractions);
+                bindRecentData();
+                return;
+            }
+        }
+
         final Bundle phonesExtraBundle = new Bundle();
         phonesExtraBundle.putStringArray(KEY_LOADER_EXTRA_PHONES, phoneNumbers);
 
@@ -1326,17 +1543,6 @@ public class QuickContactActivity extends ContactsActivity
 
 
         Trace.beginSection("start calendar loader");
-        final List<DataItem> emailDataItems = dataItemsMap.get(Email.CONTENT_ITEM_TYPE);
-        if (emailDataItems != null && emailDataItems.size() == 1) {
-            mOnlyOneEmail = true;
-        }
-        String[] emailAddresses = null;
-        if (emailDataItems != null) {
-            emailAddresses = new String[emailDataItems.size()];
-            for (int i = 0; i < emailDataItems.size(); ++i) {
-                emailAddresses[i] = ((EmailDataItem) emailDataItems.get(i)).getAddress();
-            }
-        }
         final Bundle emailsExtraBundle = new Bundle();
         emailsExtraBundle.putStringArray(KEY_LOADER_EXTRA_EMAILS, emailAddresses);
         getLoaderManager().initLoader(
@@ -1639,7 +1845,7 @@ public class QuickContactActivity extends ContactsActivity
         final List<List<DataItem>> dataItemsList = new ArrayList<>();
         for (List<DataItem> mimeTypeDataItems : dataItemsMap.values()) {
             // Remove duplicate data items
-            Collapser.collapseList(mimeTypeDataItems, this);
+            DataItemCollapser.collapseList(mimeTypeDataItems, this);
             // Sort within mimetype
             Collections.sort(mimeTypeDataItems, mWithinMimeTypeDataItemComparator);
             // Add to the list of data item lists
@@ -1739,6 +1945,7 @@ public class QuickContactActivity extends ContactsActivity
         String thirdContentDescription = null;
         Bundle thirdExtras = null;
         int iconResourceId = 0;
+        String resolveCacheIconMimeType = null;
 
         context = context.getApplicationContext();
         final Resources res = context.getResources();
@@ -2076,34 +2283,17 @@ public class QuickContactActivity extends ContactsActivity
                         entryContextMenuInfo = new EntryContextMenuInfo(header, mimetype,
                                 dataItem.getMimeType(), dataItem.getId(),
                                 dataItem.isSuperPrimary());
-                        icon = ResolveCache.getInstance(context).getIcon(
-                                dataItem.getMimeType(), intent);
-                        // Call mutate to create a new Drawable.ConstantState for color filtering
-                        if (icon != null) {
-                            icon.mutate();
+                        if (TextUtils.isEmpty(header) && TextUtils.isEmpty(text)) {
+                            // The icon decides whether there is an entry at all.
+                            icon = getResolveCacheIcon(context, dataItem.getMimeType(), intent);
+                        } else {
+                            resolveCacheIconMimeType = dataItem.getMimeType();
                         }
                         shouldApplyColor = false;
                 }
             }
         }
 
-        if (intent != null) {
-            // Do not set the intent is there are no resolves
-            if (!PhoneCapabilityTester.isIntentRegistered(context, intent)) {
-                intent = null;
-            }
-        }
-
-        if (alternateIntent != null) {
-            // Do not set the alternate intent is there are no resolves
-            if (!PhoneCapabilityTester.isIntentRegistered(context, alternateIntent)) {
-                alternateIntent = null;
-            } else if (TextUtils.isEmpty(alternateContentDescription)) {
-                // Attempt to use package manager to find a suitable content description if needed
-                alternateContentDescription.append(getIntentResolveLabel(alternateIntent, context));
-            }
-        }
-
         // If the Entry has no visual elements, return null
         if (icon == null && TextUtils.isEmpty(header) && TextUtils.isEmpty(subHeader) &&
                 subHeaderIcon == null && TextUtils.isEmpty(text) && textIcon == null) {
@@ -2124,7 +2314,99 @@ public class QuickContactActivity extends ContactsActivity
                         : smsContentDescription,
                 shouldApplyColor, isEditable,
                 entryContextMenuInfo, thirdIcon, thirdIntent, thirdContentDescription, thirdAction,
-                thirdExtras, iconResourceId);
+                thirdExtras, iconResourceId,
+                intent == null && alternateIntent == null && resolveCacheIconMimeType == null
+                        ? null
+                        : new EntryResolver(context, resolveCacheIconMimeType));
+    }
+
+    /**
+     * Resolves the intents of an entry built by {@link #dataItemToEntry} against the package
+     * manager, and looks up icons and content descriptions that come from the resolved
+     * activities. Runs on the UI thread when the entry is first displayed, or on the
+     * background thread for entries that are visible as soon as the cards are bound.
+     */
+    private static final class EntryResolver implements Entry.Resolver {
+        private final Context mContext;
+        /** Mime type to look up the entry icon for in the {@link ResolveCache}, or null. */
+        private final String mResolveCacheIconMimeType;
+
+        public EntryResolver(Context context, String resolveCacheIconMimeType) {
+            mContext = context;
+            mResolveCacheIconMimeType = resolveCacheIconMimeType;
+        }
+
+        @Override
+        public void resolve(Entry entry) {
+            Drawable icon = entry.getIcon();
+            Intent intent = entry.getIntent();
+            Intent alternateIntent = entry.getAlternateIntent();
+            Spannable alternateContentDescription = entry.getAlternateContentDescription();
+
+            if (mResolveCacheIconMimeType != null) {
+                icon = getResolveCacheIcon(mContext, mResolveCacheIconMimeType, intent);
+            }
+
+            if (intent != null) {
+                // Do not set the intent is there are no resolves
+                if (!PhoneCapabilityTester.isIntentRegistered(mContext, intent)) {
+                    intent = null;
+                }
+            }
+
+            if (alternateIntent != null) {
+                // Do not set the alternate intent is there are no resolves
+                if (!PhoneCapabilityTester.isIntentRegistered(mContext, alternateIntent)) {
+                    alternateIntent = null;
+                } else if (TextUtils.isEmpty(alternateContentDescription)) {
+                    // Attempt to use package manager to find a suitable content description if
+                    // needed
+                    final String label = getIntentResolveLabel(alternateIntent, mContext);
+                    if (label != null) {
+                        alternateContentDescription = new SpannableString(label);
+                    }
+                }
+            }
+
+            entry.setResolvedFields(icon, intent, alternateIntent, alternateContentDescription);
+        }
+
+        @Override
+        public boolean resolvesIcon() {
+            return mResolveCacheIconMimeType != null;
+        }
+    }
+
+    private static Drawable getResolveCacheIcon(Context context, String mimeType, Intent intent) {
+        final Drawable icon = ResolveCache.getInstance(context).getIcon(mimeType, intent);
+        // Call mutate to create a new Drawable.ConstantState for color filtering
+        if (icon != null) {
+            icon.mutate();
+        }
+        return icon;
+    }
+
+    /**
+     * Resolves the entries that are visible once the card is bound, so that binding does not
+     * query the package manager on the UI thread. A collapsed card shows the first entry of
+     * each list, then fills up with the remaining entries in order. The first entry of every
+     * list is resolved either way, since it provides the badge of a list that is not shown.
+     * Other entries hidden in a collapsed card are resolved when they are first displayed.
+     */
+    private static void resolveInitialEntries(List<List<Entry>> entries, int numVisibleEntries) {
+        int numResolved = 0;
+        for (List<Entry> entryList : entries) {
+            if (!entryList.isEmpty()) {
+                entryList.get(0).resolve();
+                numResolved++;
+            }
+        }
+        for (List<Entry> entryList : entries) {
+            for (int i = 1; i < entryList.size() && numResolved < numVisibleEntries; i++) {
+                entryList.get(i).resolve();
+                numResolved++;
+            }
+        }
     }
 
     private List<Entry> dataItemsToEntries(List<DataItem> dataItems,
@@ -2449,14 +2731,83 @@ public class QuickContactActivity extends ContactsActivity
             if (mLookupUri == null) {
                 Log.wtf(TAG, "Lookup uri wasn't initialized. Loader was started too early");
             }
-            // Load all contact data. We need loadGroupMetaData=true to determine whether the
-            // contact is invisible. If it is, we need to display an "Add to Contacts" MenuItem.
-            return new ContactLoader(getApplicationContext(), mLookupUri,
-                    true /*loadGroupMetaData*/, false /*loadInvitableAccountTypes*/,
-                    true /*postViewNotification*/, true /*computeFormattedPhoneNumber*/);
+            if (mPrefetch != null) {
+                return new QuickContactPrefetcher.ClaimingContactLoader(getApplicationContext(),
+                        mLookupUri, mPrefetch,
+                        true /*loadGroupMetaData*/, false /*loadInvitableAccountTypes*/,
+                        true /*postViewNotification*/, true /*computeFormattedPhoneNumber*/);
+            }
+            return createContactLoader(getApplicationContext(), mLookupUri);
         }
     };
 
+    /**
+     * Creates the loader for all the contact data displayed by QuickContact. Also used by
+     * {@link QuickContactPrefetcher}, so that prefetched contacts can be claimed as-is.
+     */
+    static ContactLoader createContactLoader(Context context, Uri lookupUri) {
+        // Load all contact data. We need loadGroupMetaData=true to determine whether the
+        // contact is invisible. If it is, we need to display an "Add to Contacts" MenuItem.
+        return new ContactLoader(context, lookupUri,
+                true /*loadGroupMetaData*/, false /*loadInvitableAccountTypes*/,
+                true /*postViewNotification*/, true /*computeFormattedPhoneNumber*/);
+    }
+
+    /**
+     * Synchronously runs all the recent interaction loaders. Must be called from a background
+     * thread.
+     *
+     * @return the interactions keyed by loader id, in the same form as
+     *  {@link #mRecentLoaderResults}.
+     */
+    static Map<Integer, List<ContactInteraction>> loadInteractions(Context context,
+            String[] phoneNumbers, String[] emailAddresses) {
+        final Bundle args = new Bundle();
+        args.putStringArray(KEY_LOADER_EXTRA_PHONES, phoneNumbers);
+        args.putStringArray(KEY_LOADER_EXTRA_EMAILS, emailAddresses);
+        final Map<Integer, List<ContactInteraction>> interactions = new HashMap<>();
+        for (int loaderId : mRecentLoaderIds) {
+            final List<ContactInteraction> result =
+                    createInteractionLoader(context, loaderId, args).loadInBackground();
+            interactions.put(loaderId, result != null
+                    ? result : Collections.<ContactInteraction>emptyList());
+        }
+        return interactions;
+    }
+
+    private static AsyncTaskLoader<List<ContactInteraction>> createInteractionLoader(
+            Context context, int id, Bundle args) {
+        AsyncTaskLoader<List<ContactInteraction>> loader = null;
+        switch (id) {
+            case LOADER_SMS_ID:
+                loader = new SmsInteractionsLoader(
+                        context,
+                        args.getStringArray(KEY_LOADER_EXTRA_PHONES),
+                        MAX_SMS_RETRIEVE);
+                break;
+            case LOADER_CALENDAR_ID:
+                final String[] emailsArray = args.getStringArray(KEY_LOADER_EXTRA_EMAILS);
+                List<String> emailsList = null;
+                if (emailsArray != null) {
+                    emailsList = Arrays.asList(args.getStringArray(KEY_LOADER_EXTRA_EMAILS));
+                }
+                loader = new CalendarInteractionsLoader(
+                        context,
+                        emailsList,
+                        MAX_FUTURE_CALENDAR_RETRIEVE,
+                        MAX_PAST_CALENDAR_RETRIEVE,
+                        FUTURE_MILLISECOND_TO_SEARCH_LOCAL_CALENDAR,
+                        PAST_MILLISECOND_TO_SEARCH_LOCAL_CALENDAR);
+                break;
+            case LOADER_CALL_LOG_ID:
+                loader = new CallLogInteractionsLoader(
+                        context,
+                        args.getStringArray(KEY_LOADER_EXTRA_PHONES),
+                        MAX_CALL_LOG_RETRIEVE);
+        }
+        return loader;
+    }
+
     @Override
     public void onBackPressed() {
         if (mScroller != null) {
@@ -2481,35 +2832,7 @@ public class QuickContactActivity extends ContactsActivity
 
         @Override
         public Loader<List<ContactInteraction>> onCreateLoader(int id, Bundle args) {
-            Loader<List<ContactInteraction>> loader = null;
-            switch (id) {
-                case LOADER_SMS_ID:
-                    loader = new SmsInteractionsLoader(
-                            QuickContactActivity.this,
-                            args.getStringArray(KEY_LOADER_EXTRA_PHONES),
-                            MAX_SMS_RETRIEVE);
-                    break;
-                case LOADER_CALENDAR_ID:
-                    final String[] emailsArray = args.getStringArray(KEY_LOADER_EXTRA_EMAILS);
-                    List<String> emailsList = null;
-                    if (emailsArray != null) {
-                        emailsList = Arrays.asList(args.getStringArray(KEY_LOADER_EXTRA_EMAILS));
-                    }
-                    loader = new CalendarInteractionsLoader(
-                            QuickContactActivity.this,
-                            emailsList,
-                            MAX_FUTURE_CALENDAR_RETRIEVE,
-                            MAX_PAST_CALENDAR_RETRIEVE,
-                            FUTURE_MILLISECOND_TO_SEARCH_LOCAL_CALENDAR,
-                            PAST_MILLISECOND_TO_SEARCH_LOCAL_CALENDAR);
-                    break;
-                case LOADER_CALL_LOG_ID:
-                    loader = new CallLogInteractionsLoader(
-                            QuickContactActivity.this,
-                            args.getStringArray(KEY_LOADER_EXTRA_PHONES),
-                            MAX_CALL_LOG_RETRIEVE);
-            }
-            return loader;
+            return createInteractionLoader(QuickContactActivity.this, id, args);
         }
 
         @Override
@@ -2632,9 +2955,15 @@ public class QuickContactActivity extends ContactsActivity
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (mHeaderSnapshotTask != null) {
+            mHeaderSnapshotTask.cancel(/* mayInterruptIfRunning = */ false);
+        }
         if (mAggregationSuggestionEngine != null) {
             mAggregationSuggestionEngine.quit();
         }
+        if (mEntryViewPool != null) {
+            mEntryViewPool.release();
+        }
     }
 
     /**
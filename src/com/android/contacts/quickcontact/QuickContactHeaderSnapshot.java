@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.contacts.quickcontact;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+/**
+ * Compact description of the QuickContact header that the launcher already knows about, e.g.
+ * from the list row that was clicked. It lets {@link QuickContactActivity} render its header
+ * before the contact has been loaded.
+ */
+public final class QuickContactHeaderSnapshot {
+
+    private static final String EXTRA_PREFIX = QuickContactHeaderSnapshot.class.getName();
+    private static final String EXTRA_DISPLAY_NAME = EXTRA_PREFIX + ".DISPLAY_NAME";
+    private static final String EXTRA_THUMBNAIL_URI = EXTRA_PREFIX + ".THUMBNAIL_URI";
+    private static final String EXTRA_THUMBNAIL_BYTES = EXTRA_PREFIX + ".THUMBNAIL_BYTES";
+    private static final String EXTRA_TINT_SEED = EXTRA_PREFIX + ".TINT_SEED";
+    private static final String EXTRA_LAUNCH_TIME = EXTRA_PREFIX + ".LAUNCH_TIME";
+
+    /**
+     * Thumbnails bigger than this are not worth passing through the intent; the launcher
+     * should pass the thumbnail URI instead.
+     */
+    private static final int MAX_THUMBNAIL_BYTES = 16 * 1024;
+
+    private final String mDisplayName;
+    private final Uri mThumbnailUri;
+    private final byte[] mThumbnailBytes;
+    private final String mTintSeed;
+    private final long mLaunchTime;
+
+    /**
+     * @param displayName the name shown in the header.
+     * @param thumbnailUri URI of the contact's thumbnail photo, or null.
+     * @param thumbnailBytes compressed thumbnail photo, or null. Used instead of thumbnailUri
+     *  when both are set.
+     * @param tintSeed identifier the letter tile color is derived from when there is no photo,
+     *  normally the lookup key.
+     */
+    public QuickContactHeaderSnapshot(String displayName, Uri thumbnailUri, byte[] thumbnailBytes,
+            String tintSeed) {
+        this(displayName, thumbnailUri, thumbnailBytes, tintSeed, SystemClock.elapsedRealtime());
+    }
+
+    private QuickContactHeaderSnapshot(String displayName, Uri thumbnailUri,
+            byte[] thumbnailBytes, String tintSeed, long launchTime) {
+        mDisplayName = displayName;
+        mThumbnailUri = thumbnailUri;
+        mThumbnailBytes = thumbnailBytes != null && thumbnailBytes.length <= MAX_THUMBNAIL_BYTES
+                ? thumbnailBytes : null;
+        mTintSeed = tintSeed;
+        mLaunchTime = launchTime;
+    }
+
+    public String getDisplayName() {
+        return mDisplayName;
+    }
+
+    public Uri getThumbnailUri() {
+        return mThumbnailUri;
+    }
+
+    public byte[] getThumbnailBytes() {
+        return mThumbnailBytes;
+    }
+
+    public String getTintSeed() {
+        return mTintSeed;
+    }
+
+    /**
+     * Returns the {@link SystemClock#elapsedRealtime} at which the snapshot was taken, i.e. when
+     * the user asked for QuickContact.
+     */
+    public long getLaunchTime() {
+        return mLaunchTime;
+    }
+
+    /**
+     * Adds the snapshot to an intent that launches {@link QuickContactActivity}.
+     */
+    public void addToIntent(Intent intent) {
+        intent.putExtra(EXTRA_DISPLAY_NAME, mDisplayName);
+        if (mThumbnailUri != null) {
+            intent.putExtra(EXTRA_THUMBNAIL_URI, mThumbnailUri);
+        }
+        if (mThumbnailBytes != null) {
+            intent.putExtra(EXTRA_THUMBNAIL_BYTES, mThumbnailBytes);
+        }
+        intent.putExtra(EXTRA_TINT_SEED, mTintSeed);
+        intent.putExtra(EXTRA_LAUNCH_TIME, mLaunchTime);
+    }
+
+    /**
+     * Returns the snapshot passed to QuickContact, or null if the launcher did not pass one.
+     */
+    public static QuickContactHeaderSnapshot fromIntent(Intent intent) {
+        if (intent == null) {
+            return null;
+        }
+        final String displayName = intent.getStringExtra(EXTRA_DISPLAY_NAME);
+        if (TextUtils.isEmpty(displayName)) {
+            return null;
+        }
+        return new QuickContactHeaderSnapshot(displayName,
+                (Uri) intent.getParcelableExtra(EXTRA_THUMBNAIL_URI),
+                intent.getByteArrayExtra(EXTRA_THUMBNAIL_BYTES),
+                intent.getStringExtra(EXTRA_TINT_SEED),
+                intent.getLongExtra(EXTRA_LAUNCH_TIME, SystemClock.elapsedRealtime()));
+    }
+}
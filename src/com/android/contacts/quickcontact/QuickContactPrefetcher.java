@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.contacts.quickcontact;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.ViewConfiguration;
+
+import com.android.contacts.common.model.Contact;
+import com.android.contacts.common.model.ContactLoader;
+import com.android.contacts.common.model.RawContact;
+import com.android.contacts.common.model.dataitem.DataItem;
+import com.android.contacts.common.model.dataitem.EmailDataItem;
+import com.android.contacts.common.model.dataitem.PhoneDataItem;
+import com.android.contacts.interactions.ContactInteraction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speculatively loads the {@link Contact} and the recent interactions shown by
+ * {@link QuickContactActivity} while the user is still touching a contact in a list, so that
+ * QuickContact can claim the result instead of loading it again.
+ *
+ * All public methods must be called from the UI thread.
+ */
+public class QuickContactPrefetcher {
+    private static final String TAG = "QuickContactPrefetcher";
+
+    /** Maximum number of prefetched contacts kept at once. */
+    private static final int MAX_PREFETCHED_CONTACTS = 3;
+
+    /** Prefetched contacts older than this are dropped instead of being claimed. */
+    private static final long MAX_PREFETCH_AGE_MILLIS = 5000;
+
+    /**
+     * How long a claiming {@link ContactLoader} waits for a prefetch that is still in flight
+     * before loading the contact itself.
+     */
+    private static final long MAX_CLAIM_WAIT_MILLIS = 2000;
+
+    /**
+     * Delay before a prefetch starts querying. A touch that turns into a scroll usually cancels
+     * the prefetch within this window, before any query has been issued.
+     */
+    private static final long PREFETCH_DELAY_MILLIS = ViewConfiguration.getTapTimeout();
+
+    private static QuickContactPrefetcher sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** Prefetches by lookup URI, in access order. */
+    private final LinkedHashMap<Uri, Prefetch> mPrefetches =
+            new LinkedHashMap<Uri, Prefetch>(MAX_PREFETCHED_CONTACTS + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Uri, Prefetch> eldest) {
+                    if (size() > MAX_PREFETCHED_CONTACTS) {
+                        eldest.getValue().cancel();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    public static synchronized QuickContactPrefetcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new QuickContactPrefetcher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private QuickContactPrefetcher(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Starts loading the given contact, unless a recent prefetch for it exists already. The
+     * query is only issued after a short delay, see {@link #cancel}.
+     */
+    public void prefetch(Uri lookupUri) {
+        if (lookupUri == null) {
+            return;
+        }
+        pruneExpired();
+        if (mPrefetches.get(lookupUri) != null) {
+            return;
+        }
+        final Prefetch prefetch = new Prefetch(lookupUri);
+        mPrefetches.put(lookupUri, prefetch);
+        mHandler.postDelayed(prefetch.mStartRunnable, PREFETCH_DELAY_MILLIS);
+    }
+
+    /**
+     * Cancels the prefetch for the given contact, e.g. because the touch turned into a scroll.
+     * This is cheap if the prefetch has not started querying yet.
+     */
+    public void cancel(Uri lookupUri) {
+        if (lookupUri == null) {
+            return;
+        }
+        final Prefetch prefetch = mPrefetches.remove(lookupUri);
+        if (prefetch != null) {
+            prefetch.cancel();
+        }
+    }
+
+    /**
+     * Cancels all prefetches that have not been claimed yet.
+     */
+    public void cancelAll() {
+        for (Prefetch prefetch : mPrefetches.values()) {
+            prefetch.cancel();
+        }
+        mPrefetches.clear();
+    }
+
+    /**
+     * Removes the prefetch for the given contact from the cache and hands it to the caller.
+     * A prefetch that is still waiting to start is started right away. Returns null if the
+     * contact has not been prefetched recently.
+     */
+    public Prefetch claim(Uri lookupUri) {
+        if (lookupUri == null) {
+            return null;
+        }
+        pruneExpired();
+        final Prefetch prefetch = mPrefetches.remove(lookupUri);
+        if (prefetch != null) {
+            mHandler.removeCallbacks(prefetch.mStartRunnable);
+            prefetch.start();
+        }
+        return prefetch;
+    }
+
+    private void pruneExpired() {
+        final long now = SystemClock.elapsedRealtime();
+        final Iterator<Prefetch> iterator = mPrefetches.values().iterator();
+        while (iterator.hasNext()) {
+            final Prefetch prefetch = iterator.next();
+            if (now - prefetch.mCreationTime > MAX_PREFETCH_AGE_MILLIS) {
+                prefetch.cancel();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Result of a single prefetch. The contact and the interactions become available
+     * independently of each other.
+     */
+    public final class Prefetch {
+        private final Uri mLookupUri;
+        private final long mCreationTime = SystemClock.elapsedRealtime();
+        private final CountDownLatch mContactLatch = new CountDownLatch(1);
+        private final CountDownLatch mInteractionsLatch = new CountDownLatch(1);
+        private final Runnable mStartRunnable = new Runnable() {
+            @Override
+            public void run() {
+                start();
+            }
+        };
+
+        private AsyncTask<Void, Void, Void> mTask;
+        private volatile Contact mContact;
+        private volatile String[] mPhoneNumbers;
+        private volatile String[] mEmailAddresses;
+        private volatile Map<Integer, List<ContactInteraction>> mInteractions;
+
+        private Prefetch(Uri lookupUri) {
+            mLookupUri = lookupUri;
+        }
+
+        public Uri getLookupUri() {
+            return mLookupUri;
+        }
+
+        private void start() {
+            if (mTask != null) {
+                return;
+            }
+            mTask = new AsyncTask<Void, Void, Void>() {
+                @Override
+                protected Void doInBackground(Void... params) {
+                    try {
+                        final Contact contact = QuickContactActivity.createContactLoader(
+                                mContext, mLookupUri).loadInBackground();
+                        if (contact == null || !contact.isLoaded() || isCancelled()) {
+                            return null;
+                        }
+                        mContact = contact;
+                        mContactLatch.countDown();
+
+                        mPhoneNumbers = getPhoneNumbers(contact);
+                        mEmailAddresses = getEmailAddresses(contact);
+                        mInteractions = QuickContactActivity.loadInteractions(
+                                mContext, mPhoneNumbers, mEmailAddresses);
+                    } catch (Exception e) {
+                        Log.w(TAG, "Failed to prefetch " + mLookupUri, e);
+                    } finally {
+                        mContactLatch.countDown();
+                        mInteractionsLatch.countDown();
+                    }
+                    return null;
+                }
+            };
+            mTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+
+        private void cancel() {
+            mHandler.removeCallbacks(mStartRunnable);
+            if (mTask != null) {
+                mTask.cancel(/* mayInterruptIfRunning = */ true);
+            }
+            mContactLatch.countDown();
+            mInteractionsLatch.countDown();
+        }
+
+        /**
+         * Returns the prefetched contact, waiting for an in-flight prefetch if necessary.
+         * Must be called from a background thread. Returns null if the prefetch failed.
+         */
+        public Contact awaitContact() {
+            try {
+                mContactLatch.await(MAX_CLAIM_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return mContact;
+        }
+
+        /**
+         * Returns the prefetched interactions keyed by interaction loader id if they are
+         * available already and were loaded for the same phone numbers and email addresses.
+         * Never blocks.
+         */
+        public Map<Integer, List<ContactInteraction>> getInteractionsIfMatching(
+                String[] phoneNumbers, String[] emailAddresses) {
+            if (mInteractionsLatch.getCount() > 0 || mInteractions == null) {
+                return null;
+            }
+            if (!sameElements(mPhoneNumbers, phoneNumbers)
+                    || !sameElements(mEmailAddresses, emailAddresses)) {
+                return null;
+            }
+            return mInteractions;
+        }
+    }
+
+    /**
+     * {@link ContactLoader} that uses a claimed {@link Prefetch} for its first load instead of
+     * querying the provider again.
+     */
+    static final class ClaimingContactLoader extends ContactLoader {
+        private Prefetch mPrefetch;
+
+        ClaimingContactLoader(Context context, Uri lookupUri, Prefetch prefetch,
+                boolean loadGroupMetaData, boolean loadInvitableAccountTypes,
+                boolean postViewNotification, boolean computeFormattedPhoneNumber) {
+            super(context, lookupUri, loadGroupMetaData, loadInvitableAccountTypes,
+                    postViewNotification, computeFormattedPhoneNumber);
+            mPrefetch = prefetch;
+        }
+
+        @Override
+        public Contact loadInBackground() {
+            final Prefetch prefetch = mPrefetch;
+            mPrefetch = null;
+            if (prefetch != null && prefetch.getLookupUri().equals(getLookupUri())) {
+                final Contact contact = prefetch.awaitContact();
+                if (contact != null) {
+                    return contact;
+                }
+            }
+            return super.loadInBackground();
+        }
+    }
+
+    private static String[] getPhoneNumbers(Contact contact) {
+        final List<String> phoneNumbers = new ArrayList<>();
+        for (RawContact rawContact : contact.getRawContacts()) {
+            for (DataItem dataItem : rawContact.getDataItems()) {
+                if (dataItem instanceof PhoneDataItem) {
+                    phoneNumbers.add(((PhoneDataItem) dataItem).getNumber());
+                }
+            }
+        }
+        return phoneNumbers.isEmpty() ? null : phoneNumbers.toArray(new String[0]);
+    }
+
+    private static String[] getEmailAddresses(Contact contact) {
+        final List<String> emailAddresses = new ArrayList<>();
+        for (RawContact rawContact : contact.getRawContacts()) {
+            for (DataItem dataItem : rawContact.getDataItems()) {
+                if (dataItem instanceof EmailDataItem) {
+                    emailAddresses.add(((EmailDataItem) dataItem).getAddress());
+                }
+            }
+        }
+        return emailAddresses.isEmpty() ? null : emailAddresses.toArray(new String[0]);
+    }
+
+    private static boolean sameElements(String[] a, String[] b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.length == b.length
+                && new HashSet<>(Arrays.asList(a)).equals(new HashSet<>(Arrays.asList(b)));
+    }
+}
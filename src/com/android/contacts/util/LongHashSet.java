@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive longs backed by an open addressing hash table, so membership checks on
+ * IDs don't box. Not thread safe.
+ */
+public class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+
+    /** Marks a free slot. Zero itself is tracked by {@link #mContainsZero}. */
+    private static final long EMPTY = 0;
+
+    private long[] mKeys;
+    private int mSize;
+    private boolean mContainsZero;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public LongHashSet(int expectedSize) {
+        mKeys = new long[capacityFor(expectedSize)];
+    }
+
+    public int size() {
+        return mContainsZero ? mSize + 1 : mSize;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) {
+            return mContainsZero;
+        }
+        final int mask = mKeys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            final long k = mKeys[i];
+            if (k == key) {
+                return true;
+            }
+            if (k == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds the key to the set. Returns false if it was already present.
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            final boolean added = !mContainsZero;
+            mContainsZero = true;
+            return added;
+        }
+        final int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        for (; mKeys[i] != EMPTY; i = (i + 1) & mask) {
+            if (mKeys[i] == key) {
+                return false;
+            }
+        }
+        mKeys[i] = key;
+        mSize++;
+        // Keep the load factor at or below one half.
+        if (mSize * 2 > mKeys.length) {
+            rehash(mKeys.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the key from the set. Returns false if it was not present.
+     */
+    public boolean remove(long key) {
+        if (key == EMPTY) {
+            final boolean removed = mContainsZero;
+            mContainsZero = false;
+            return removed;
+        }
+        final int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mKeys[i] != key) {
+            if (mKeys[i] == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = EMPTY;
+        mSize--;
+        // Shift back the following entries of the probe sequence so lookups don't stop early.
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            final long k = mKeys[j];
+            if (k == EMPTY) {
+                return true;
+            }
+            final int home = hash(k) & mask;
+            // Move k into the hole unless its home slot lies cyclically in (i, j].
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                mKeys[i] = k;
+                mKeys[j] = EMPTY;
+                i = j;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(mKeys, EMPTY);
+        mSize = 0;
+        mContainsZero = false;
+    }
+
+    /**
+     * Returns the keys of the set in no particular order.
+     */
+    public long[] toArray() {
+        final long[] result = new long[size()];
+        int n = 0;
+        if (mContainsZero) {
+            result[n++] = EMPTY;
+        }
+        for (long k : mKeys) {
+            if (k != EMPTY) {
+                result[n++] = k;
+            }
+        }
+        return result;
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = mKeys;
+        mKeys = new long[capacity];
+        final int mask = capacity - 1;
+        for (long k : oldKeys) {
+            if (k != EMPTY) {
+                int i = hash(k) & mask;
+                while (mKeys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                mKeys[i] = k;
+            }
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long key) {
+        // Spread sequential IDs across the table.
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
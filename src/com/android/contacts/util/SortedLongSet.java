@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * A sorted set of primitive longs backed by an array. Lookups are binary searches and the keys
+ * can be saved as a single {@code long[]}. Not thread safe.
+ */
+public class SortedLongSet {
+    private static final long[] EMPTY = new long[0];
+
+    private long[] mKeys;
+    private int mSize;
+
+    public SortedLongSet() {
+        mKeys = EMPTY;
+    }
+
+    /**
+     * Creates a set holding the given keys, in any order and possibly with duplicates, as
+     * returned by {@link #toArray} for instance.
+     */
+    public static SortedLongSet fromArray(long[] keys) {
+        final SortedLongSet set = new SortedLongSet();
+        if (keys == null || keys.length == 0) {
+            return set;
+        }
+        final long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int size = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[size - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        set.mKeys = sorted;
+        set.mSize = size;
+        return set;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Returns the key at the given index, in ascending order of the keys.
+     */
+    public long get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index=" + index + " size=" + mSize);
+        }
+        return mKeys[index];
+    }
+
+    public boolean contains(long key) {
+        return Arrays.binarySearch(mKeys, 0, mSize, key) >= 0;
+    }
+
+    /**
+     * Adds the key to the set. Returns false if it was already present.
+     */
+    public boolean add(long key) {
+        final int index = Arrays.binarySearch(mKeys, 0, mSize, key);
+        if (index >= 0) {
+            return false;
+        }
+        final int insertionPoint = -index - 1;
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, Math.max(8, mSize * 2));
+        }
+        System.arraycopy(mKeys, insertionPoint, mKeys, insertionPoint + 1, mSize - insertionPoint);
+        mKeys[insertionPoint] = key;
+        mSize++;
+        return true;
+    }
+
+    /**
+     * Removes the key from the set. Returns false if it was not present.
+     */
+    public boolean remove(long key) {
+        final int index = Arrays.binarySearch(mKeys, 0, mSize, key);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(mKeys, index + 1, mKeys, index, mSize - index - 1);
+        mSize--;
+        return true;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Returns the keys in ascending order.
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(mKeys, mSize);
+    }
+
+    /**
+     * Returns the keys as a boxed set, for the APIs that still expect one.
+     */
+    public TreeSet<Long> toTreeSet() {
+        final TreeSet<Long> set = new TreeSet<Long>();
+        for (int i = 0; i < mSize; i++) {
+            set.add(mKeys[i]);
+        }
+        return set;
+    }
+}
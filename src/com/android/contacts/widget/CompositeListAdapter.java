@@ -24,11 +24,17 @@ import android.widget.ListAdapter;
 import com.android.contacts.common.testing.NeededForTesting;
 import com.google.common.annotations.VisibleForTesting;
 
+import java.util.Arrays;
+
 /**
  * A general purpose adapter that is composed of multiple sub-adapters. It just
  * appends them in the order they are added. It listens to changes from all
  * sub-adapters and propagates them to its own listeners.
  *
+ * The position of the first item and the first view type of each sub-adapter are cached as
+ * prefix sums, so that the sub-adapter of a position is found with a binary search. When a
+ * sub-adapter changes, only its own counts are queried again.
+ *
  * This class not used for now -- but let's keep running the test in case we want to revive it...
  * (So NeededForTesting)
  */
@@ -40,66 +46,75 @@ public class CompositeListAdapter extends BaseAdapter {
     private ListAdapter[] mAdapters;
     private int[] mCounts;
     private int[] mViewTypeCounts;
+    /** Position of the first item of each adapter. */
+    private int[] mStarts;
+    /** View type of the first view type of each adapter. */
+    private int[] mViewTypeStarts;
+    private boolean[] mAllItemsEnabledByAdapter;
+    /** Whether the counts of each adapter need to be queried again. */
+    private boolean[] mInvalid;
     private int mSize = 0;
     private int mCount = 0;
     private int mViewTypeCount = 0;
     private boolean mAllItemsEnabled = true;
-    private boolean mCacheValid = true;
+    /** Index of the first adapter whose counts or start positions are out of date. */
+    private int mFirstInvalid = Integer.MAX_VALUE;
 
-    private DataSetObserver mDataSetObserver = new DataSetObserver() {
+    /**
+     * Invalidates the cached counts of a single adapter.
+     */
+    private final class AdapterDataSetObserver extends DataSetObserver {
+        private final int mIndex;
+
+        public AdapterDataSetObserver(int index) {
+            mIndex = index;
+        }
 
         @Override
         public void onChanged() {
-            invalidate();
+            invalidate(mIndex);
             notifyDataChanged();
         }
 
         @Override
         public void onInvalidated() {
-            invalidate();
+            invalidate(mIndex);
             notifyDataChanged();
         }
-    };
+    }
 
     public CompositeListAdapter() {
         this(INITIAL_CAPACITY);
     }
 
     public CompositeListAdapter(int initialCapacity) {
-        mAdapters = new ListAdapter[INITIAL_CAPACITY];
-        mCounts = new int[INITIAL_CAPACITY];
-        mViewTypeCounts = new int[INITIAL_CAPACITY];
+        mAdapters = new ListAdapter[initialCapacity];
+        mCounts = new int[initialCapacity];
+        mViewTypeCounts = new int[initialCapacity];
+        mStarts = new int[initialCapacity];
+        mViewTypeStarts = new int[initialCapacity];
+        mAllItemsEnabledByAdapter = new boolean[initialCapacity];
+        mInvalid = new boolean[initialCapacity];
     }
 
     @VisibleForTesting
     /*package*/ void addAdapter(ListAdapter adapter) {
         if (mSize >= mAdapters.length) {
-            int newCapacity = mSize + 2;
-            ListAdapter[] newAdapters = new ListAdapter[newCapacity];
-            System.arraycopy(mAdapters, 0, newAdapters, 0, mSize);
-            mAdapters = newAdapters;
-
-            int[] newCounts = new int[newCapacity];
-            System.arraycopy(mCounts, 0, newCounts, 0, mSize);
-            mCounts = newCounts;
-
-            int[] newViewTypeCounts = new int[newCapacity];
-            System.arraycopy(mViewTypeCounts, 0, newViewTypeCounts, 0, mSize);
-            mViewTypeCounts = newViewTypeCounts;
+            int newCapacity = mSize * 2 + 2;
+            mAdapters = Arrays.copyOf(mAdapters, newCapacity);
+            mCounts = Arrays.copyOf(mCounts, newCapacity);
+            mViewTypeCounts = Arrays.copyOf(mViewTypeCounts, newCapacity);
+            mStarts = Arrays.copyOf(mStarts, newCapacity);
+            mViewTypeStarts = Arrays.copyOf(mViewTypeStarts, newCapacity);
+            mAllItemsEnabledByAdapter = Arrays.copyOf(mAllItemsEnabledByAdapter, newCapacity);
+            mInvalid = Arrays.copyOf(mInvalid, newCapacity);
         }
 
-        adapter.registerDataSetObserver(mDataSetObserver);
-
-        int count = adapter.getCount();
-        int viewTypeCount = adapter.getViewTypeCount();
+        adapter.registerDataSetObserver(new AdapterDataSetObserver(mSize));
 
         mAdapters[mSize] = adapter;
-        mCounts[mSize] = count;
-        mCount += count;
-        mAllItemsEnabled &= adapter.areAllItemsEnabled();
-        mViewTypeCounts[mSize] = viewTypeCount;
-        mViewTypeCount += viewTypeCount;
         mSize++;
+        invalidate(mSize - 1);
 
         notifyDataChanged();
     }
@@ -112,28 +127,76 @@ public class CompositeListAdapter extends BaseAdapter {
         }
     }
 
+    /**
+     * Invalidates the cached counts of all adapters.
+     */
     protected void invalidate() {
-        mCacheValid = false;
+        for (int i = 0; i < mSize; i++) {
+            mInvalid[i] = true;
+        }
+        mFirstInvalid = 0;
+    }
+
+    private void invalidate(int index) {
+        mInvalid[index] = true;
+        mFirstInvalid = Math.min(mFirstInvalid, index);
     }
 
     protected void ensureCacheValid() {
-        if (mCacheValid) {
+        if (mFirstInvalid >= mSize) {
             return;
         }
 
-        mCount = 0;
+        // The adapters before the first invalid one keep their start positions.
+        int start = mFirstInvalid == 0
+                ? 0 : mStarts[mFirstInvalid - 1] + mCounts[mFirstInvalid - 1];
+        int viewTypeStart = mFirstInvalid == 0
+                ? 0 : mViewTypeStarts[mFirstInvalid - 1] + mViewTypeCounts[mFirstInvalid - 1];
+        for (int i = mFirstInvalid; i < mSize; i++) {
+            if (mInvalid[i]) {
+                mCounts[i] = mAdapters[i].getCount();
+                mViewTypeCounts[i] = mAdapters[i].getViewTypeCount();
+                mAllItemsEnabledByAdapter[i] = mAdapters[i].areAllItemsEnabled();
+                mInvalid[i] = false;
+            }
+            mStarts[i] = start;
+            mViewTypeStarts[i] = viewTypeStart;
+            start += mCounts[i];
+            viewTypeStart += mViewTypeCounts[i];
+        }
+        mCount = start;
+        mViewTypeCount = viewTypeStart;
+
         mAllItemsEnabled = true;
-        mViewTypeCount = 0;
         for (int i = 0; i < mSize; i++) {
-            int count = mAdapters[i].getCount();
-            int viewTypeCount = mAdapters[i].getViewTypeCount();
-            mCounts[i] = count;
-            mCount += count;
-            mAllItemsEnabled &= mAdapters[i].areAllItemsEnabled();
-            mViewTypeCount += viewTypeCount;
+            mAllItemsEnabled &= mAllItemsEnabledByAdapter[i];
+        }
+
+        mFirstInvalid = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the index of the adapter containing the given position.
+     */
+    private int findAdapter(int position) {
+        ensureCacheValid();
+        if (position < 0 || position >= mCount) {
+            throw new ArrayIndexOutOfBoundsException(position);
         }
 
-        mCacheValid = true;
+        // The last adapter starting at or before the position. Empty adapters share their start
+        // with the next adapter, so they are never the last one.
+        int low = 0;
+        int high = mSize - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mStarts[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
     }
 
     public int getCount() {
@@ -142,31 +205,13 @@ public class CompositeListAdapter extends BaseAdapter {
     }
 
     public Object getItem(int position) {
-        ensureCacheValid();
-        int start = 0;
-        for (int i = 0; i < mCounts.length; i++) {
-            int end = start + mCounts[i];
-            if (position >= start && position < end) {
-                return mAdapters[i].getItem(position - start);
-            }
-            start = end;
-        }
-
-        throw new ArrayIndexOutOfBoundsException(position);
+        int index = findAdapter(position);
+        return mAdapters[index].getItem(position - mStarts[index]);
     }
 
     public long getItemId(int position) {
-        ensureCacheValid();
-        int start = 0;
-        for (int i = 0; i < mCounts.length; i++) {
-            int end = start + mCounts[i];
-            if (position >= start && position < end) {
-                return mAdapters[i].getItemId(position - start);
-            }
-            start = end;
-        }
-
-        throw new ArrayIndexOutOfBoundsException(position);
+        int index = findAdapter(position);
+        return mAdapters[index].getItemId(position - mStarts[index]);
     }
 
     @Override
@@ -177,33 +222,14 @@ public class CompositeListAdapter extends BaseAdapter {
 
     @Override
     public int getItemViewType(int position) {
-        ensureCacheValid();
-        int start = 0;
-        int viewTypeOffset = 0;
-        for (int i = 0; i < mCounts.length; i++) {
-            int end = start + mCounts[i];
-            if (position >= start && position < end) {
-                return viewTypeOffset + mAdapters[i].getItemViewType(position - start);
-            }
-            viewTypeOffset += mViewTypeCounts[i];
-            start = end;
-        }
-
-        throw new ArrayIndexOutOfBoundsException(position);
+        int index = findAdapter(position);
+        return mViewTypeStarts[index]
+                + mAdapters[index].getItemViewType(position - mStarts[index]);
     }
 
     public View getView(int position, View convertView, ViewGroup parent) {
-        ensureCacheValid();
-        int start = 0;
-        for (int i = 0; i < mCounts.length; i++) {
-            int end = start + mCounts[i];
-            if (position >= start && position < end) {
-                return mAdapters[i].getView(position - start, convertView, parent);
-            }
-            start = end;
-        }
-
-        throw new ArrayIndexOutOfBoundsException(position);
+        int index = findAdapter(position);
+        return mAdapters[index].getView(position - mStarts[index], convertView, parent);
     }
 
     @Override
@@ -214,17 +240,8 @@ public class CompositeListAdapter extends BaseAdapter {
 
     @Override
     public boolean isEnabled(int position) {
-        ensureCacheValid();
-        int start = 0;
-        for (int i = 0; i < mCounts.length; i++) {
-            int end = start + mCounts[i];
-            if (position >= start && position < end) {
-                return mAdapters[i].areAllItemsEnabled()
-                        || mAdapters[i].isEnabled(position - start);
-            }
-            start = end;
-        }
-
-        throw new ArrayIndexOutOfBoundsException(position);
+        int index = findAdapter(position);
+        return mAllItemsEnabledByAdapter[index]
+                || mAdapters[index].isEnabled(position - mStarts[index]);
     }
 }
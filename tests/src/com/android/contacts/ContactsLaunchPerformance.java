@@ -22,14 +22,27 @@ import android.content.Intent;
 import android.os.Bundle;
 
 import com.android.contacts.common.test.LaunchPerformanceBase;
+import com.android.contacts.list.CursorSnapshot;
 
 /**
  * Instrumentation class for Address Book launch performance testing.
+ *
+ * The list is shown from the snapshot saved by the previous launch, if any. Pass
+ * {@code -e listSnapshot false} to delete the snapshots first and measure a launch without them.
  */
 public class ContactsLaunchPerformance extends LaunchPerformanceBase {
 
+    private static final String ARGUMENT_LIST_SNAPSHOT = "listSnapshot";
+
     @Override
     public void onCreate(Bundle arguments) {
+        final boolean useSnapshot = arguments == null
+                || !"false".equals(arguments.getString(ARGUMENT_LIST_SNAPSHOT));
+        if (!useSnapshot) {
+            CursorSnapshot.deleteAll(getTargetContext());
+        }
+        mResults.putBoolean(ARGUMENT_LIST_SNAPSHOT, useSnapshot);
+
         mIntent.setAction(Intent.ACTION_MAIN);
         mIntent.addCategory(Intent.CATEGORY_LAUNCHER);
         mIntent.setComponent(new ComponentName(getTargetContext(),
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.group;
+
+import android.content.ContentUris;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.ContactsContract.Groups;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Tests for {@link GroupBrowseListAdapter}.
+ */
+@SmallTest
+public class GroupBrowseListAdapterTest extends AndroidTestCase {
+
+    private GroupBrowseListAdapter mAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new GroupBrowseListAdapter(getContext());
+        // Columns in the order of GroupListLoader.
+        final MatrixCursor cursor = new MatrixCursor(new String[] {Groups.ACCOUNT_NAME,
+                Groups.ACCOUNT_TYPE, Groups.DATA_SET, Groups._ID, Groups.TITLE,
+                Groups.SUMMARY_COUNT});
+        cursor.addRow(new Object[] {"a@example.com", "com.google", null, 10L, "Family", 3});
+        cursor.addRow(new Object[] {"a@example.com", "com.google", null, 11L, "Friends", 0});
+        cursor.addRow(new Object[] {"a@example.com", "com.google", "plus", 12L, "Circle", 1});
+        cursor.addRow(new Object[] {"b@example.com", "com.google", null, 13L, "Work", 2});
+        mAdapter.setCursor(cursor);
+    }
+
+    public void testGetItem() {
+        assertEquals(4, mAdapter.getCount());
+        final GroupListItem item = mAdapter.getItem(1);
+        assertEquals("a@example.com", item.getAccountName());
+        assertEquals(11L, item.getGroupId());
+        assertEquals("Friends", item.getTitle());
+        assertEquals(0, item.getMemberCount());
+        assertSame(item, mAdapter.getItem(1));
+        assertNull(mAdapter.getItem(4));
+    }
+
+    public void testFirstGroupInAccount() {
+        assertTrue(mAdapter.getItem(0).isFirstGroupInAccount());
+        assertFalse(mAdapter.getItem(1).isFirstGroupInAccount());
+        // Another data set of the same account has its own header.
+        assertTrue(mAdapter.getItem(2).isFirstGroupInAccount());
+        assertTrue(mAdapter.getItem(3).isFirstGroupInAccount());
+    }
+
+    public void testSelectsFirstGroupByDefault() {
+        assertEquals(groupUri(10), mAdapter.getSelectedGroup());
+        assertEquals(0, mAdapter.getSelectedGroupPosition());
+    }
+
+    public void testGetSelectedGroupPosition() {
+        mAdapter.setSelectedGroup(groupUri(13));
+        assertEquals(3, mAdapter.getSelectedGroupPosition());
+
+        mAdapter.setSelectedGroup(groupUri(99));
+        assertEquals(-1, mAdapter.getSelectedGroupPosition());
+
+        mAdapter.setSelectedGroup(Groups.CONTENT_URI);
+        assertEquals(-1, mAdapter.getSelectedGroupPosition());
+    }
+
+    private static Uri groupUri(long groupId) {
+        return ContentUris.withAppendedId(Groups.CONTENT_URI, groupId);
+    }
+}
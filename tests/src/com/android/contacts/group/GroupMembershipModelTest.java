@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.group;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.contacts.group.GroupEditorFragment.Member;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link GroupMembershipModel}.
+ */
+@SmallTest
+public class GroupMembershipModelTest extends AndroidTestCase {
+
+    public void testExistingMembersAndChanges() {
+        final GroupMembershipModel model = new GroupMembershipModel();
+        model.setExistingMembers(createMembers(1, 2, 3));
+        assertFalse(model.hasChanges());
+
+        assertEquals(3, model.addMember(createMember(10)));
+        assertEquals(-1, model.addMember(createMember(10)));
+        assertEquals(1, model.removeMember(2));
+        assertEquals(-1, model.removeMember(2));
+
+        assertRawContactIds(model, 1, 3, 10);
+        assertTrue(Arrays.equals(new long[] {10}, model.getMembersToAdd()));
+        assertTrue(Arrays.equals(new long[] {2}, model.getMembersToRemove()));
+    }
+
+    public void testRemovingAddedMemberForgetsIt() {
+        final GroupMembershipModel model = new GroupMembershipModel();
+        model.setExistingMembers(createMembers(1));
+        model.addMember(createMember(5));
+        model.removeMember(5);
+        assertFalse(model.hasChanges());
+        assertRawContactIds(model, 1);
+    }
+
+    public void testReaddingRemovedMemberCancelsRemoval() {
+        final GroupMembershipModel model = new GroupMembershipModel();
+        model.setExistingMembers(createMembers(1, 2));
+        model.removeMember(1);
+        model.addMember(createMember(1));
+        assertFalse(model.hasChanges());
+        assertRawContactIds(model, 2, 1);
+    }
+
+    public void testPositionsAfterManyRemovals() {
+        final GroupMembershipModel model = new GroupMembershipModel();
+        final List<Member> members = new ArrayList<Member>();
+        for (int i = 0; i < 1000; i++) {
+            members.add(createMember(i));
+        }
+        model.setExistingMembers(members);
+        // Remove every member with an odd ID.
+        for (int i = 1; i < 1000; i += 2) {
+            assertEquals(i / 2 + 1, model.removeMember(i));
+        }
+        assertEquals(500, model.size());
+        for (int position = 0; position < 500; position++) {
+            assertEquals(position * 2, model.get(position).getRawContactId());
+            assertEquals(position, model.indexOf(position * 2));
+        }
+        // Then every other remaining one, which compacts the slots along the way.
+        for (int i = 2; i < 1000; i += 4) {
+            assertEquals(i / 4 + 1, model.removeMember(i));
+        }
+        assertEquals(250, model.size());
+        for (int position = 0; position < 250; position++) {
+            assertEquals(position * 4, model.get(position).getRawContactId());
+            assertEquals(position, model.indexOf(position * 4));
+        }
+        assertEquals(750, model.getMembersToRemove().length);
+    }
+
+    public void testRestoreChanges() {
+        final GroupMembershipModel model = new GroupMembershipModel();
+        model.restoreChanges(new long[] {7, 8}, new long[] {2});
+        model.setExistingMembers(createMembers(1, 2, 8));
+
+        // 8 was meanwhile added to the group, only 7 needs to be loaded and added.
+        assertTrue(Arrays.equals(new long[] {7}, model.getMembersToAddWithoutDetails()));
+        assertRawContactIds(model, 1, 8);
+
+        assertEquals(2, model.onAddedMemberLoaded(createMember(7)));
+        assertEquals(-1, model.onAddedMemberLoaded(createMember(7)));
+        assertRawContactIds(model, 1, 8, 7);
+        assertTrue(Arrays.equals(new long[] {7}, model.getMembersToAdd()));
+        assertTrue(Arrays.equals(new long[] {2}, model.getMembersToRemove()));
+    }
+
+    private static void assertRawContactIds(GroupMembershipModel model, long... expected) {
+        assertEquals(expected.length, model.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], model.get(i).getRawContactId());
+        }
+    }
+
+    private static List<Member> createMembers(long... rawContactIds) {
+        final List<Member> members = new ArrayList<Member>();
+        for (long rawContactId : rawContactIds) {
+            members.add(createMember(rawContactId));
+        }
+        return members;
+    }
+
+    private static Member createMember(long rawContactId) {
+        return new Member(rawContactId, "lookup" + rawContactId, rawContactId,
+                "Name " + rawContactId, null);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.provider.ContactsContract.Contacts;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.AtomicFile;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link CursorSnapshot}.
+ */
+@SmallTest
+public class CursorSnapshotTest extends AndroidTestCase {
+    private static final String NAME = "test";
+    private static final String KEY = "default|1|1";
+
+    @Override
+    protected void tearDown() throws Exception {
+        CursorSnapshot.deleteAll(getContext());
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws Exception {
+        save(createCursor(null, 5), 10);
+
+        final Cursor cursor = CursorSnapshot.load(getContext(), NAME, KEY);
+        assertNotNull(cursor);
+        try {
+            assertTrue(Arrays.equals(new String[] {Contacts._ID, Contacts.DISPLAY_NAME_PRIMARY,
+                    Contacts.PHOTO_ID}, cursor.getColumnNames()));
+            assertEquals(5, cursor.getCount());
+            assertTrue(cursor.moveToPosition(3));
+            assertEquals(4, cursor.getLong(0));
+            assertEquals("Name 4", cursor.getString(1));
+            assertTrue(cursor.isNull(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testLoad_otherKey() throws Exception {
+        save(createCursor(null, 5), 10);
+        assertNull(CursorSnapshot.load(getContext(), NAME, "other"));
+    }
+
+    public void testLoad_missing() {
+        assertNull(CursorSnapshot.load(getContext(), NAME, KEY));
+    }
+
+    public void testTruncatesIndex() throws Exception {
+        final Bundle extras = new Bundle();
+        extras.putStringArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES,
+                new String[] {"A", "B", "C"});
+        extras.putIntArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS, new int[] {2, 3, 2});
+        // The first row is the profile, which is not part of the index.
+        save(createCursor(extras, 8), 4);
+
+        final Cursor cursor = CursorSnapshot.load(getContext(), NAME, KEY);
+        assertNotNull(cursor);
+        try {
+            assertEquals(4, cursor.getCount());
+            final Bundle snapshotExtras = cursor.getExtras();
+            assertTrue(Arrays.equals(new String[] {"A", "B"},
+                    snapshotExtras.getStringArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES)));
+            assertTrue(Arrays.equals(new int[] {2, 1},
+                    snapshotExtras.getIntArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void save(Cursor cursor, int maxRows) throws Exception {
+        final File file = new File(new File(getContext().getCacheDir(), "list_snapshots"), NAME);
+        CursorSnapshot.write(new AtomicFile(file), CursorSnapshot.capture(KEY, cursor, maxRows));
+        cursor.close();
+    }
+
+    private static Cursor createCursor(final Bundle extras, int count) {
+        final MatrixCursor cursor = new MatrixCursor(new String[] {Contacts._ID,
+                Contacts.DISPLAY_NAME_PRIMARY, Contacts.PHOTO_ID});
+        for (int i = 1; i <= count; i++) {
+            cursor.addRow(new Object[] {(long) i, "Name " + i, null});
+        }
+        return new CursorWrapper(cursor) {
+            @Override
+            public Bundle getExtras() {
+                return extras == null ? Bundle.EMPTY : extras;
+            }
+        };
+    }
+}
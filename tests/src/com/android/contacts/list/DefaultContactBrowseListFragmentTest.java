@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.database.MatrixCursor;
+import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.Directory;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.contacts.common.ContactPhotoManager;
+import com.android.contacts.common.list.DefaultContactListAdapter;
+import com.android.contacts.common.list.DirectoryPartition;
+
+/**
+ * Tests for showing the list snapshot in {@link DefaultContactBrowseListFragment}.
+ */
+@SmallTest
+public class DefaultContactBrowseListFragmentTest extends AndroidTestCase {
+
+    public void testShowSnapshot_leavesPartitionToBeLoaded() {
+        final DefaultContactListAdapter adapter = new DefaultContactListAdapter(getContext());
+        adapter.setPhotoLoader(ContactPhotoManager.getInstance(getContext()));
+        final MatrixCursor snapshot = new MatrixCursor(new String[] {Contacts._ID,
+                Contacts.DISPLAY_NAME_PRIMARY});
+        snapshot.addRow(new Object[] {1L, "Contact 1"});
+
+        DefaultContactBrowseListFragment.showSnapshot(adapter, snapshot);
+
+        assertSame(snapshot, adapter.getCursor(Directory.DEFAULT));
+        // The fragment only starts the query of partitions that are not loaded.
+        final DirectoryPartition partition =
+                (DirectoryPartition) adapter.getPartition(Directory.DEFAULT);
+        assertEquals(DirectoryPartition.STATUS_NOT_LOADED, partition.getStatus());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.MatrixCursor;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.provider.ContactsContract.Contacts;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.contacts.GroupMemberLoader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link GroupMemberWindows} and the section index of
+ * {@link GroupMemberTileAdapter}.
+ */
+@SmallTest
+public class GroupMemberWindowsTest extends AndroidTestCase {
+
+    private static final int WINDOW_SIZE = GroupMemberLoader.GROUP_DETAIL_WINDOW_SIZE;
+
+    /** Records the windows requested instead of querying the provider. */
+    private static class TestWindows extends GroupMemberWindows {
+        final List<Integer> requestedWindows = new ArrayList<>();
+
+        TestWindows(Context context, Cursor firstWindow, int memberCount,
+                Listener listener) {
+            super(context, /* groupId = */ 1, firstWindow, memberCount, listener);
+        }
+
+        @Override
+        AsyncTask<?, ?, ?> startLoad(int window) {
+            requestedWindows.add(window);
+            return new AsyncTask<Void, Void, Void>() {
+                @Override
+                protected Void doInBackground(Void... params) {
+                    return null;
+                }
+            };
+        }
+    }
+
+    private int mWindowLoadedCount;
+    private final GroupMemberWindows.Listener mListener = new GroupMemberWindows.Listener() {
+        @Override
+        public void onWindowLoaded() {
+            mWindowLoadedCount++;
+        }
+    };
+
+    public void testCount_partialFirstWindow() {
+        final TestWindows windows = createWindows(createWindow(0, 10, null), 200);
+        // The first window holds all the members.
+        assertEquals(10, windows.getCount());
+    }
+
+    public void testCount_fullFirstWindow() {
+        assertEquals(200, createWindows(createWindow(0, WINDOW_SIZE, null), 200).getCount());
+        // An estimate no larger than the first window still lets the next one load.
+        assertEquals(WINDOW_SIZE + 1,
+                createWindows(createWindow(0, WINDOW_SIZE, null), 10).getCount());
+    }
+
+    public void testCount_correctedByLastWindow() {
+        final TestWindows windows = createWindows(createWindow(0, WINDOW_SIZE, null), 200);
+        windows.onWindowLoaded(1, createWindow(WINDOW_SIZE, 20, null));
+        assertEquals(WINDOW_SIZE + 20, windows.getCount());
+        assertEquals(1, mWindowLoadedCount);
+    }
+
+    public void testCount_correctedByFullWindow() {
+        final TestWindows windows = createWindows(createWindow(0, WINDOW_SIZE, null),
+                WINDOW_SIZE + 10);
+        windows.onWindowLoaded(1, createWindow(WINDOW_SIZE, WINDOW_SIZE, null));
+        // The estimate was too low, there may be more members after this window.
+        assertEquals(WINDOW_SIZE * 2 + 1, windows.getCount());
+    }
+
+    public void testMoveToMember() {
+        final TestWindows windows = createWindows(createWindow(0, WINDOW_SIZE, null), 200);
+        final Cursor first = windows.moveToMember(5);
+        assertNotNull(first);
+        assertEquals(5, first.getLong(0));
+
+        assertNull(windows.moveToMember(WINDOW_SIZE + 10));
+        assertEquals(Arrays.asList(1), windows.requestedWindows);
+        // Not requested twice while it loads.
+        assertNull(windows.moveToMember(WINDOW_SIZE + 11));
+        assertEquals(Arrays.asList(1), windows.requestedWindows);
+
+        windows.onWindowLoaded(1, createWindow(WINDOW_SIZE, WINDOW_SIZE, null));
+        final Cursor cursor = windows.moveToMember(WINDOW_SIZE + 10);
+        assertNotNull(cursor);
+        assertEquals(WINDOW_SIZE + 10, cursor.getLong(0));
+
+        assertNull(windows.moveToMember(-1));
+        assertNull(windows.moveToMember(windows.getCount()));
+    }
+
+    public void testPrefetchesNextWindow() {
+        final TestWindows windows = createWindows(createWindow(0, WINDOW_SIZE, null), 200);
+        assertNotNull(windows.moveToMember(WINDOW_SIZE - 1));
+        assertEquals(Arrays.asList(1), windows.requestedWindows);
+    }
+
+    public void testEvictsLeastRecentlyUsedWindows() {
+        final Cursor firstWindow = createWindow(0, WINDOW_SIZE, null);
+        final TestWindows windows = createWindows(firstWindow, 1000);
+        final List<Cursor> loaded = new ArrayList<>();
+        for (int window = 1; window <= 6; window++) {
+            final Cursor cursor = createWindow(window * WINDOW_SIZE, WINDOW_SIZE, null);
+            loaded.add(cursor);
+            windows.onWindowLoaded(window, cursor);
+        }
+
+        // The first window was evicted first, but is owned by the loader.
+        assertFalse(firstWindow.isClosed());
+        assertTrue(loaded.get(0).isClosed());
+        assertFalse(loaded.get(1).isClosed());
+        assertNull(windows.moveToMember(0));
+        assertTrue(windows.requestedWindows.contains(0));
+    }
+
+    public void testClose() {
+        final Cursor firstWindow = createWindow(0, WINDOW_SIZE, null);
+        final TestWindows windows = createWindows(firstWindow, 200);
+        final Cursor second = createWindow(WINDOW_SIZE, WINDOW_SIZE, null);
+        windows.onWindowLoaded(1, second);
+
+        windows.close();
+        assertFalse(firstWindow.isClosed());
+        assertTrue(second.isClosed());
+        assertNull(windows.moveToMember(0));
+
+        // A window arriving after the windows were closed is closed right away.
+        final Cursor late = createWindow(WINDOW_SIZE * 2, WINDOW_SIZE, null);
+        windows.onWindowLoaded(2, late);
+        assertTrue(late.isClosed());
+    }
+
+    public void testSections() {
+        final Bundle extras = new Bundle();
+        extras.putStringArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES,
+                new String[] {"A", "B", "C"});
+        extras.putIntArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS, new int[] {4, 1, 5});
+        final TestWindows windows = createWindows(createWindow(0, 10, extras), 10);
+        assertTrue(Arrays.equals(new int[] {0, 4, 5}, windows.getSectionPositions()));
+
+        // Two members per row.
+        final GroupMemberTileAdapter adapter = new GroupMemberTileAdapter(getContext(), null, 2);
+        adapter.setMemberWindows(windows);
+        assertEquals(5, adapter.getCount());
+        assertEquals(0, adapter.getPositionForSection(0));
+        assertEquals(2, adapter.getPositionForSection(1));
+        assertEquals(2, adapter.getPositionForSection(2));
+        assertEquals(0, adapter.getSectionForPosition(0));
+        assertEquals(0, adapter.getSectionForPosition(1));
+        assertEquals(1, adapter.getSectionForPosition(2));
+        assertEquals(2, adapter.getSectionForPosition(3));
+        assertEquals(2, adapter.getSectionForPosition(4));
+    }
+
+    private TestWindows createWindows(Cursor firstWindow, int memberCount) {
+        return new TestWindows(getContext(), firstWindow, memberCount, mListener);
+    }
+
+    /**
+     * Returns a window of members whose contact IDs are their positions in the group.
+     */
+    private static Cursor createWindow(int offset, int count, final Bundle extras) {
+        final MatrixCursor cursor = new MatrixCursor(new String[] {Contacts._ID});
+        for (int i = 0; i < count; i++) {
+            cursor.addRow(new Object[] {(long) (offset + i)});
+        }
+        return new CursorWrapper(cursor) {
+            @Override
+            public Bundle getExtras() {
+                return extras == null ? Bundle.EMPTY : extras;
+            }
+        };
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.provider.ContactsContract.Contacts;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.contacts.util.LongHashSet;
+
+import java.util.Arrays;
+
+/**
+ * Tests for {@link HiddenContactsCursor}.
+ */
+@SmallTest
+public class HiddenContactsCursorTest extends AndroidTestCase {
+
+    public void testHidesRows() {
+        final HiddenContactsCursor cursor = new HiddenContactsCursor(
+                createCursor(null, 1, 2, 3, 4, 5), 0, hide(2, 4));
+
+        assertEquals(3, cursor.getCount());
+        assertTrue(cursor.isBeforeFirst());
+        assertTrue(cursor.moveToNext());
+        assertEquals(1, cursor.getLong(0));
+        assertTrue(cursor.moveToNext());
+        assertEquals(3, cursor.getLong(0));
+        assertEquals(1, cursor.getPosition());
+        assertTrue(cursor.moveToNext());
+        assertEquals(5, cursor.getLong(0));
+        assertTrue(cursor.isLast());
+        assertFalse(cursor.moveToNext());
+        assertTrue(cursor.isAfterLast());
+
+        assertTrue(cursor.moveToPosition(1));
+        assertEquals(3, cursor.getLong(0));
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getLong(0));
+        assertFalse(cursor.moveToPrevious());
+        assertTrue(cursor.isBeforeFirst());
+    }
+
+    public void testHidesRowsFoundAhead() {
+        final Cursor rows = HiddenContactsCursor.ContactRows.find(
+                createCursor(null, 1, 2, 3, 4, 5), 0, new long[] {2, 4, 6});
+        final HiddenContactsCursor cursor = new HiddenContactsCursor(rows, 0, hide(4, 6));
+
+        assertEquals(4, cursor.getCount());
+        assertTrue(cursor.moveToPosition(3));
+        assertEquals(5, cursor.getLong(0));
+        assertTrue(cursor.isHidingContact(4));
+        assertFalse(cursor.isHidingContact(6));
+        assertFalse(cursor.isHidingContact(2));
+    }
+
+    public void testHidesRowsNotSearchedAhead() {
+        final Cursor rows = HiddenContactsCursor.ContactRows.find(
+                createCursor(null, 1, 2, 3), 0, new long[] {2});
+        final HiddenContactsCursor cursor = new HiddenContactsCursor(rows, 0, hide(2, 3));
+
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getLong(0));
+    }
+
+    public void testAdjustsIndexCounts() {
+        final Bundle extras = new Bundle();
+        extras.putStringArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES,
+                new String[] {"A", "B", "C"});
+        extras.putIntArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS, new int[] {2, 1, 2});
+        // The first row is the profile, which is not part of the index.
+        final HiddenContactsCursor cursor = new HiddenContactsCursor(
+                createCursor(extras, 100, 1, 2, 3, 4, 5), 0, hide(2, 3));
+
+        final Bundle adjusted = cursor.getExtras();
+        assertTrue(Arrays.equals(new String[] {"A", "C"},
+                adjusted.getStringArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_TITLES)));
+        assertTrue(Arrays.equals(new int[] {1, 2},
+                adjusted.getIntArray(Contacts.EXTRA_ADDRESS_BOOK_INDEX_COUNTS)));
+    }
+
+    public void testRelease_keepsCursorOpen() {
+        final Cursor base = createCursor(null, 1, 2);
+        final HiddenContactsCursor cursor = new HiddenContactsCursor(base, 0, hide(1));
+        assertSame(base, cursor.release());
+        cursor.close();
+        assertFalse(base.isClosed());
+
+        new HiddenContactsCursor(base, 0, hide(1)).close();
+        assertTrue(base.isClosed());
+    }
+
+    private static LongHashSet hide(long... contactIds) {
+        final LongHashSet set = new LongHashSet();
+        for (long contactId : contactIds) {
+            set.add(contactId);
+        }
+        return set;
+    }
+
+    private static Cursor createCursor(final Bundle extras, long... contactIds) {
+        final MatrixCursor cursor = new MatrixCursor(new String[] {Contacts._ID});
+        for (long contactId : contactIds) {
+            cursor.addRow(new Object[] {contactId});
+        }
+        return new CursorWrapper(cursor) {
+            @Override
+            public Bundle getExtras() {
+                return extras == null ? Bundle.EMPTY : extras;
+            }
+        };
+    }
+}
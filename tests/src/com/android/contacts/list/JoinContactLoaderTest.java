@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.contacts.list;
+
+import android.content.Loader;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.Contacts.AggregationSuggestions;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the time to the first join suggestion, run against the contacts on the device.
+ */
+@LargeTest
+public class JoinContactLoaderTest extends AndroidTestCase {
+    private static final String TAG = "JoinContactLoaderTest";
+
+    private static final String[] PROJECTION = new String[] {
+            Contacts._ID, Contacts.DISPLAY_NAME_PRIMARY };
+    private static final int ITERATIONS = 5;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    public void testTimeToFirstSuggestion() throws Exception {
+        final long targetContactId = getAnyContactId();
+        if (targetContactId <= 0) {
+            Log.w(TAG, "No contacts on the device, skipping benchmark");
+            return;
+        }
+        final Uri suggestionUri = Contacts.CONTENT_URI.buildUpon()
+                .appendEncodedPath(String.valueOf(targetContactId))
+                .appendEncodedPath(AggregationSuggestions.CONTENT_DIRECTORY)
+                .appendQueryParameter("limit", "4")
+                .build();
+
+        long sequentialMillis = 0;
+        long firstSuggestionMillis = 0;
+        long fullListMillis = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            // Baseline: suggestions first, then the full list, as the loader used to do.
+            final long start = SystemClock.elapsedRealtime();
+            getContext().getContentResolver().query(
+                    suggestionUri, PROJECTION, null, null, null).close();
+            final Cursor all = getContext().getContentResolver().query(
+                    Contacts.CONTENT_URI, PROJECTION, null, null, null);
+            all.getCount();
+            all.close();
+            sequentialMillis += SystemClock.elapsedRealtime() - start;
+
+            final long[] timings = loadConcurrently(suggestionUri);
+            firstSuggestionMillis += timings[0];
+            fullListMillis += timings[1];
+        }
+        Log.i(TAG, "sequential=" + (sequentialMillis / ITERATIONS) + "ms"
+                + " firstSuggestion=" + (firstSuggestionMillis / ITERATIONS) + "ms"
+                + " fullList=" + (fullListMillis / ITERATIONS) + "ms");
+    }
+
+    /**
+     * Runs a {@link JoinContactLoader} and returns the time to the early suggestions and the time
+     * to the full result.
+     */
+    private long[] loadConcurrently(final Uri suggestionUri) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final long[] timings = new long[] { -1, -1 };
+        final JoinContactLoader[] loaders = new JoinContactLoader[1];
+        final long start = SystemClock.elapsedRealtime();
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                final JoinContactLoader loader = new JoinContactLoader(getContext());
+                loaders[0] = loader;
+                loader.setSuggestionUri(suggestionUri);
+                loader.setProjection(PROJECTION);
+                loader.setUri(Contacts.CONTENT_URI);
+                loader.setOnSuggestionsLoadedListener(
+                        new JoinContactLoader.OnSuggestionsLoadedListener() {
+                    @Override
+                    public void onSuggestionsLoaded(Cursor suggestionsCursor) {
+                        timings[0] = SystemClock.elapsedRealtime() - start;
+                        suggestionsCursor.close();
+                    }
+                });
+                loader.registerListener(0, new Loader.OnLoadCompleteListener<Cursor>() {
+                    @Override
+                    public void onLoadComplete(Loader<Cursor> l, Cursor data) {
+                        timings[1] = SystemClock.elapsedRealtime() - start;
+                        if (timings[0] < 0) {
+                            timings[0] = timings[1];
+                        }
+                        loader.reset();
+                        done.countDown();
+                    }
+                });
+                loader.startLoading();
+            }
+        });
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return timings;
+    }
+
+    private long getAnyContactId() {
+        final Cursor cursor = getContext().getContentResolver().query(Contacts.CONTENT_URI,
+                new String[] { Contacts._ID }, null, null, null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.content.CursorLoader;
+import android.os.Bundle;
+import android.provider.ContactsContract.Contacts;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Tests for {@link MatchingContactsSelection}.
+ */
+@SmallTest
+public class MatchingContactsSelectionTest extends AndroidTestCase {
+
+    private static final String SELECTION = Contacts.IN_VISIBLE_GROUP + "=?";
+    private static final String[] SELECTION_ARGS = new String[] {"1"};
+
+    public void testExclusions() {
+        final MatchingContactsSelection selection =
+                MatchingContactsSelection.fromLoader(createLoader(SELECTION_ARGS), 10);
+        assertEquals(10, selection.size());
+        assertTrue(selection.contains(3));
+
+        selection.setSelected(3, false);
+        selection.toggle(5);
+        assertEquals(8, selection.size());
+        assertFalse(selection.contains(3));
+        assertFalse(selection.contains(5));
+
+        selection.toggle(5);
+        selection.setSelected(3, true);
+        assertEquals(10, selection.size());
+        assertTrue(selection.contains(3));
+    }
+
+    public void testSize_matchingCountChanged() {
+        final MatchingContactsSelection selection =
+                MatchingContactsSelection.fromLoader(createLoader(SELECTION_ARGS), 3);
+        selection.setSelected(1, false);
+        selection.setSelected(2, false);
+
+        selection.setMatchingCount(1);
+        assertEquals(0, selection.size());
+        selection.setMatchingCount(5);
+        assertEquals(3, selection.size());
+    }
+
+    public void testHasSameQuery() {
+        final MatchingContactsSelection selection =
+                MatchingContactsSelection.fromLoader(createLoader(SELECTION_ARGS), 1);
+        assertTrue(selection.hasSameQuery(createLoader(new String[] {"1"})));
+        assertFalse(selection.hasSameQuery(createLoader(new String[] {"0"})));
+    }
+
+    public void testBundleRoundTrip() {
+        final MatchingContactsSelection selection =
+                MatchingContactsSelection.fromLoader(createLoader(SELECTION_ARGS), 4);
+        selection.setSelected(2, false);
+        final Bundle bundle = new Bundle();
+        selection.saveToBundle(bundle);
+
+        final MatchingContactsSelection restored = MatchingContactsSelection.fromBundle(bundle);
+        assertNotNull(restored);
+        assertEquals(3, restored.size());
+        assertFalse(restored.contains(2));
+        assertTrue(restored.contains(1));
+        assertTrue(restored.hasSameQuery(createLoader(SELECTION_ARGS)));
+    }
+
+    public void testFromBundle_nothingSaved() {
+        assertNull(MatchingContactsSelection.fromBundle(new Bundle()));
+    }
+
+    private CursorLoader createLoader(String[] selectionArgs) {
+        return new CursorLoader(getContext(), Contacts.CONTENT_URI,
+                new String[] {Contacts._ID}, SELECTION, selectionArgs, null);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.list;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.Directory;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Arrays;
+
+/**
+ * Tests for hiding contacts pending deletion in {@link MultiSelectEntryContactListAdapter}.
+ */
+@SmallTest
+public class MultiSelectEntryContactListAdapterTest extends AndroidTestCase {
+
+    /** The columns of the contact list query, with the contact ID first. */
+    private static final String[] COLUMNS = new String[] {
+            Contacts._ID,
+            Contacts.DISPLAY_NAME_PRIMARY,
+            Contacts.CONTACT_PRESENCE,
+            Contacts.CONTACT_STATUS,
+            Contacts.PHOTO_ID,
+            Contacts.PHOTO_THUMBNAIL_URI,
+            Contacts.LOOKUP_KEY,
+            Contacts.IS_USER_PROFILE,
+    };
+
+    private MultiSelectEntryContactListAdapter mAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new MultiSelectEntryContactListAdapter(getContext());
+    }
+
+    public void testHideThenRollBack() {
+        final Cursor loaderCursor = createCursor(1, 2, 3);
+        mAdapter.changeCursor(Directory.DEFAULT, loaderCursor);
+
+        mAdapter.hideContactsPendingDeletion(new long[] {2});
+        assertFalse(loaderCursor.isClosed());
+        assertContactIds(1, 3);
+
+        mAdapter.onContactsDeletionCompleted(new long[] {2}, false);
+        assertFalse(loaderCursor.isClosed());
+        assertContactIds(1, 2, 3);
+        assertEquals(0, mAdapter.getContactsPendingDeletion().length);
+    }
+
+    public void testHideThenReload() {
+        mAdapter.changeCursor(Directory.DEFAULT, createCursor(1, 2, 3));
+        mAdapter.hideContactsPendingDeletion(new long[] {2, 3});
+        mAdapter.onContactsDeletionCompleted(new long[] {2, 3}, true);
+        // Still hidden until the list is reloaded.
+        assertContactIds(1);
+
+        // A reload that started before the deletion still contains the contacts.
+        final Cursor staleCursor = createCursor(1, 2, 3);
+        mAdapter.changeCursor(Directory.DEFAULT, staleCursor);
+        assertContactIds(1);
+        assertEquals(2, mAdapter.getContactsPendingDeletion().length);
+
+        mAdapter.changeCursor(Directory.DEFAULT, createCursor(1, 3));
+        assertTrue(staleCursor.isClosed());
+        assertContactIds(1);
+        assertTrue(Arrays.equals(new long[] {3}, mAdapter.getContactsPendingDeletion()));
+
+        mAdapter.changeCursor(Directory.DEFAULT, createCursor(1));
+        assertContactIds(1);
+        assertEquals(0, mAdapter.getContactsPendingDeletion().length);
+    }
+
+    public void testReloadBeforeDeletionCompleted() {
+        mAdapter.changeCursor(Directory.DEFAULT, createCursor(1, 2, 3));
+        mAdapter.hideContactsPendingDeletion(new long[] {2});
+        mAdapter.changeCursor(Directory.DEFAULT, createCursor(1, 3));
+
+        mAdapter.onContactsDeletionCompleted(new long[] {2}, true);
+        assertEquals(0, mAdapter.getContactsPendingDeletion().length);
+    }
+
+    public void testSameCursorDeliveredAgain() {
+        final Cursor loaderCursor = createCursor(1, 2, 3);
+        mAdapter.changeCursor(Directory.DEFAULT, loaderCursor);
+        mAdapter.hideContactsPendingDeletion(new long[] {2});
+
+        mAdapter.changeCursor(Directory.DEFAULT, loaderCursor);
+        assertFalse(loaderCursor.isClosed());
+        assertContactIds(1, 3);
+    }
+
+    public void testCursorFromLoader() {
+        mAdapter.changeCursor(Directory.DEFAULT, createCursor(1, 2, 3));
+        mAdapter.hideContactsPendingDeletion(new long[] {2});
+
+        // The loader found the rows of the hidden contacts on its thread.
+        mAdapter.changeCursor(Directory.DEFAULT, HiddenContactsCursor.ContactRows.find(
+                createCursor(1, 2, 3, 4), 0, mAdapter.getContactsPendingDeletion()));
+        assertContactIds(1, 3, 4);
+    }
+
+    public void testHideTwice() {
+        final Cursor loaderCursor = createCursor(1, 2, 3, 4);
+        mAdapter.changeCursor(Directory.DEFAULT, loaderCursor);
+
+        mAdapter.hideContactsPendingDeletion(new long[] {2});
+        mAdapter.hideContactsPendingDeletion(new long[] {4});
+        assertFalse(loaderCursor.isClosed());
+        assertContactIds(1, 3);
+
+        mAdapter.onContactsDeletionCompleted(new long[] {4}, false);
+        assertContactIds(1, 3, 4);
+    }
+
+    private void assertContactIds(long... contactIds) {
+        final Cursor cursor = mAdapter.getCursor(Directory.DEFAULT);
+        assertFalse(cursor.isClosed());
+        assertEquals(contactIds.length, cursor.getCount());
+        cursor.moveToPosition(-1);
+        for (long contactId : contactIds) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(contactId, cursor.getLong(0));
+        }
+    }
+
+    private static Cursor createCursor(long... contactIds) {
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (long contactId : contactIds) {
+            cursor.addRow(new Object[] {contactId, "Contact " + contactId, null, null, 0L, null,
+                    "lookup" + contactId, 0});
+        }
+        return cursor;
+    }
+}
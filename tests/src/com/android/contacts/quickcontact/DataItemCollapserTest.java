@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.contacts.quickcontact;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.SystemClock;
+import android.provider.ContactsContract.CommonDataKinds.Email;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.Data;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.android.contacts.common.Collapser;
+import com.android.contacts.common.model.AccountTypeManager;
+import com.android.contacts.common.model.dataitem.DataItem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link DataItemCollapser}.
+ */
+@SmallTest
+public class DataItemCollapserTest extends AndroidTestCase {
+    private static final String TAG = "DataItemCollapserTest";
+
+    private static final int[] BENCHMARK_LIST_SIZES = new int[] {10, 30, 100, 300, 1000};
+    private static final int BENCHMARK_ITERATIONS = 5;
+
+    public void testCollapsesExactDuplicates() {
+        final List<DataItem> items = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            items.add(createPhone("6505551234"));
+        }
+        items.add(createPhone("6505559876"));
+
+        DataItemCollapser.collapseList(items, getContext());
+
+        assertEquals(2, items.size());
+        assertEquals("6505551234", getData(items.get(0)));
+        assertEquals("6505559876", getData(items.get(1)));
+    }
+
+    public void testCollapsesFormattingDuplicates() {
+        final List<DataItem> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(createPhone("(650) 555-1234"));
+            items.add(createPhone("650-555-1234"));
+            items.add(createPhone("650 555 1234"));
+        }
+
+        DataItemCollapser.collapseList(items, getContext());
+
+        assertEquals(1, items.size());
+        assertEquals("(650) 555-1234", getData(items.get(0)));
+    }
+
+    public void testCollapsesListsAboveCollapserLimit() {
+        // Collapser alone leaves such lists untouched.
+        final List<DataItem> items = new ArrayList<>();
+        for (int i = 0; i < DataItemCollapser.COLLAPSER_MAX_LIST_SIZE * 5; i++) {
+            items.add(createPhone(i % 2 == 0 ? "650-555-1234" : "650 555 9876"));
+        }
+
+        DataItemCollapser.collapseList(items, getContext());
+
+        assertEquals(2, items.size());
+        assertEquals("650-555-1234", getData(items.get(0)));
+        assertEquals("650 555 9876", getData(items.get(1)));
+    }
+
+    public void testKeepsDistinctItems() {
+        final List<DataItem> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(createEmail("user" + i + "@example.com"));
+        }
+
+        DataItemCollapser.collapseList(items, getContext());
+
+        assertEquals(20, items.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("user" + i + "@example.com", getData(items.get(i)));
+        }
+    }
+
+    public void testCanonicalKey_ignoresSeparators() {
+        assertEquals(DataItemCollapser.getCanonicalKey(createPhone("+1 (650) 555-1234")),
+                DataItemCollapser.getCanonicalKey(createPhone("+1.650.555.1234")));
+    }
+
+    public void testCanonicalKey_keepsPausesAndWaits() {
+        assertFalse(DataItemCollapser.getCanonicalKey(createPhone("5551234,5")).equals(
+                DataItemCollapser.getCanonicalKey(createPhone("55512345"))));
+        assertFalse(DataItemCollapser.getCanonicalKey(createPhone("5551234;5")).equals(
+                DataItemCollapser.getCanonicalKey(createPhone("5551234,5"))));
+    }
+
+    public void testCanonicalKey_emailIgnoresCase() {
+        assertEquals(DataItemCollapser.getCanonicalKey(createEmail("User@Example.com")),
+                DataItemCollapser.getCanonicalKey(createEmail("user@example.com")));
+    }
+
+    public void testCanonicalKey_includesMimeType() {
+        assertFalse(DataItemCollapser.getCanonicalKey(createPhone("1234")).equals(
+                DataItemCollapser.getCanonicalKey(createEmail("1234"))));
+    }
+
+    /**
+     * Benchmark for collapsing a single MIME type list with many duplicates, as produced by a
+     * contact merged from many synced accounts. Logs the time per list size for both the
+     * bucketed path and a plain pairwise collapse. {@link Collapser} can't be the baseline since
+     * it doesn't collapse lists above {@link DataItemCollapser#COLLAPSER_MAX_LIST_SIZE} items.
+     */
+    @LargeTest
+    public void testCollapseListScaling() {
+        for (int size : BENCHMARK_LIST_SIZES) {
+            long bucketedNanos = 0;
+            long pairwiseNanos = 0;
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                List<DataItem> items = createPhonesWithDuplicates(size);
+                long start = SystemClock.elapsedRealtimeNanos();
+                DataItemCollapser.collapseList(items, getContext());
+                bucketedNanos += SystemClock.elapsedRealtimeNanos() - start;
+                // Every distinct number has a single representative left.
+                assertEquals(distinctNumberCount(size), items.size());
+
+                items = createPhonesWithDuplicates(size);
+                start = SystemClock.elapsedRealtimeNanos();
+                collapsePairwise(items, getContext());
+                pairwiseNanos += SystemClock.elapsedRealtimeNanos() - start;
+            }
+            Log.i(TAG, "collapseList size=" + size
+                    + " bucketed=" + (bucketedNanos / BENCHMARK_ITERATIONS / 1000) + "us"
+                    + " pairwise=" + (pairwiseNanos / BENCHMARK_ITERATIONS / 1000) + "us");
+        }
+    }
+
+    /**
+     * Collapses the list by comparing every pair of items, like {@link Collapser} does for
+     * small lists.
+     */
+    private static void collapsePairwise(List<DataItem> items, Context context) {
+        for (int i = 0; i < items.size(); i++) {
+            final DataItem item = items.get(i);
+            for (int j = items.size() - 1; j > i; j--) {
+                if (item.shouldCollapseWith(items.get(j), context)) {
+                    item.collapseWith(items.get(j));
+                    items.remove(j);
+                }
+            }
+        }
+    }
+
+    /** A tenth of the numbers are distinct, each repeated with different formatting. */
+    private static int distinctNumberCount(int size) {
+        return Math.max(1, size / 10);
+    }
+
+    private List<DataItem> createPhonesWithDuplicates(int size) {
+        final int distinct = distinctNumberCount(size);
+        final List<DataItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final int suffix = 1000 + (i % distinct);
+            items.add(createPhone(i % 2 == 0 ? "650-555-" + suffix : "(650) 555" + suffix));
+        }
+        return items;
+    }
+
+    private DataItem createPhone(String number) {
+        return createDataItem(Phone.CONTENT_ITEM_TYPE, number);
+    }
+
+    private DataItem createEmail(String address) {
+        return createDataItem(Email.CONTENT_ITEM_TYPE, address);
+    }
+
+    private DataItem createDataItem(String mimeType, String data) {
+        final ContentValues values = new ContentValues();
+        values.put(Data.MIMETYPE, mimeType);
+        values.put(Data.DATA1, data);
+        final DataItem item = DataItem.createFrom(values);
+        item.setDataKind(AccountTypeManager.getInstance(getContext())
+                .getKindOrFallback(/* accountType = */ null, mimeType));
+        return item;
+    }
+
+    private static String getData(DataItem item) {
+        return item.getContentValues().getAsString(Data.DATA1);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests for {@link LongHashSet}.
+ */
+@SmallTest
+public class LongHashSetTest extends AndroidTestCase {
+
+    public void testAddContainsRemove() {
+        final LongHashSet set = new LongHashSet();
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(5));
+        assertFalse(set.add(5));
+        assertTrue(set.contains(5));
+        assertFalse(set.contains(6));
+        assertEquals(1, set.size());
+
+        assertTrue(set.remove(5));
+        assertFalse(set.remove(5));
+        assertFalse(set.contains(5));
+        assertTrue(set.isEmpty());
+    }
+
+    public void testZeroAndNegativeKeys() {
+        final LongHashSet set = new LongHashSet();
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertTrue(set.add(-1));
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(-1));
+        assertEquals(2, set.size());
+        assertEquals(2, set.toArray().length);
+
+        set.clear();
+        assertFalse(set.contains(0));
+        assertFalse(set.contains(-1));
+        assertEquals(0, set.size());
+    }
+
+    public void testMatchesHashSet() {
+        final LongHashSet set = new LongHashSet();
+        final Set<Long> expected = new HashSet<Long>();
+        final Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            // A small key range causes many collisions and removals inside probe sequences.
+            final long key = random.nextInt(500);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(key), set.add(key));
+            } else {
+                assertEquals(expected.remove(key), set.remove(key));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (long key = 0; key < 500; key++) {
+            assertEquals(expected.contains(key), set.contains(key));
+        }
+        for (long key : set.toArray()) {
+            assertTrue(expected.contains(key));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.contacts.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Arrays;
+
+/**
+ * Tests for {@link SortedLongSet}.
+ */
+@SmallTest
+public class SortedLongSetTest extends AndroidTestCase {
+
+    public void testKeepsKeysSorted() {
+        final SortedLongSet set = new SortedLongSet();
+        assertTrue(set.add(30));
+        assertTrue(set.add(10));
+        assertTrue(set.add(20));
+        assertFalse(set.add(10));
+
+        assertEquals(3, set.size());
+        assertTrue(Arrays.equals(new long[] {10, 20, 30}, set.toArray()));
+        assertEquals(20, set.get(1));
+    }
+
+    public void testRemove() {
+        final SortedLongSet set = SortedLongSet.fromArray(new long[] {1, 2, 3});
+        assertTrue(set.remove(2));
+        assertFalse(set.remove(2));
+        assertFalse(set.contains(2));
+        assertTrue(Arrays.equals(new long[] {1, 3}, set.toArray()));
+    }
+
+    public void testFromArray_sortsAndRemovesDuplicates() {
+        final SortedLongSet set = SortedLongSet.fromArray(new long[] {5, 1, 5, 3, 1});
+        assertTrue(Arrays.equals(new long[] {1, 3, 5}, set.toArray()));
+        assertTrue(SortedLongSet.fromArray(null).isEmpty());
+    }
+
+    public void testManyKeys() {
+        final SortedLongSet set = new SortedLongSet();
+        for (long key = 20000; key > 0; key--) {
+            set.add(key);
+        }
+        assertEquals(20000, set.size());
+        final long[] keys = set.toArray();
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i + 1, keys[i]);
+        }
+        assertEquals(20000, SortedLongSet.fromArray(keys).size());
+        assertEquals(20000, set.toTreeSet().size());
+    }
+}
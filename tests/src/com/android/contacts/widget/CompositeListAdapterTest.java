@@ -17,7 +17,10 @@ package com.android.contacts.widget;
 
 import android.content.Context;
 import android.database.DataSetObserver;
+import android.os.SystemClock;
 import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
@@ -33,12 +36,18 @@ import java.util.List;
  * Tests for {@link CompositeListAdapter}.
  */
 public class CompositeListAdapterTest extends AndroidTestCase {
+    private static final String TAG = "CompositeListAdapterTest";
+
+    private static final int[] BENCHMARK_PARTITION_COUNTS = new int[] {10, 100, 300, 1000};
+    private static final int BENCHMARK_ITEMS_PER_PARTITION = 5;
+    private static final int BENCHMARK_ITERATIONS = 5;
 
     private final class MockAdapter extends ArrayAdapter<String> {
         boolean allItemsEnabled = true;
         HashSet<Integer> enabledItems = new HashSet<Integer>();
         int viewTypeCount = 1;
         HashMap<Integer, Integer> viewTypes = new HashMap<Integer, Integer>();
+        int getCountCalls;
 
         private MockAdapter(Context context, List<String> objects) {
             super(context, android.R.layout.simple_list_item_1, objects);
@@ -52,6 +61,12 @@ public class CompositeListAdapterTest extends AndroidTestCase {
             return new MockView(getContext(), position);
         }
 
+        @Override
+        public int getCount() {
+            getCountCalls++;
+            return super.getCount();
+        }
+
         @Override
         public boolean areAllItemsEnabled() {
             return allItemsEnabled;
@@ -321,4 +336,93 @@ public class CompositeListAdapterTest extends AndroidTestCase {
         assertTrue(adapter.isEnabled(3));
         assertFalse(adapter.isEnabled(4));
     }
+
+    public void testOnlyChangedAdapterRequeried() {
+        CompositeListAdapter adapter = new CompositeListAdapter();
+        adapter.addAdapter(mAdapter1);
+        adapter.addAdapter(mAdapter2);
+        adapter.addAdapter(mAdapter3);
+        assertEquals(5, adapter.getCount());
+
+        mAdapter1.getCountCalls = 0;
+        mAdapter2.getCountCalls = 0;
+        mAdapter2.add("X");
+
+        assertEquals(6, adapter.getCount());
+        assertEquals(0, mAdapter1.getCountCalls);
+        assertTrue(mAdapter2.getCountCalls > 0);
+        assertEquals("B", adapter.getItem(1));
+        assertEquals("X", adapter.getItem(2));
+        assertEquals("C", adapter.getItem(3));
+        assertEquals("E", adapter.getItem(5));
+    }
+
+    public void testManyAdapters() {
+        CompositeListAdapter adapter = createAdapterWithPartitions(150);
+
+        assertEquals(150 * BENCHMARK_ITEMS_PER_PARTITION, adapter.getCount());
+        for (int i = 0; i < adapter.getCount(); i++) {
+            assertEquals(getPartitionItem(i / BENCHMARK_ITEMS_PER_PARTITION,
+                    i % BENCHMARK_ITEMS_PER_PARTITION), adapter.getItem(i));
+        }
+    }
+
+    public void testGetItemOutOfBounds() {
+        CompositeListAdapter adapter = new CompositeListAdapter();
+        adapter.addAdapter(mAdapter1);
+        adapter.addAdapter(mAdapter2);
+
+        try {
+            adapter.getItem(2);
+            fail();
+        } catch (ArrayIndexOutOfBoundsException expected) {
+        }
+        try {
+            adapter.getItem(-1);
+            fail();
+        } catch (ArrayIndexOutOfBoundsException expected) {
+        }
+    }
+
+    /**
+     * Benchmark for binding every position of a list with many partitions, as done while
+     * scrolling. Logs the time per partition count.
+     */
+    @LargeTest
+    public void testPositionLookupScaling() {
+        for (int partitions : BENCHMARK_PARTITION_COUNTS) {
+            CompositeListAdapter adapter = createAdapterWithPartitions(partitions);
+            int count = adapter.getCount();
+            long nanos = 0;
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                for (int position = 0; position < count; position++) {
+                    adapter.getItemViewType(position);
+                    adapter.isEnabled(position);
+                    adapter.getItem(position);
+                }
+                nanos += SystemClock.elapsedRealtimeNanos() - start;
+            }
+            assertEquals(getPartitionItem(partitions - 1, BENCHMARK_ITEMS_PER_PARTITION - 1),
+                    adapter.getItem(count - 1));
+            Log.i(TAG, "lookup partitions=" + partitions + " positions=" + count
+                    + " time=" + (nanos / BENCHMARK_ITERATIONS / 1000) + "us");
+        }
+    }
+
+    private CompositeListAdapter createAdapterWithPartitions(int partitions) {
+        CompositeListAdapter adapter = new CompositeListAdapter();
+        for (int partition = 0; partition < partitions; partition++) {
+            ArrayList<String> items = new ArrayList<String>();
+            for (int i = 0; i < BENCHMARK_ITEMS_PER_PARTITION; i++) {
+                items.add(getPartitionItem(partition, i));
+            }
+            adapter.addAdapter(new MockAdapter(getContext(), items));
+        }
+        return adapter;
+    }
+
+    private static String getPartitionItem(int partition, int position) {
+        return partition + ":" + position;
+    }
 }